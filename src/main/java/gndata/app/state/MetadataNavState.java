@@ -8,6 +8,7 @@
 
 package gndata.app.state;
 
+import java.util.concurrent.*;
 import javax.inject.Singleton;
 import javafx.beans.property.*;
 import javafx.collections.*;
@@ -29,6 +30,7 @@ public class MetadataNavState {
     private final ObservableList<ResourceFileAdapter> favoriteFolders;
     private final ObservableList<ResourceFileAdapter> navigationPath;
 
+    private final ExecutorService loader;
 
 
     public MetadataNavState() {
@@ -39,6 +41,22 @@ public class MetadataNavState {
 
         favoriteFolders = FXCollections.observableArrayList();
         navigationPath = FXCollections.observableArrayList();
+
+        loader = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "metadata-loader");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Returns the executor which reads large lists of resources in the
+     * background. Reads run one after another.
+     *
+     * @return The executor for reading resources.
+     */
+    public Executor getLoader() {
+        return loader;
     }
 
     public String getSearchString() {
@@ -10,12 +10,16 @@ package gndata.app.state;
 
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.util.concurrent.*;
 import javax.inject.Singleton;
+import javafx.application.Platform;
 import javafx.beans.property.*;
 import javafx.beans.value.ChangeListener;
+import javafx.concurrent.Task;
 
 import gndata.lib.config.ProjectConfig;
 import gndata.lib.srv.*;
+import gndata.lib.util.ProgressMonitor;
 
 
 /**
@@ -26,13 +30,33 @@ import gndata.lib.srv.*;
 public class ProjectState {
 
     private final ObjectProperty<ProjectConfig> config;
+    private final ExecutorService loader;
+    private final Executor fxThread;
 
     private ProjectService service;
     private MetadataService metadata;
     private FileService fileService;
+    private MetadataWatcher watcher;
 
     public ProjectState() {
+        this(Platform::runLater);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param fxThread  Executor running tasks on the thread that owns the
+     *                  state, the FX application thread by default.
+     */
+    public ProjectState(Executor fxThread) {
+        this.fxThread = fxThread;
+
         config = new SimpleObjectProperty<>();
+        loader = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "project-loader");
+            t.setDaemon(true);
+            return t;
+        });
     }
 
     public void addListener(ChangeListener<? super ProjectConfig> listener) {
@@ -53,14 +77,120 @@ public class ProjectState {
 
     public synchronized void setConfig(ProjectConfig config) throws IOException {
         if (config == null) {
-            service = null;
-            metadata = null;
-            fileService = null;
+            publish(null, null);
         } else if (config != this.config.get()) {
-            service = ProjectService.create(config);
-            metadata = MetadataService.create(config.getProjectPath());
-            fileService = new FileService(Paths.get(config.getProjectPath()));
+            publish(config, new LoadedProject(config, ProgressMonitor.NONE));
+        }
+    }
+
+    /**
+     * Loads a project in the background. The schema and the annotations are
+     * loaded and indexed on a worker thread, the config property is set on the
+     * FX application thread once everything is ready. Cancelling the returned
+     * task aborts the loading and keeps the currently open project.
+     *
+     * @param config    The configuration of the project to open.
+     *
+     * @return The running task, reporting the loading stages as message and progress.
+     */
+    public Task<ProjectConfig> openConfig(ProjectConfig config) {
+        Task<ProjectConfig> task = new ProjectLoadTask(config);
+        loader.execute(task);
+
+        return task;
+    }
+
+    /**
+     * Loads a project in the background like {@link #openConfig(ProjectConfig)},
+     * without a task. The project is published on the thread that owns the
+     * state, unless the monitor was cancelled until then.
+     *
+     * @param config    The configuration of the project to open.
+     * @param monitor   Receives the loading stages, may cancel the loading.
+     *
+     * @return A future that completes when the project was published.
+     */
+    public CompletableFuture<ProjectConfig> openConfig(ProjectConfig config, ProgressMonitor monitor) {
+        CompletableFuture<ProjectConfig> opened = new CompletableFuture<>();
+
+        loader.execute(() -> {
+            try {
+                LoadedProject loaded = new LoadedProject(config, monitor);
+
+                fxThread.execute(() -> {
+                    try {
+                        if (handOver(loaded, monitor)) {
+                            opened.complete(config);
+                        } else {
+                            opened.cancel(false);
+                        }
+                    } catch (IOException e) {
+                        opened.completeExceptionally(e);
+                    }
+                });
+            } catch (Exception e) {
+                opened.completeExceptionally(e);
+            }
+        });
+
+        return opened;
+    }
+
+    /**
+     * Imports an RDF file into the annotations of the open project in the
+     * background. Cancelling the returned task stops the import, the triples
+     * imported up to then stay in the annotations.
+     *
+     * @param path  Path to the RDF file.
+     *
+     * @return The running task, reporting the bytes read as progress.
+     */
+    public Task<Void> importMetadata(String path) {
+        Task<Void> task = new ImportTask(getMetadata(), path, fxThread);
+        loader.execute(task);
+
+        return task;
+    }
+
+    /**
+     * Publishes a loaded project, unless the loading was cancelled in the
+     * meantime. Cancelling and publishing both happen on the thread that
+     * owns the state, so a loaded project is either published or closed.
+     *
+     * @return True if the project was published.
+     */
+    private boolean handOver(LoadedProject loaded, ProgressMonitor monitor) throws IOException {
+        if (monitor.isCancelled()) {
+            loaded.close();
+            return false;
+        }
+
+        publish(loaded.config, loaded);
+        return true;
+    }
+
+    private synchronized void publish(ProjectConfig config, LoadedProject loaded) throws IOException {
+        if (this.watcher != null) {
+            this.watcher.close();
+            this.watcher = null;
+        }
+        if (this.metadata != null) {
+            this.metadata.close();
+        }
+
+        if (loaded != null) {
+            this.watcher = new MetadataWatcher(config.getProjectPath(), loaded.metadata, fxThread);
+            this.watcher.start();
+
+            this.service = loaded.service;
+            this.metadata = loaded.metadata;
+            this.fileService = loaded.fileService;
+        } else {
+            this.service = null;
+            this.metadata = null;
+            this.fileService = null;
         }
+
         this.config.set(config);
     }
 
@@ -77,4 +207,135 @@ public class ProjectState {
     }
 
     public synchronized FileService getFileService() { return fileService; }
+
+    /**
+     * The services of a project which was loaded but not yet published.
+     */
+    private static class LoadedProject {
+
+        private final ProjectConfig config;
+        private final ProjectService service;
+        private final MetadataService metadata;
+        private final FileService fileService;
+
+        private boolean closed = false;
+
+        public LoadedProject(ProjectConfig config, ProgressMonitor monitor) throws IOException {
+            this.config = config;
+            this.service = ProjectService.create(config);
+            this.metadata = MetadataService.create(config, monitor);
+
+            try {
+                this.fileService = new FileService(Paths.get(config.getProjectPath()));
+            } catch (RuntimeException e) {
+                metadata.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Releases the files of the project, may be called more than once.
+         */
+        public synchronized void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                metadata.close();
+            }
+        }
+    }
+
+    /**
+     * A task that is the progress monitor of the operation it runs.
+     */
+    private static abstract class MonitoredTask<V> extends Task<V> implements ProgressMonitor {
+
+        @Override
+        public void progress(String message, long done, long total) {
+            updateMessage(message);
+            updateProgress(done, total);
+        }
+    }
+
+    /**
+     * Builds the services of a project on a worker thread and publishes
+     * them when it has succeeded. The services are closed if the task is
+     * cancelled or fails after they were built.
+     */
+    private class ProjectLoadTask extends MonitoredTask<ProjectConfig> {
+
+        private final ProjectConfig loading;
+        private volatile LoadedProject loaded;
+
+        public ProjectLoadTask(ProjectConfig config) {
+            this.loading = config;
+        }
+
+        @Override
+        protected ProjectConfig call() throws Exception {
+            loaded = new LoadedProject(loading, this);
+
+            // a cancel from here on is handled by cancelled()
+            if (isCancelled()) {
+                loaded.close();
+                throw new CancellationException("Loading of project was cancelled");
+            }
+
+            return loading;
+        }
+
+        @Override
+        protected void succeeded() {
+            try {
+                handOver(loaded, this);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        @Override
+        protected void cancelled() {
+            discard();
+        }
+
+        @Override
+        protected void failed() {
+            discard();
+        }
+
+        private void discard() {
+            LoadedProject project = loaded;
+            if (project != null) {
+                try {
+                    project.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Imports a file into the annotations. The file is parsed on a worker
+     * thread, the parsed batches are added on the FX application thread.
+     */
+    private static class ImportTask extends MonitoredTask<Void> {
+
+        private final MetadataService metadata;
+        private final String path;
+        private final Executor fxThread;
+
+        public ImportTask(MetadataService metadata, String path, Executor fxThread) {
+            this.metadata = metadata;
+            this.path = path;
+            this.fxThread = fxThread;
+        }
+
+        @Override
+        protected Void call() throws Exception {
+            updateMessage("Importing " + Paths.get(path).getFileName());
+            metadata.importMetadata(path, this, fxThread);
+
+            return null;
+        }
+    }
 }
@@ -8,11 +8,13 @@
 
 package gndata.app.state;
 
+import java.util.concurrent.*;
 import javax.inject.Singleton;
 import javafx.beans.property.*;
 import javafx.collections.ObservableList;
 
-import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.rdf.model.Resource;
+import gndata.lib.util.*;
 
 /**
  * Class that provides state information about metadata selections, changes and
@@ -21,16 +23,117 @@ import com.hp.hpl.jena.rdf.model.*;
 @Singleton
 public class QueryState {
 
+    /**
+     * Default query timeout in seconds.
+     */
+    public static final long DEFAULT_TIMEOUT = 30;
+
     private StringProperty currentQuery;
-    private ObjectProperty<Statement> selectedStatement;
-    private ObjectProperty<Model> selectedModel;
+    private ObjectProperty<Resource> selectedResource;
+    private ObjectProperty<ResultPager> results;
+    private LongProperty resultCount;
+    private LongProperty timeout;
+    private ObjectProperty<QueryProfile> profile;
+    private ReadOnlyObjectWrapper<QueryTask> runningQuery;
+
+    private final ExecutorService runner;
+    private final ExecutorService pager;
 
     private ObservableList<String> queryHistory;  // mockup for the future <-->
 
     public QueryState() {
         currentQuery = new SimpleStringProperty();
-        selectedStatement = new SimpleObjectProperty<>();
-        selectedModel = new SimpleObjectProperty<>();
+        selectedResource = new SimpleObjectProperty<>();
+        results = new SimpleObjectProperty<>();
+        resultCount = new SimpleLongProperty();
+        timeout = new SimpleLongProperty(DEFAULT_TIMEOUT);
+        profile = new SimpleObjectProperty<>();
+        runningQuery = new ReadOnlyObjectWrapper<>();
+
+        runner = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "query-runner");
+            t.setDaemon(true);
+            return t;
+        });
+        pager = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "query-pager");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Returns the executor which reads the pages of the results in the
+     * background. Pages are read one after another, so the pager of the
+     * results is never used by two threads at once.
+     *
+     * @return The executor for page reads.
+     */
+    public Executor getPager() {
+        return pager;
+    }
+
+    /**
+     * Runs a query in the background. A query which is still running is
+     * cancelled, so only the latest query delivers results. Must be called
+     * on the FX application thread.
+     *
+     * @param task  The query to run.
+     */
+    public void execute(QueryTask task) {
+        cancelQuery();
+
+        task.runningProperty().addListener((o, p, n) -> {
+            if (!n && runningQuery.get() == task) {
+                runningQuery.set(null);
+            }
+        });
+
+        runningQuery.set(task);
+        runner.execute(task);
+    }
+
+    /**
+     * Aborts the running query, if there is any.
+     */
+    public void cancelQuery() {
+        QueryTask task = runningQuery.get();
+        if (task != null) {
+            task.cancel();
+            runningQuery.set(null);
+        }
+    }
+
+    public QueryTask getRunningQuery() {
+        return runningQuery.get();
+    }
+
+    public ReadOnlyObjectProperty<QueryTask> runningQueryProperty() {
+        return runningQuery.getReadOnlyProperty();
+    }
+
+    public QueryProfile getProfile() {
+        return profile.get();
+    }
+
+    public ObjectProperty<QueryProfile> profileProperty() {
+        return profile;
+    }
+
+    public void setProfile(QueryProfile profile) {
+        this.profile.set(profile);
+    }
+
+    public long getTimeout() {
+        return timeout.get();
+    }
+
+    public LongProperty timeoutProperty() {
+        return timeout;
+    }
+
+    public void setTimeout(long timeout) {
+        this.timeout.set(timeout);
     }
 
     public String getCurrentQuery() {
@@ -44,27 +147,50 @@ public class QueryState {
         this.currentQuery.set(query);
     }
 
-    public Statement getSelectedStatement() {
-        return selectedStatement.get();
+    public Resource getSelectedResource() {
+        return selectedResource.get();
+    }
+
+    public ObjectProperty<Resource> selectedResourceProperty() {
+        return selectedResource;
+    }
+
+    public void setSelectedResource(Resource selectedResource) {
+        this.selectedResource.set(selectedResource);
+    }
+
+    public ResultPager getResults() {
+        return results.get();
     }
 
-    public ObjectProperty<Statement> selectedStatementProperty() {
-        return selectedStatement;
+    public ObjectProperty<ResultPager> resultsProperty() {
+        return results;
     }
 
-    public void setSelectedStatement(Statement selectedStatement) {
-        this.selectedStatement.set(selectedStatement);
+    /**
+     * Replaces the results of the last query. The pager of the replaced
+     * results is closed after the pages requested so far.
+     *
+     * @param results   The new results or null.
+     */
+    public void setResults(ResultPager results) {
+        ResultPager old = this.results.get();
+        if (old != null && old != results) {
+            pager.execute(old::close);
+        }
+
+        this.results.set(results);
     }
 
-    public Model getSelectedModel() {
-        return selectedModel.get();
+    public long getResultCount() {
+        return resultCount.get();
     }
 
-    public ObjectProperty<Model> selectedModelProperty() {
-        return selectedModel;
+    public LongProperty resultCountProperty() {
+        return resultCount;
     }
 
-    public void setSelectedModel(Model model) {
-        this.selectedModel.set(model);
+    public void setResultCount(long count) {
+        this.resultCount.set(count);
     }
 }
@@ -0,0 +1,278 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.app.state;
+
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import javafx.application.Platform;
+import javafx.beans.property.*;
+import javafx.concurrent.Task;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.*;
+import gndata.lib.util.*;
+import org.apache.jena.atlas.lib.AlarmClock;
+
+/**
+ * Runs a query on a worker thread. The task publishes a {@link ResultPager}
+ * as its value right away and evaluates the query once, adding the distinct
+ * resources of the solutions to the pager. So the first resources can be
+ * shown while the task reads the other solutions. The number of resources
+ * found so far is published regularly.
+ *
+ * Cancelling the task aborts the query evaluation. If the query runs longer
+ * than its timeout, it is aborted as well and the task fails with a
+ * {@link TimeoutException}. The pager stays usable in both cases.
+ *
+ * The resources of a query which was read completely are kept in the
+ * {@link ResultCache} of the helper. Running the query again takes them from
+ * the cache, as long as no predicate or type the query matches has changed.
+ *
+ * A profiled task records the statistics of the query execution and
+ * publishes them when the query has ended, also if it was aborted. It
+ * always evaluates the query.
+ *
+ * The solutions are read in chunks under the read lock of the model, so
+ * changes of the model wait at most for one chunk. If the model has changed
+ * between two chunks, reading continues on the changed model at the number
+ * of solutions read so far. The pager reports the first change of the
+ * model after reading started, the results are then counted again by a
+ * task over the same pager, see {@link #QueryTask(ResultPager, long)}.
+ */
+public class QueryTask extends Task<ResultPager> {
+
+    /**
+     * Minimal time between two published counts in milliseconds.
+     */
+    public static final long PUBLISH_INTERVAL = 250;
+
+    /**
+     * Number of solutions read under the read lock at once.
+     */
+    public static final int CHUNK_SIZE = 1000;
+
+    private final QueryHelper helper;
+    private final String queryBody;
+    private final ResultPager recounted;
+    private final long timeout;
+    private final boolean profiling;
+
+    private final ReadOnlyObjectWrapper<QueryProfile> profile = new ReadOnlyObjectWrapper<>();
+    private final ReadOnlyLongWrapper count = new ReadOnlyLongWrapper();
+
+    private volatile QueryCursor cursor;
+    private volatile boolean timedOut = false;
+
+    /**
+     * Creates a new query task.
+     *
+     * @param helper        The query helper of the metadata.
+     * @param queryBody     The query without prefix declarations.
+     * @param timeout       The timeout in seconds, 0 for no timeout.
+     */
+    public QueryTask(QueryHelper helper, String queryBody, long timeout) {
+        this(helper, queryBody, timeout, false);
+    }
+
+    /**
+     * Creates a new query task, which may profile the query.
+     *
+     * @param helper        The query helper of the metadata.
+     * @param queryBody     The query without prefix declarations.
+     * @param timeout       The timeout in seconds, 0 for no timeout.
+     * @param profiling     True to record the statistics of the execution.
+     */
+    public QueryTask(QueryHelper helper, String queryBody, long timeout, boolean profiling) {
+        this.helper = helper;
+        this.queryBody = queryBody;
+        this.recounted = null;
+        this.timeout = timeout;
+        this.profiling = profiling;
+    }
+
+    /**
+     * Creates a task which evaluates the query of earlier results again,
+     * after the model has changed. The task publishes the given pager, whose
+     * resources are replaced when the query has been read completely, and
+     * only the final count. The results keep their old rows meanwhile.
+     *
+     * @param pager     The pager of the results to count.
+     * @param timeout   The timeout in seconds, 0 for no timeout.
+     */
+    public QueryTask(ResultPager pager, long timeout) {
+        this.helper = pager.getHelper();
+        this.queryBody = null;
+        this.recounted = pager;
+        this.timeout = timeout;
+        this.profiling = false;
+    }
+
+    public QueryProfile getProfile() {
+        return profile.get();
+    }
+
+    public ReadOnlyObjectProperty<QueryProfile> profileProperty() {
+        return profile.getReadOnlyProperty();
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public ReadOnlyLongProperty countProperty() {
+        return count.getReadOnlyProperty();
+    }
+
+    @Override
+    protected ResultPager call() throws Exception {
+        CachedQuery query;
+        ResultPager pager;
+
+        // a recount is never profiled
+        QueryProfile stats = profiling ? helper.profile(queryBody) : null;
+
+        if (recounted == null) {
+            updateMessage("Running query");
+
+            // the prefixes of the model are known to the query, no need to prepend them
+            query = helper.prepare(queryBody);
+            pager = new ResultPager(helper, query);
+        } else {
+            updateMessage("Updating results");
+
+            query = recounted.getQuery();
+            pager = recounted;
+        }
+        updateValue(pager);
+
+        // a change while counting makes the count outdated as well
+        pager.watch();
+
+        // the resources are known if their part of the model did not change
+        ResultCache cache = helper.getResultCache();
+        List<Node> cached = stats == null ? cache.getResources(query) : null;
+        if (cached != null) {
+            pager.setResources(cached);
+            updateCount(cached.size());
+            updateMessage(String.format("Found %d resources", cached.size()));
+            return pager;
+        }
+        long epoch = cache.getEpoch();
+
+        // a recount collects the resources aside and replaces them when done
+        ResultPager found = recounted == null ? pager : new ResultPager(helper, query);
+
+        Runnable alarm = this::timeout;
+        if (timeout > 0) {
+            AlarmClock.get().add(alarm, timeout * 1000);
+        }
+
+        Lock lock = helper.readLock();
+        QueryCursor results = null;
+        long generation = 0;
+        long offset = 0;
+        boolean counted = false;
+        try {
+            long published = System.currentTimeMillis();
+            List<QuerySolution> chunk;
+
+            do {
+                lock.lock();
+                try {
+                    if (results == null || generation != helper.getGeneration()) {
+                        // a cursor can not be read across changes, count on from here
+                        if (results != null) {
+                            offset += results.getPosition();
+                            results.close();
+                        }
+
+                        generation = helper.getGeneration();
+                        results = stats != null && offset == 0
+                                ? helper.select(stats) : helper.select(query, offset, Query.NOLIMIT);
+
+                        cursor = results;
+                        if (isCancelled() || timedOut) {
+                            results.cancel();
+                        }
+                    }
+
+                    chunk = results.nextPage(CHUNK_SIZE);
+                } finally {
+                    lock.unlock();
+                }
+
+                // the pager is not used under the read lock, its pages are read with it
+                found.add(chunk);
+
+                long now = System.currentTimeMillis();
+                if (recounted == null && now - published >= PUBLISH_INTERVAL) {
+                    published = now;
+                    updateCount(found.size());
+                    updateMessage(String.format("Read %d solutions", offset + results.getPosition()));
+                }
+            } while (!chunk.isEmpty());
+
+            counted = true;
+            cache.putResources(query, epoch, found.getResources());
+            updateMessage(String.format("Found %d resources in %d solutions",
+                    found.size(), offset + results.getPosition()));
+        } catch (QueryCancelledException e) {
+            if (timedOut) {
+                throw new TimeoutException(String.format("Query aborted after %d seconds", timeout));
+            }
+            throw e;
+        } finally {
+            AlarmClock.get().cancel(alarm);
+            cursor = null;
+
+            // the resources found so far can be browsed after an abort as well,
+            // an aborted recount leaves the old resources
+            if (results != null) {
+                results.close();
+            }
+            if (counted && recounted != null) {
+                recounted.setResources(found.getResources());
+            }
+            if (counted || recounted == null) {
+                updateCount(found.size());
+            }
+            if (stats != null) {
+                Platform.runLater(() -> profile.set(stats));
+            }
+        }
+
+        return pager;
+    }
+
+    private void updateCount(long counted) {
+        Platform.runLater(() -> count.set(counted));
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+
+        QueryCursor current = cursor;
+        if (current != null) {
+            current.cancel();
+        }
+
+        return cancelled;
+    }
+
+    private void timeout() {
+        timedOut = true;
+
+        QueryCursor current = cursor;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+}
@@ -11,8 +11,8 @@ package gndata.app.ui.dia;
 import java.net.URL;
 import java.util.ResourceBundle;
 
-import javafx.beans.property.SimpleStringProperty;
-import javafx.beans.property.StringProperty;
+import javafx.beans.property.*;
+import javafx.collections.*;
 import javafx.fxml.*;
 import javafx.scene.layout.BorderPane;
 
@@ -29,6 +29,7 @@ public class ProjectConfigCtrl extends ValueDialogCtrl<ProjectConfig> implements
     private final ProjectConfig config;
     private final StringProperty name;
     private final StringProperty description;
+    private final ObjectProperty<ProjectConfig.Storage> storage;
 
     /**
      * Constructor.
@@ -39,6 +40,7 @@ public class ProjectConfigCtrl extends ValueDialogCtrl<ProjectConfig> implements
         this.config = new ProjectConfig(config);
         name = new SimpleStringProperty();
         description = new SimpleStringProperty();
+        storage = new SimpleObjectProperty<>();
     }
 
     /**
@@ -50,6 +52,7 @@ public class ProjectConfigCtrl extends ValueDialogCtrl<ProjectConfig> implements
     public void initialize(URL location, ResourceBundle resources) {
         name.bindBidirectional(config.nameProperty());
         description.bindBidirectional(config.descriptionProperty());
+        storage.bindBidirectional(config.storageProperty());
     }
 
     /**
@@ -71,4 +74,12 @@ public class ProjectConfigCtrl extends ValueDialogCtrl<ProjectConfig> implements
     public StringProperty descriptionProperty() {
         return description;
     }
+
+    public ObjectProperty<ProjectConfig.Storage> storageProperty() {
+        return storage;
+    }
+
+    public ObservableList<ProjectConfig.Storage> getStorageOptions() {
+        return FXCollections.observableArrayList(ProjectConfig.Storage.values());
+    }
 }
@@ -12,10 +12,13 @@ import gndata.app.state.AppState;
 import gndata.app.state.ProjectState;
 import gndata.app.ui.dia.ProjectConfigView;
 import gndata.app.ui.dia.ProjectListView;
+import gndata.app.ui.util.ProgressDialogView;
 import gndata.lib.config.GlobalConfig;
 import gndata.lib.config.ProjectConfig;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
+import javafx.scene.control.Alert;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuBar;
 import javafx.stage.DirectoryChooser;
@@ -70,19 +73,54 @@ public class MenuCtrl implements Initializable {
             Optional<ProjectConfig> optConfig = showConfigDialog(config);
 
             if (optConfig.isPresent()) {
-                config = optConfig.get();
-
-                config.store();
-                projectState.setConfig(config);
-
-                appState.getConfig().setProject(config.getProjectPath(), config.getName());
-                appState.getConfig().store();
+                ProjectConfig created = optConfig.get();
+
+                created.store();
+
+                // the project is remembered once it was opened successfully
+                Task<ProjectConfig> task = loadProject(created);
+                task.setOnSucceeded(e -> {
+                    try {
+                        appState.getConfig().setProject(created.getProjectPath(), created.getName());
+                        appState.getConfig().store();
+                    } catch (IOException ex) {
+                        showError("Unable to store the project list", ex);
+                    }
+                });
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            showError("Unable to create project", e);
         }
     }
 
+    /**
+     * Loads a project in the background while a progress dialog is shown.
+     * The dialog allows to cancel the loading.
+     *
+     * @param config    The configuration of the project to load.
+     *
+     * @return The running task, succeeds once the project was opened.
+     */
+    protected Task<ProjectConfig> loadProject(ProjectConfig config) {
+        Task<ProjectConfig> task = projectState.openConfig(config);
+        task.setOnFailed(e -> showError("Unable to open project", task.getException()));
+
+        showProgress("Opening project", task);
+
+        return task;
+    }
+
+    /**
+     * Shows a progress dialog for a background task.
+     *
+     * @param title The title of the dialog.
+     * @param task  The running task.
+     */
+    protected void showProgress(String title, Task<?> task) {
+        ProgressDialogView progress = new ProgressDialogView(title, task);
+        progress.show();
+    }
+
     /**
      * Shows a directory chooser dialog.
      *
@@ -120,7 +158,7 @@ public class MenuCtrl implements Initializable {
                 ProjectConfig config = optConfig.get();
 
                 config.store();
-                projectState.setConfig(config);
+                loadProject(config);
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -136,9 +174,9 @@ public class MenuCtrl implements Initializable {
         if (optPath.isPresent()) {
             try {
                 ProjectConfig config = ProjectConfig.load(optPath.get());
-                projectState.setConfig(config);
+                loadProject(config);
             } catch (IOException e) {
-                e.printStackTrace();
+                showError("Unable to open project", e);
             }
         }
     }
@@ -154,11 +192,34 @@ public class MenuCtrl implements Initializable {
         return listView.showAndGet();
     }
 
+    /**
+     * Imports a file into the annotations in the background while a
+     * progress dialog is shown. The dialog allows to cancel the import.
+     */
     public void importMetadata() {
         Optional<File> fopt = askForFile("Select the metadata to import",
-                                         new FileChooser.ExtensionFilter("RDF data", "*.ttl", "*.rdf"),
+                                         new FileChooser.ExtensionFilter("RDF data", "*.ttl", "*.rdf", "*.nt", "*.nq"),
                                          new FileChooser.ExtensionFilter("All Files", "*.*"));
-        fopt.ifPresent(f -> projectState.getMetadata().importMetadata(f.getPath()));
+        if (fopt.isPresent()) {
+            Task<Void> task = projectState.importMetadata(fopt.get().getPath());
+            task.setOnFailed(e -> showError("Unable to import metadata", task.getException()));
+
+            showProgress("Importing metadata", task);
+        }
+    }
+
+    /**
+     * Shows an error dialog.
+     *
+     * @param header    Short description of what went wrong.
+     * @param e         The cause of the error.
+     */
+    protected void showError(String header, Throwable e) {
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle("Error");
+        alert.setHeaderText(header);
+        alert.setContentText(e.getMessage());
+        alert.showAndWait();
     }
 
     protected Optional<File> askForFile(String title,
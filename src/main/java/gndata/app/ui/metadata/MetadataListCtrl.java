@@ -10,7 +10,9 @@ package gndata.app.ui.metadata;
 
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
+import javafx.application.Platform;
 import javafx.beans.property.*;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.value.*;
@@ -22,12 +24,14 @@ import javafx.scene.control.*;
 import javafx.scene.input.MouseEvent;
 
 import com.google.inject.Inject;
+import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.rdf.model.*;
 import com.hp.hpl.jena.vocabulary.RDF;
 import gndata.app.state.*;
 import gndata.app.ui.metadata.manage.*;
 import gndata.app.ui.util.*;
 import gndata.lib.srv.*;
+import gndata.lib.util.*;
 
 /**
  * Controller for the metadata list. The provided context menu
@@ -41,12 +45,34 @@ import gndata.lib.srv.*;
  */
 public class MetadataListCtrl implements Initializable {
 
+    /**
+     * Parents with more children are shown in a paged list, which only
+     * loads the visible children.
+     */
+    public static final long PAGED_THRESHOLD = 5000;
+
+    /**
+     * Number of children named under one read lock, so sorting or filtering
+     * a paged list in the background does not hold up edits.
+     */
+    private static final int READ_CHUNK = 1000;
+
     private final ProjectState projectState;
     private final MetadataNavState navState;
 
     private final StringProperty filter;
     private final ObservableList<ResourceFileAdapter> unfilteredList;
     private final FilteredList<ResourceFileAdapter> filteredSortedList;
+    private final NGramIndex nameIndex;
+    private final ObjectProperty<ObservableList<ResourceFileAdapter>> listItems;
+    private final Executor loader;
+
+    // the children of a paged parent are read once in the background
+    private ResourceFileAdapter pagedParent;
+    private List<Node> pagedChildren;
+    private PagedList<ResourceFileAdapter> pagedList;
+    // the latest background read, the results of older reads are dropped
+    private volatile int request = 0;
     private final ObjectProperty<MultipleSelectionModel<ResourceFileAdapter>> metadataListSelectionModel;
 
     private final ObjectProperty<EventHandler<? super MouseEvent>> listNavEventHandler;
@@ -68,18 +94,26 @@ public class MetadataListCtrl implements Initializable {
         navState.searchStringProperty().addListener(new SearchStringHandler());
 
         listNavEventHandler = new SimpleObjectProperty<>(new ListNavigationHandler());
+        loader = navState.getLoader();
 
         unfilteredList = FXCollections.observableArrayList();
-        filteredSortedList = new FilteredList<>(
-                            new SortedList<>(
-                                    unfilteredList,
-                                    (o,t) -> o.getFileName().compareTo(t.getFileName())
-                            )
-                        );
+        // the list is sorted when it is filled, see showAll
+        filteredSortedList = new FilteredList<>(unfilteredList);
 
         filter = new SimpleStringProperty();
-        filter.addListener((p, o, n) -> filteredSortedList.setPredicate(fa -> fa.getFileName().contains(n)));
+        filter.addListener((p, o, n) -> applyFilter(n));
+
+        // the names are indexed once per list by their position, so typing in the filter does not scan them again
+        nameIndex = new NGramIndex();
+        unfilteredList.addListener((ListChangeListener<ResourceFileAdapter>) c -> {
+            nameIndex.clear();
+            for (int i = 0; i < unfilteredList.size(); i++) {
+                nameIndex.put(i, unfilteredList.get(i).getFileName());
+            }
+            applyFilter(filter.get());
+        });
 
+        listItems = new SimpleObjectProperty<>(filteredSortedList);
         metadataListSelectionModel = new SimpleObjectProperty<>();
 
         cmRename = new SimpleStringProperty();
@@ -106,6 +140,7 @@ public class MetadataListCtrl implements Initializable {
     // -------------------------------------------
 
     public FilteredList<ResourceFileAdapter> getFilteredList() { return filteredSortedList; }
+    public ObjectProperty<ObservableList<ResourceFileAdapter>> listItemsProperty() { return listItems; }
     public ObjectProperty<MultipleSelectionModel<ResourceFileAdapter>> metadataListSelectionModelProperty() { return metadataListSelectionModel; }
 
     public ObjectProperty<EventHandler<? super MouseEvent>> listNavEventHandlerProperty() { return listNavEventHandler; }
@@ -124,6 +159,188 @@ public class MetadataListCtrl implements Initializable {
     // Custom methods
     // -------------------------------------------
 
+    /**
+     * Shows only the resources with a name containing the filter text.
+     *
+     * @param text  The filter text, empty or null to show all resources.
+     */
+    private void applyFilter(String text) {
+        if (pagedParent != null) {
+            filterPaged(text);
+            return;
+        }
+
+        if (text == null || text.isEmpty()) {
+            filteredSortedList.setPredicate(null);
+        } else {
+            Set<ResourceFileAdapter> matches = new HashSet<>();
+            nameIndex.search(text).forEach(i -> matches.add(unfilteredList.get(i)));
+            filteredSortedList.setPredicate(matches::contains);
+        }
+    }
+
+    /**
+     * Shows the children of a parent sorted by name. If there are many, their
+     * nodes are read and sorted in the background and only the children shown
+     * in the list are loaded. Fewer children are loaded at once, sorted and
+     * filtered in memory.
+     *
+     * @param parent    The parent resource.
+     */
+    private void showChildren(ResourceFileAdapter parent) {
+        long count = parent.countChildren();
+
+        if (count > PAGED_THRESHOLD) {
+            showAll(Collections.emptyList());
+            pagedParent = parent;
+
+            int current = ++request;
+            loader.execute(() -> {
+                List<Node> children = sortedByName(parent, parent.getChildNodes(), current);
+
+                Platform.runLater(() -> {
+                    if (children != null && current == request) {
+                        pagedChildren = children;
+                        filterPaged(filter.get());
+                    }
+                });
+            });
+        } else {
+            showAll(parent.getChildren());
+        }
+    }
+
+    private void showAll(Collection<ResourceFileAdapter> resources) {
+        request++;
+        pagedParent = null;
+        pagedChildren = null;
+        disposePaged();
+
+        unfilteredList.setAll(sorted(resources));
+        listItems.set(filteredSortedList);
+    }
+
+    /**
+     * Shows the children of the paged parent with a name containing the
+     * filter text. The names are matched in the background, only the
+     * matching children are kept.
+     */
+    private void filterPaged(String text) {
+        ResourceFileAdapter parent = pagedParent;
+        List<Node> children = pagedChildren;
+        if (children == null) {
+            // shown once the children are read
+            return;
+        }
+
+        if (text == null || text.isEmpty()) {
+            request++;
+            showPaged(parent, children);
+            return;
+        }
+
+        String query = text.toLowerCase(Locale.ROOT);
+        Model model = parent.getResource().getModel();
+        int current = ++request;
+
+        loader.execute(() -> {
+            List<Node> matches = new ArrayList<>();
+
+            for (int from = 0; from < children.size() && current == request; from += READ_CHUNK) {
+                List<Node> chunk = children.subList(from, Math.min(from + READ_CHUNK, children.size()));
+
+                LockingGraph.read(model, () -> {
+                    for (Node node : chunk) {
+                        if (parent.getChild(node).getFileName().toLowerCase(Locale.ROOT).contains(query)) {
+                            matches.add(node);
+                        }
+                    }
+                    return null;
+                });
+            }
+
+            Platform.runLater(() -> {
+                if (current == request) {
+                    showPaged(parent, matches);
+                }
+            });
+        });
+    }
+
+    private void showPaged(ResourceFileAdapter parent, List<Node> children) {
+        Model model = parent.getResource().getModel();
+
+        disposePaged();
+        pagedList = new PagedList<>(children.size(), (offset, limit) -> LockingGraph.read(model, () -> {
+            List<ResourceFileAdapter> page = new ArrayList<>(limit);
+
+            for (Node node : children.subList((int) offset, (int) Math.min(offset + limit, children.size()))) {
+                ResourceFileAdapter child = parent.getChild(node);
+                // the cells show the names, which are cached by the model
+                child.getFileName();
+                page.add(child);
+            }
+            return page;
+        }), loader);
+
+        listItems.set(pagedList);
+    }
+
+    private void disposePaged() {
+        if (pagedList != null) {
+            pagedList.dispose();
+            pagedList = null;
+        }
+    }
+
+    /**
+     * Sorts resources by the natural order of their names. The sort keys are
+     * computed once per resource, in parallel like the sort itself.
+     */
+    private static ResourceFileAdapter[] sorted(Collection<ResourceFileAdapter> resources) {
+        ResourceFileAdapter[] array = resources.toArray(new ResourceFileAdapter[resources.size()]);
+
+        Arrays.stream(array).parallel().forEach(ResourceFileAdapter::getSortKey);
+        Arrays.parallelSort(array, Comparator.comparing(ResourceFileAdapter::getSortKey));
+
+        return array;
+    }
+
+    /**
+     * Sorts the children of a paged parent like {@link #sorted(Collection)}.
+     * The sort keys are computed once per child, in chunks under the read
+     * lock, and dropped after sorting, so only the sorted nodes are kept.
+     *
+     * @return The sorted nodes or null if a newer request was made meanwhile.
+     */
+    private List<Node> sortedByName(ResourceFileAdapter parent, List<Node> nodes, int current) {
+        Model model = parent.getResource().getModel();
+        KeyedNode[] keyed = new KeyedNode[nodes.size()];
+
+        for (int from = 0; from < keyed.length; from += READ_CHUNK) {
+            if (current != request) {
+                return null;
+            }
+
+            int start = from;
+            LockingGraph.read(model, () -> {
+                for (int i = start; i < Math.min(start + READ_CHUNK, keyed.length); i++) {
+                    Node node = nodes.get(i);
+                    keyed[i] = new KeyedNode(node, parent.getChild(node).getSortKey());
+                }
+                return null;
+            });
+        }
+
+        Arrays.parallelSort(keyed, Comparator.comparing((KeyedNode k) -> k.key));
+
+        List<Node> sorted = new ArrayList<>(keyed.length);
+        for (KeyedNode k : keyed) {
+            sorted.add(k.node);
+        }
+        return sorted;
+    }
+
     /**
      * Set ContextMenu content
      */
@@ -196,7 +413,7 @@ public class MetadataListCtrl implements Initializable {
                 navState, metadataListSelectionModel.get().getSelectedItem().getResource());
         addInst.show();
 
-        unfilteredList.setAll(navState.getSelectedParent().getChildren());
+        showChildren(navState.getSelectedParent());
     }
 
     /**
@@ -208,7 +425,7 @@ public class MetadataListCtrl implements Initializable {
                 navState, null);
         addInst.show();
 
-        unfilteredList.setAll(navState.getSelectedParent().getChildren());
+        showChildren(navState.getSelectedParent());
     }
 
     /**
@@ -224,7 +441,7 @@ public class MetadataListCtrl implements Initializable {
 
         navState.getSelectedParent().removeObjectProperties(remList);
 
-        unfilteredList.setAll(navState.getSelectedParent().getChildren());
+        showChildren(navState.getSelectedParent());
     }
 
     // TODO add user validation before actually deleting an instance
@@ -239,7 +456,7 @@ public class MetadataListCtrl implements Initializable {
                 .iterator()
                 .forEachRemaining(ResourceAdapter::remove);
 
-        unfilteredList.setAll(navState.getSelectedParent().getChildren());
+        showChildren(navState.getSelectedParent());
     }
 
 
@@ -247,6 +464,20 @@ public class MetadataListCtrl implements Initializable {
     // Custom classes
     // -------------------------------------------
 
+    /**
+     * A child node with the key to sort it by its name.
+     */
+    private static class KeyedNode {
+
+        private final Node node;
+        private final NaturalSortKey key;
+
+        public KeyedNode(Node node, NaturalSortKey key) {
+            this.node = node;
+            this.key = key;
+        }
+    }
+
     /**
      * Listen for double clicks on the list.
      */
@@ -269,8 +500,8 @@ public class MetadataListCtrl implements Initializable {
         public void changed(ObservableValue<? extends ResourceFileAdapter> observable, ResourceFileAdapter oldValue,
                             ResourceFileAdapter newValue) {
 
-            unfilteredList.setAll(newValue.getChildren());
             filter.set("");
+            showChildren(newValue);
             navState.setShowBrowsingResults(true);
         }
     }
@@ -278,6 +509,8 @@ public class MetadataListCtrl implements Initializable {
 
     /**
      * Listen for changes in the search string property of the navigation state.
+     * The search runs in the background, a newer search or navigation
+     * cancels it.
      */
     private class SearchStringHandler implements ChangeListener<String> {
 
@@ -287,13 +520,35 @@ public class MetadataListCtrl implements Initializable {
             MetadataService ms = projectState.getMetadata();
 
             if (ms != null) {
+                String search = navState.getSearchString();
+                Model model = ms.getAnnotations();
 
-                unfilteredList.setAll(
-                        ms.query.streamSearchResults(navState.getSearchString())
-                                .map(r -> new ResourceFileAdapter(r, null))
-                                .collect(Collectors.toList())
-                );
+                showAll(Collections.emptyList());
                 filter.set("");
+
+                int current = request;
+                loader.execute(() -> {
+                    List<ResourceFileAdapter> found;
+                    try {
+                        found = ms.query.streamSearchResults(search, () -> current != request)
+                                .map(r -> new ResourceFileAdapter(r, null))
+                                .collect(Collectors.toList());
+                    } catch (CancellationException e) {
+                        return;
+                    }
+
+                    // the names are read for sorting here instead of on the FX thread
+                    LockingGraph.read(model, () -> {
+                        found.forEach(ResourceFileAdapter::getSortKey);
+                        return null;
+                    });
+
+                    Platform.runLater(() -> {
+                        if (current == request) {
+                            showAll(found);
+                        }
+                    });
+                });
             }
         }
     }
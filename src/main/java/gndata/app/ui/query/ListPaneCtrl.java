@@ -15,26 +15,31 @@ import javafx.fxml.*;
 import javafx.scene.control.ListView;
 
 import com.google.inject.Inject;
-import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.Resource;
 import gndata.app.state.QueryState;
 import gndata.app.ui.util.TwoLineListCell;
 import gndata.lib.srv.ResourceAdapter;
+import gndata.lib.util.ResultPager;
 
 
 public class ListPaneCtrl implements Initializable {
 
     @FXML
-    private ListView<Statement> lv;
+    private ListView<Resource> lv;
 
     private QueryState qs;
+    private ResultList results;
 
     @Inject
     public ListPaneCtrl(QueryState qs) {
         this.qs = qs;
 
-        qs.selectedModelProperty().addListener((o, p, n) ->
-            lv.getItems().setAll(n == null ? FXCollections.observableArrayList() : n.listStatements().toList())
-        );
+        qs.resultsProperty().addListener((o, p, n) -> showResults(n));
+        qs.resultCountProperty().addListener((o, p, n) -> {
+            if (results != null) {
+                results.setSize(n.longValue());
+            }
+        });
     }
 
     @Override
@@ -43,20 +48,56 @@ public class ListPaneCtrl implements Initializable {
 
         lv.getSelectionModel()
                 .selectedItemProperty()
-                .addListener((obs, oldVal, newVal) ->
-                        qs.setSelectedStatement(newVal != null ? newVal : null)
-        );
+                .addListener((obs, oldVal, newVal) -> qs.setSelectedResource(select(newVal)));
+    }
+
+    /**
+     * Returns the resource in the queried model for a row. Rows are part of
+     * the description of their page, the details show the current state.
+     */
+    private Resource select(Resource row) {
+        ResultPager pager = qs.getResults();
+
+        return row == null || pager == null ? null : pager.getHelper().getModel().wrapAsResource(row.asNode());
+    }
+
+    /**
+     * Shows the rows of new results, only the visible rows are loaded.
+     */
+    private void showResults(ResultPager pager) {
+        if (results != null) {
+            results.dispose();
+        }
+
+        if (pager == null) {
+            results = null;
+            lv.setItems(FXCollections.observableArrayList());
+        } else {
+            results = new ResultList(pager, qs.getPager());
+            results.setSize(qs.getResultCount());
+            lv.setItems(results);
+        }
     }
 
-    private class QueryListCell extends TwoLineListCell<Statement> {
+    private class QueryListCell extends TwoLineListCell<Resource> {
 
         @Override
-        protected void update(Statement stmt, boolean empty) {
-            if (!empty) {
-                ResourceAdapter node = new ResourceAdapter(stmt.getSubject());
+        protected void update(Resource row, boolean empty) {
+            if (empty) {
+                lineOne.set(null);
+                lineTwo.set(null);
+            } else if (row == null) {
+                String error = results != null && getListView().getItems() == results
+                        ? results.getError(getIndex()) : null;
+
+                lineOne.set(error == null ? "Loading..." : "Unable to load the results");
+                lineTwo.set(error);
+            } else {
+                // the row is read from the description of its page
+                ResourceAdapter resource = new ResourceAdapter(row);
 
-                lineOne.set(node.toNameString());
-                lineTwo.set(node.toNameString());
+                lineOne.set(resource.toNameString());
+                lineTwo.set(resource.toInfoString());
             }
         }
     }
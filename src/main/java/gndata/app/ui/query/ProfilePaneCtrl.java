@@ -0,0 +1,40 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.app.ui.query;
+
+import java.net.URL;
+import java.util.ResourceBundle;
+import javafx.fxml.*;
+import javafx.scene.control.TextArea;
+
+import com.google.inject.Inject;
+import gndata.app.state.QueryState;
+
+/**
+ * Controller for the pane showing the profile of the last profiled query.
+ */
+public class ProfilePaneCtrl implements Initializable {
+
+    @FXML
+    private TextArea report;
+
+    private QueryState qs;
+
+    @Inject
+    public ProfilePaneCtrl(QueryState qs) {
+        this.qs = qs;
+    }
+
+    @Override
+    public void initialize(URL url, ResourceBundle resourceBundle) {
+        qs.profileProperty().addListener((o, p, n) ->
+                report.setText(n == null ? "" : n.toString())
+        );
+    }
+}
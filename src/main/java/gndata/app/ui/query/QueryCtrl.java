@@ -10,17 +10,15 @@ package gndata.app.ui.query;
 
 import java.net.URL;
 import java.util.*;
-import java.util.stream.Collectors;
 import javax.inject.Inject;
+import javafx.application.Platform;
 import javafx.fxml.*;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
 
-import com.hp.hpl.jena.query.*;
-import com.hp.hpl.jena.rdf.model.*;
 import gndata.app.state.*;
 import gndata.lib.srv.MetadataService;
-import org.apache.jena.atlas.lib.StrUtils;
+import gndata.lib.util.ResultPager;
 
 
 /**
@@ -34,6 +32,10 @@ public class QueryCtrl implements Initializable {
     private TextArea prefixArea;
     @FXML
     private TextArea ta;
+    @FXML
+    private Button cancelButton;
+    @FXML
+    private Label status;
 
     private ProjectState projectState;
     private QueryState queryState;
@@ -43,13 +45,13 @@ public class QueryCtrl implements Initializable {
         this.projectState = ps;
         this.queryState = qs;
 
-        queryState.currentQueryProperty().addListener((obs, odlVal, newVal) ->
-                queryState.setSelectedModel(runQuery()));
+        queryState.currentQueryProperty().addListener((obs, odlVal, newVal) -> runQuery());
     }
 
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle) {
         ta.textProperty().bindBidirectional(queryState.currentQueryProperty());
+        cancelButton.disableProperty().bind(queryState.runningQueryProperty().isNull());
 
         projectState.configProperty().addListener((o, p, n) -> {
             if (projectState.isConfigured()) {
@@ -58,48 +60,75 @@ public class QueryCtrl implements Initializable {
         });
     }
 
-    public Model runQuery() {
-        String maxResults = "100";
-
-        Model selection = ModelFactory.createDefaultModel();
+    /**
+     * Runs the current query in the background. The results can be browsed
+     * as soon as the query started, their count is updated while the query
+     * is running and after changes of the metadata.
+     */
+    public void runQuery() {
+        runQuery(false);
+    }
 
-        if (projectState.isConfigured()) {
-            try {
-                ResultSet results = projectState.getMetadata().query.ExecSelect(
-                    StrUtils.strjoinNL(
-                        projectState.getMetadata().query.getPrefixHeader(),
-                        queryState.getCurrentQuery(),
-                        "LIMIT " + maxResults
-                    ));
+    /**
+     * Runs the current query in the background and shows the statistics
+     * of its execution in the profile pane.
+     */
+    @FXML
+    public void profileQuery() {
+        runQuery(true);
+    }
 
+    private void runQuery(boolean profiling) {
+        if (!projectState.isConfigured()) {
+            queryState.setResults(null);
+            queryState.setResultCount(0);
+            return;
+        }
 
-                List<Statement> lst = new ArrayList<>();
+        MetadataService metadata = projectState.getMetadata();
+        run(new QueryTask(metadata.query, queryState.getCurrentQuery(),
+                queryState.getTimeout(), profiling));
+    }
 
-                // this simply parses the result set and creates a model
-                // containing all the statements from it
-                results.forEachRemaining(soln -> {
-                    results.getResultVars().forEach(var -> {
-                        RDFNode n = soln.get(var);
+    /**
+     * Counts the solutions of the shown results again after the metadata
+     * has changed. A new query which is running already is not replaced.
+     */
+    private void recount(ResultPager pager) {
+        QueryTask running = queryState.getRunningQuery();
 
-                        if (n.isResource()) {
-                            StmtIterator iter = projectState.getMetadata()
-                                    .getAnnotations()
-                                    .listStatements((Resource) n, null, (RDFNode) null);
+        if (queryState.getResults() != pager || (running != null && running.getValue() != pager)) {
+            return;
+        }
 
-                            if (iter.hasNext()) {
-                                lst.addAll(iter.toList());
-                            }
-                        }
-                    });
-                });
+        run(new QueryTask(pager, queryState.getTimeout()));
+    }
 
-                selection = selection.add(lst);
+    private void run(QueryTask task) {
+        // results of a replaced query are dropped, recounted results are kept
+        task.valueProperty().addListener((o, p, n) -> {
+            if (n != null && !task.isCancelled() && n != queryState.getResults()) {
+                n.addChangeHandler(() -> Platform.runLater(() -> recount(n)));
 
-            } catch (QueryParseException e) {
-                ta.setText(e.getMessage());
+                queryState.setResultCount(task.getCount());
+                queryState.setResults(n);
             }
-        }
+        });
+        task.countProperty().addListener((o, p, n) -> {
+            if (queryState.getResults() == task.getValue()) {
+                queryState.setResultCount(n.longValue());
+            }
+        });
+        task.profileProperty().addListener((o, p, n) -> queryState.setProfile(n));
+        task.messageProperty().addListener((o, p, n) -> status.setText(n));
+        task.setOnCancelled(e -> status.setText("Query cancelled"));
+        task.setOnFailed(e -> status.setText(task.getException().getMessage()));
+
+        queryState.execute(task);
+    }
 
-        return selection;
+    @FXML
+    public void cancelQuery() {
+        queryState.cancelQuery();
     }
 }
@@ -0,0 +1,236 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.app.ui.query;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+
+import com.hp.hpl.jena.rdf.model.Resource;
+import gndata.lib.util.ResultPager;
+
+/**
+ * A virtual list over the distinct resources of the solutions of a query.
+ * Only the pages around the rows requested by the list view are read from
+ * the {@link ResultPager}, rows which are not yet loaded are null until their
+ * page arrives. Rows of pages which could not be read stay null,
+ * {@link #getError(int)} tells why. When the model changes or the resources
+ * of the pager are replaced, the loaded rows are dropped and the rows in
+ * view are read again.
+ *
+ * Each row is a resource of the description of its page, see
+ * {@link ResultPager#getPage(long)}. The list must only be used on the FX
+ * application thread.
+ */
+public class ResultList extends ObservableListBase<Resource> {
+
+    /**
+     * Number of pages read before and after a requested page.
+     */
+    public static final int PREFETCH = 1;
+
+    /**
+     * Maximum number of pages kept by the list.
+     */
+    public static final int LOADED_PAGES = 16;
+
+    private final ResultPager pager;
+    private final Executor executor;
+    private final int pageSize;
+
+    private final Map<Long, List<Resource>> pages;
+    private final Set<Long> loading = new HashSet<>();
+    private final Map<Long, String> failed = new HashMap<>();
+    private final Runnable changed = () -> Platform.runLater(this::reload);
+
+    private long version = 0;
+    private int size = 0;
+    private boolean disposed = false;
+
+    /**
+     * Creates an empty list over the solutions of a query.
+     *
+     * @param pager     The pager of the solutions.
+     * @param executor  The executor reading the pages in the background.
+     */
+    public ResultList(ResultPager pager, Executor executor) {
+        this.pager = pager;
+        this.executor = executor;
+        this.pageSize = pager.getPageSize();
+        this.pages = new LinkedHashMap<Long, List<Resource>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, List<Resource>> eldest) {
+                return size() > LOADED_PAGES;
+            }
+        };
+
+        pager.addChangeHandler(changed);
+        pager.addResetHandler(changed);
+    }
+
+    /**
+     * Sets the number of known resources. The count of a running query only
+     * grows, rows are added at the end of the list. Counting again after a
+     * change may also remove rows.
+     *
+     * @param count The number of resources.
+     */
+    public void setSize(long count) {
+        int newSize = (int) Math.min(count, Integer.MAX_VALUE);
+        if (newSize == size) {
+            return;
+        }
+
+        beginChange();
+        if (newSize > size) {
+            nextAdd(size, newSize);
+        } else {
+            nextRemove(newSize, new ArrayList<>(Collections.nCopies(size - newSize, (Resource) null)));
+        }
+        size = newSize;
+        endChange();
+    }
+
+    /**
+     * Stops loading pages, the rows which are not loaded stay empty.
+     */
+    public void dispose() {
+        disposed = true;
+        pager.removeChangeHandler(changed);
+        pager.removeResetHandler(changed);
+    }
+
+    /**
+     * Returns why the row could not be loaded.
+     *
+     * @param index The position of the row.
+     *
+     * @return The error message or null if the row is loaded or loading.
+     */
+    public String getError(int index) {
+        return failed.get((long) index / pageSize);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Resource get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+
+        long page = index / pageSize;
+        int offset = index % pageSize;
+        List<Resource> rows = pages.get(page);
+
+        if (rows != null && offset < rows.size()) {
+            return rows.get(offset);
+        }
+        if (failed.containsKey(page)) {
+            return null;
+        }
+        if (rows != null) {
+            // the page was read before the query found all of its resources
+            pages.remove(page);
+        }
+
+        for (long p = Math.max(0, page - PREFETCH); p <= page + PREFETCH; p++) {
+            load(p);
+        }
+        return null;
+    }
+
+    private void load(long page) {
+        if (disposed || pages.containsKey(page) || failed.containsKey(page)
+                || page * pageSize >= size || !loading.add(page)) {
+            return;
+        }
+
+        executor.execute(() -> {
+            // the page belongs to this version or a later one
+            long readVersion = pager.getVersion();
+            List<Resource> rows = null;
+            String error = null;
+            try {
+                if (!disposed) {
+                    rows = pager.getPage(page);
+                }
+            } catch (RuntimeException e) {
+                error = e.getMessage() != null ? e.getMessage() : e.toString();
+            } finally {
+                List<Resource> result = rows;
+                String message = error;
+                Platform.runLater(() -> loaded(page, result, message, readVersion));
+            }
+        });
+    }
+
+    private void loaded(long page, List<Resource> rows, String error, long readVersion) {
+        loading.remove(page);
+        if (disposed) {
+            return;
+        }
+        if (readVersion < version) {
+            // read before a change, rows in view request the page again
+            updated(page);
+            return;
+        }
+
+        if (readVersion > version) {
+            // the model has changed, the other pages show outdated rows
+            drop(readVersion);
+        }
+
+        if (error != null) {
+            failed.put(page, error);
+        } else if (rows != null) {
+            pages.put(page, rows);
+        } else {
+            return;
+        }
+
+        updated(page);
+    }
+
+    /**
+     * Drops the loaded rows after a change of the model, the rows in view
+     * are requested again.
+     */
+    private void reload() {
+        if (!disposed) {
+            drop(pager.getVersion());
+        }
+    }
+
+    private void drop(long newVersion) {
+        Set<Long> outdated = new HashSet<>(pages.keySet());
+        outdated.addAll(failed.keySet());
+        pages.clear();
+        failed.clear();
+        version = newVersion;
+
+        outdated.forEach(this::updated);
+    }
+
+    private void updated(long page) {
+        int from = (int) Math.min(page * pageSize, size);
+        int to = (int) Math.min(from + (long) pageSize, size);
+        if (from < to) {
+            beginChange();
+            for (int i = from; i < to; i++) {
+                nextUpdate(i);
+            }
+            endChange();
+        }
+    }
+}
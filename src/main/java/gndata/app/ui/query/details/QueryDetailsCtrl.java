@@ -42,15 +42,15 @@ public class QueryDetailsCtrl extends PageCtrl {
         this.qs = qs;
         this.statements = FXCollections.observableList(new ArrayList<StatementTableItem>());
 
-        qs.selectedStatementProperty().addListener((obs, odlVal, newVal) -> {
+        qs.selectedResourceProperty().addListener((obs, odlVal, newVal) -> {
             if (newVal != null) {
-                getPage().applyModel(new ResourceFileAdapter(newVal.getSubject(), null));
+                getPage().applyModel(new ResourceFileAdapter(newVal, null));
             }
 
             if (newVal == null) {
                 statements.clear();
             } else {
-                ResourceAdapter rw = new ResourceAdapter(newVal.getSubject());
+                ResourceAdapter rw = new ResourceAdapter(newVal);
                 statements.setAll(rw.getLiterals().stream()
                         .map(StatementTableItem::new).collect(Collectors.toList()));
             }
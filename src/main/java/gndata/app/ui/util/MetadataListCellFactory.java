@@ -8,6 +8,7 @@
 
 package gndata.app.ui.util;
 
+import javafx.collections.ObservableList;
 import javafx.scene.control.*;
 import javafx.util.Callback;
 
@@ -26,9 +27,16 @@ public class MetadataListCellFactory implements Callback<ListView<ResourceFileAd
     private class MetadataListCell extends TwoLineListCell<ResourceFileAdapter> {
         @Override
         protected void update(ResourceFileAdapter item, boolean empty) {
-            if (! empty) {
+            if (! empty && item != null) {
                 lineOne.set(item.getFileName());
                 lineTwo.set(item.toInfoString());
+            } else if (! empty) {
+                // rows of paged lists are empty until their page is loaded
+                ObservableList<ResourceFileAdapter> items = getListView().getItems();
+                String error = items instanceof PagedList ? ((PagedList<?>) items).getError(getIndex()) : null;
+
+                lineOne.set(error == null ? "Loading..." : "Unable to load the resources");
+                lineTwo.set(error);
             } else {
                 lineOne.set(null);
                 lineTwo.set(null);
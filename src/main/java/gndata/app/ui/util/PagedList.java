@@ -0,0 +1,212 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.app.ui.util;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+
+/**
+ * A read-only list of known size whose elements are loaded page by page
+ * when they are accessed. A list view over the list only loads the pages
+ * of the visible rows. A bounded number of pages is kept, the least
+ * recently used page is dropped first.
+ *
+ * Pages are loaded in the background. Elements of a page which is not yet
+ * loaded are null, the list reports them as updated when the page arrives.
+ * Pages which could not be loaded stay null, {@link #getError(int)} tells
+ * why. The list must only be used on the FX application thread.
+ *
+ * @param <T>   The type of the elements.
+ */
+public class PagedList<T> extends ObservableListBase<T> {
+
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int DEFAULT_CACHED_PAGES = 16;
+
+    /**
+     * Loads a range of the elements.
+     *
+     * @param <T>   The type of the elements.
+     */
+    @FunctionalInterface
+    public interface Loader<T> {
+
+        /**
+         * @param offset    The position of the first element.
+         * @param limit     The maximum number of elements.
+         *
+         * @return The elements in the range.
+         */
+        List<T> load(long offset, int limit);
+    }
+
+    private final Loader<T> loader;
+    private final Executor executor;
+    private final Executor fxThread;
+    private final int size;
+    private final int pageSize;
+    private final Map<Integer, List<T>> pages;
+    private final Set<Integer> loading = new HashSet<>();
+    private final Map<Integer, String> failed = new HashMap<>();
+
+    private boolean requesting = false;
+    private boolean disposed = false;
+
+    public PagedList(long size, Loader<T> loader, Executor executor) {
+        this(size, loader, executor, Platform::runLater, DEFAULT_PAGE_SIZE, DEFAULT_CACHED_PAGES);
+    }
+
+    /**
+     * Creates a list without loading any elements.
+     *
+     * @param size          The number of elements.
+     * @param loader        Loads the pages of the list.
+     * @param executor      The executor loading the pages in the background.
+     * @param fxThread      Executor running tasks on the thread that uses the
+     *                      list, the FX application thread by default.
+     * @param pageSize      The number of elements per page.
+     * @param cachedPages   The maximum number of pages kept in memory.
+     */
+    public PagedList(long size, Loader<T> loader, Executor executor, Executor fxThread,
+                     int pageSize, int cachedPages) {
+        this.loader = loader;
+        this.executor = executor;
+        this.fxThread = fxThread;
+        this.size = (int) Math.min(size, Integer.MAX_VALUE);
+        this.pageSize = pageSize;
+        this.pages = new LinkedHashMap<Integer, List<T>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<T>> eldest) {
+                return size() > cachedPages;
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns an element, loading its page in the background if necessary.
+     *
+     * @param index The position of the element.
+     *
+     * @return The element or null if its page is not loaded yet or is shorter
+     *         than expected, e.g. because elements were removed meanwhile.
+     */
+    @Override
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+
+        int page = index / pageSize;
+        List<T> elements = pages.get(page);
+
+        if (elements == null) {
+            // executors running the load at once deliver the page right here
+            requesting = true;
+            try {
+                load(page);
+            } finally {
+                requesting = false;
+            }
+
+            elements = pages.get(page);
+            if (elements == null) {
+                return null;
+            }
+        }
+
+        int offset = index % pageSize;
+        return offset < elements.size() ? elements.get(offset) : null;
+    }
+
+    /**
+     * Returns why an element could not be loaded.
+     *
+     * @param index The position of the element.
+     *
+     * @return The error message or null if the element is loaded or loading.
+     */
+    public String getError(int index) {
+        return failed.get(index / pageSize);
+    }
+
+    /**
+     * Stops loading pages, the elements which are not loaded stay null.
+     */
+    public void dispose() {
+        disposed = true;
+    }
+
+    /**
+     * Returns the number of pages in memory.
+     *
+     * @return The number of loaded pages.
+     */
+    public int getLoadedPages() {
+        return pages.size();
+    }
+
+    private void load(int page) {
+        if (disposed || failed.containsKey(page) || !loading.add(page)) {
+            return;
+        }
+
+        executor.execute(() -> {
+            List<T> elements = null;
+            String error = null;
+            try {
+                if (!disposed) {
+                    elements = loader.load((long) page * pageSize, pageSize);
+                }
+            } catch (RuntimeException e) {
+                error = e.getMessage() != null ? e.getMessage() : e.toString();
+            } finally {
+                List<T> result = elements;
+                String message = error;
+                fxThread.execute(() -> loaded(page, result, message));
+            }
+        });
+    }
+
+    private void loaded(int page, List<T> elements, String error) {
+        loading.remove(page);
+        if (disposed) {
+            return;
+        }
+
+        if (error != null) {
+            failed.put(page, error);
+        } else if (elements != null) {
+            pages.put(page, elements);
+        } else {
+            return;
+        }
+
+        // a page loaded during get is returned by it, there is nothing to update
+        if (requesting) {
+            return;
+        }
+
+        int from = Math.min(page * pageSize, size);
+        int to = Math.min(from + pageSize, size);
+        if (from < to) {
+            beginChange();
+            for (int i = from; i < to; i++) {
+                nextUpdate(i);
+            }
+            endChange();
+        }
+    }
+}
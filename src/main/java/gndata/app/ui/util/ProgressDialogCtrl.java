@@ -0,0 +1,87 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.app.ui.util;
+
+import java.net.URL;
+import java.util.ResourceBundle;
+import javafx.beans.property.*;
+import javafx.concurrent.Worker;
+import javafx.event.ActionEvent;
+import javafx.fxml.*;
+import javafx.scene.Node;
+
+/**
+ * Controller for the {@link ProgressDialogView}
+ * This controller mirrors message and progress of a worker and hides the
+ * dialog as soon as the worker has finished.
+ */
+public class ProgressDialogCtrl extends DialogCtrl implements Initializable {
+
+    @FXML
+    private Node root;
+
+    private final String title;
+    private final Worker<?> worker;
+
+    private final StringProperty titleValue;
+    private final StringProperty messageValue;
+    private final DoubleProperty progressValue;
+
+    public ProgressDialogCtrl(String title, Worker<?> worker) {
+        this.title = title;
+        this.worker = worker;
+
+        titleValue = new SimpleStringProperty();
+        messageValue = new SimpleStringProperty();
+        progressValue = new SimpleDoubleProperty(-1);
+    }
+
+    @Override
+    public void initialize(URL location, ResourceBundle resources) {
+        titleValue.set(title);
+        messageValue.bind(worker.messageProperty());
+        progressValue.bind(worker.progressProperty());
+
+        worker.stateProperty().addListener((obs, oldVal, newVal) -> {
+            if (isDone(newVal)) {
+                setCancelled(newVal != Worker.State.SUCCEEDED);
+                hide(root);
+            }
+        });
+    }
+
+    // -------------------------------------------
+    // FXML binding properties
+    // -------------------------------------------
+
+    public final StringProperty titleValueProperty() { return titleValue; }
+    public final StringProperty messageValueProperty() { return messageValue; }
+    public final DoubleProperty progressValueProperty() { return progressValue; }
+
+
+    // -----------------------------------------
+    // Methods
+    // -----------------------------------------
+
+    /**
+     * Cancels the worker and hides the window.
+     */
+    @Override
+    public void cancel(ActionEvent event) {
+        worker.cancel();
+        super.cancel(event);
+    }
+
+    private static boolean isDone(Worker.State state) {
+        return state == Worker.State.SUCCEEDED
+                || state == Worker.State.FAILED
+                || state == Worker.State.CANCELLED;
+    }
+
+}
@@ -0,0 +1,30 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.app.ui.util;
+
+import javafx.concurrent.Worker;
+
+/**
+ * Dialog showing the progress of a background worker. The dialog closes
+ * itself when the worker is done and cancels the worker if the dialog is
+ * cancelled by the user.
+ */
+public class ProgressDialogView extends DialogView {
+
+    /**
+     * Constructor.
+     *
+     * @param title     String containing the title that the modal window label will display
+     * @param worker    The worker to observe; it should be started right before the dialog is shown.
+     */
+    public ProgressDialogView(String title, Worker<?> worker) {
+        super(new ProgressDialogCtrl(title, worker));
+    }
+
+}
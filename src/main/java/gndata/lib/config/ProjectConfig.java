@@ -10,7 +10,7 @@ package gndata.lib.config;
 
 import java.io.IOException;
 import java.nio.file.*;
-import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.*;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
@@ -24,6 +24,19 @@ public class ProjectConfig extends AbstractConfig {
     private SimpleStringProperty projectPath = new SimpleStringProperty();
     private SimpleStringProperty name = new SimpleStringProperty();
     private SimpleStringProperty description = new SimpleStringProperty();
+    private SimpleObjectProperty<Storage> storage = new SimpleObjectProperty<>(Storage.MEMORY);
+
+    /**
+     * Where the annotations of a project are kept while it is open.
+     */
+    public enum Storage {
+        /** The annotations are loaded into memory, changes are journaled. */
+        MEMORY,
+        /** Like MEMORY, but the annotations are kept in a compact graph that needs less memory. */
+        COMPACT,
+        /** The annotations are kept in an indexed triple store (Jena TDB) inside the project. */
+        TDB
+    }
 
     /**
      * Default constructor.
@@ -40,6 +53,7 @@ public class ProjectConfig extends AbstractConfig {
         projectPath.set(other.getProjectPath());
         name.set(other.getName());
         description.set(other.getDescription());
+        storage.set(other.getStorage());
     }
 
     @JsonIgnore
@@ -79,6 +93,18 @@ public class ProjectConfig extends AbstractConfig {
         this.description.set(description);
     }
 
+    public Storage getStorage() {
+        return storage.get();
+    }
+
+    public SimpleObjectProperty<Storage> storageProperty() {
+        return storage;
+    }
+
+    public void setStorage(Storage storage) {
+        this.storage.set(storage == null ? Storage.MEMORY : storage);
+    }
+
     /**
      * Loads the project settings from a json file.
      * If the file does not exist, a default configuration is created.
@@ -25,8 +25,14 @@ public class MetadataFilesManager {
     public static final Path SCHEMAS_PROV_FILE      = Paths.get("prov.owl");
     public static final Path SCHEMAS_CUSTOM_FILE    = Paths.get("custom.owl");
 
+    public static final Path CACHE_FOLDER           = Paths.get(".gnode", "cache");
+    public static final Path SCHEMAS_CLOSURE_FILE   = Paths.get("schemas.rdft");
+
     public static final Path ANNOTATIONS_FOLDER     = Paths.get("metadata", "annotations");
     public static final Path ANNOTATIONS_FILE       = Paths.get("metadata.rdf");
+    public static final Path ANNOTATIONS_SNAPSHOT   = Paths.get("metadata.rdft");
+    public static final Path ANNOTATIONS_JOURNAL    = Paths.get("metadata.journal");
+    public static final Path ANNOTATIONS_STORE      = Paths.get("tdb");
 
     public MetadataFilesManager(String basePath) {
         this.basePath = basePath;
@@ -52,6 +58,7 @@ public class MetadataFilesManager {
         List<Path> paths = new ArrayList<>();
         Arrays.asList(schemasFolder.listFiles())
                 .forEach(a -> paths.add(a.toPath()));
+        Collections.sort(paths);
 
         return paths;
     }
@@ -72,11 +79,71 @@ public class MetadataFilesManager {
         return annotationsPath.resolve(ANNOTATIONS_FILE);
     }
 
-    private Path getSchemasFolderPath() throws IOException {
+    /**
+     * Returns a path to the binary snapshot of the annotations file. The
+     * snapshot itself may not exist yet.
+     *
+     * @return  path to the annotations snapshot
+     * @throws IOException
+     */
+    public Path annotationsSnapshotPath() throws IOException {
+        return getAnnotationsFolderPath().resolve(ANNOTATIONS_SNAPSHOT);
+    }
+
+    /**
+     * Returns a path to the journal with the changes made to the annotations
+     * since the annotations file was last written. The journal itself may not
+     * exist yet.
+     *
+     * @return  path to the annotations journal
+     * @throws IOException
+     */
+    public Path annotationsJournalPath() throws IOException {
+        return getAnnotationsFolderPath().resolve(ANNOTATIONS_JOURNAL);
+    }
+
+    /**
+     * Returns a path to the folder of the TDB store that holds the annotations
+     * if the project uses on-disk storage. The folder itself may not exist yet.
+     *
+     * @return  path to the annotations store
+     * @throws IOException
+     */
+    public Path annotationsStorePath() throws IOException {
+        return getAnnotationsFolderPath().resolve(ANNOTATIONS_STORE);
+    }
+
+    /**
+     * Returns a path to the cached inference closure of all schema files.
+     * The cache is kept outside of the schemas folder, so it is not loaded
+     * as a schema itself. The cache file may not exist yet.
+     *
+     * @return  path to the schema closure cache
+     * @throws IOException
+     */
+    public Path schemaClosurePath() throws IOException {
+        return resolveFolder(CACHE_FOLDER).resolve(SCHEMAS_CLOSURE_FILE);
+    }
+
+    /**
+     * Returns a path to the folder with the RDF schemas. Creates the folder
+     * if it does not exist.
+     *
+     * @return  path to the schemas folder
+     * @throws IOException
+     */
+    public Path getSchemasFolderPath() throws IOException {
         return resolveFolder(SCHEMAS_FOLDER);
     }
 
-    private Path getAnnotationsFolderPath() throws IOException {
+    /**
+     * Returns a path to the folder with the annotations and their snapshot
+     * and journal. Creates the folder if it does not exist.
+     *
+     * @return  path to the annotations folder
+     * @throws IOException
+     */
+    public Path getAnnotationsFolderPath() throws IOException {
         return resolveFolder(ANNOTATIONS_FOLDER);
     }
 
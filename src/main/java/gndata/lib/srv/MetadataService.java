@@ -8,18 +8,24 @@
 
 package gndata.lib.srv;
 
-import java.io.IOException;
-import java.nio.file.Path;
-import java.util.List;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
+import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.ontology.*;
+import com.hp.hpl.jena.query.*;
 import com.hp.hpl.jena.rdf.model.*;
 import com.hp.hpl.jena.reasoner.*;
+import com.hp.hpl.jena.tdb.*;
 import com.hp.hpl.jena.vocabulary.*;
+import gndata.lib.config.ProjectConfig;
+import gndata.lib.config.ProjectConfig.Storage;
 import gndata.lib.util.*;
-import org.apache.jena.atlas.lib.StrUtils;
-import org.apache.jena.riot.RDFDataMgr;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.jena.riot.*;
 
 /**
  * Class implementing main functions working with project metadata
@@ -32,6 +38,12 @@ public class MetadataService {
 
     private OntModel schema;    // union model for all imported ontology files
     private Model annotations;  // model for data annotations
+    private ChangeJournal journal;  // persists changes of the annotations, may be null
+    private Dataset store;          // on-disk store holding the annotations, may be null
+    private StoreSync storeSync;    // syncs the store after changes, may be null
+
+    // the types and literals of one subject, run for each subject of a filter
+    private final QueryTemplate typesAndLiterals;
 
     public MetadataService(OntModel schema, Model annotations) {
         this.schema = schema;
@@ -40,6 +52,9 @@ public class MetadataService {
         this.query = new QueryHelper(annotations);
         this.change = new ChangeHelper(annotations, schema);
         this.ontmanager = new OntologyHelper(schema);
+
+        this.typesAndLiterals = query.template(
+                "SELECT ?p ?o WHERE { ?s ?p ?o FILTER (isLiteral(?o) || ?p = <" + RDF.type.getURI() + ">) }");
     }
 
     /**
@@ -62,28 +77,88 @@ public class MetadataService {
     }
 
     /**
-     * Filters annotation literals by a given string.
+     * Returns the journal that persists changes of the annotations.
+     *
+     * @return The journal or null if changes are not persisted.
+     */
+    public ChangeJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Returns the saver that writes the annotations file.
+     *
+     * @return The saver or null if the annotations are kept in a store.
+     */
+    public ModelSaver getSaver() {
+        return journal != null ? journal.getSaver() : null;
+    }
+
+    /**
+     * Stops persisting changes and releases open files.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        if (store != null) {
+            annotations.unregister(storeSync);
+            storeSync.close();
+            storeSync = null;
+
+            // release the files, the project may be opened again from a different location
+            TDB.sync(store);
+            TDBFactory.release(store);
+            store = null;
+        }
+    }
+
+    /**
+     * Filters annotation literals by a given string. Literals match if they
+     * contain a word of the string, see {@link LiteralIndex#search(String)}.
+     * The types and literals of each matching subject are read by a query
+     * template, which is compiled once for the service.
      *
      * @return RDF Model with Subjects with matched literals and their RDF:types.
      */
     public Model getAnnotations(String literalFilter) {
         if (literalFilter.length() > 0) {
-            String qs = StrUtils.strjoinNL(
-                    "CONSTRUCT { ",
-                    "?s rdf:type ?t .",
-                    "?s ?p ?o",
-                    "}",
-                    "WHERE { ",
-                    "?s rdf:type ?t .",
-                    "?s ?p ?o . ",
-                    "FILTER (",
-                    "(STR(?p) != rdf:type) && ",
-                    "isLiteral(?o) && ",
-                    "regex(?o, '" + literalFilter + "', 'i')",
-                    ")}"
-            );
-
-            return query.ExecConstruct(QueryHelper.stdPrefix + "\n" + qs);
+            Model filtered = ModelFactory.createDefaultModel();
+            filtered.setNsPrefixes(annotations);
+
+            for (Node node : query.searchLiterals(literalFilter)) {
+                Resource subject = annotations.wrapAsResource(node);
+                Map<String, RDFNode> values = Collections.singletonMap("s", subject);
+
+                List<Statement> found = query.read(() -> {
+                    List<Statement> statements = new ArrayList<>();
+                    boolean typed = false;
+
+                    try (QueryCursor cursor = typesAndLiterals.select(values)) {
+                        while (cursor.hasNext()) {
+                            QuerySolution sol = cursor.next();
+                            Property p = filtered.createProperty(sol.getResource("p").getURI());
+                            RDFNode o = sol.get("o");
+
+                            if (p.equals(RDF.type)) {
+                                typed = true;
+                                statements.add(filtered.createStatement(subject, p, o));
+                            } else if (LiteralIndex.matches(o.asLiteral().getLexicalForm(), literalFilter)) {
+                                statements.add(filtered.createStatement(subject, p, o));
+                            }
+                        }
+                    }
+
+                    return typed ? statements : Collections.<Statement>emptyList();
+                });
+
+                filtered.add(found);
+            }
+
+            return filtered;
         } else {
             return getAnnotations();
         }
@@ -122,9 +197,117 @@ public class MetadataService {
                 .collect(Collectors.toList());
     }
 
-    public void importMetadata(String path) {
-        Model newData =  RDFDataMgr.loadModel(path);
-        annotations.add(newData);
+    /**
+     * Imports RDF data from a file into the annotations.
+     *
+     * @param path  Path to the RDF file.
+     *
+     * @throws IOException If the file can not be read or parsed.
+     */
+    public void importMetadata(String path) throws IOException {
+        importMetadata(path, ProgressMonitor.NONE);
+    }
+
+    /**
+     * Imports RDF data from a file into the annotations. The file is parsed as
+     * a stream and the triples are added in batches, so the data is never held
+     * in memory twice. N-Triples and N-Quads files are split into chunks that
+     * are parsed in parallel. The imported triples are not recorded as an undoable
+     * change. If the import is cancelled, the batches added so far stay in
+     * the annotations.
+     *
+     * The change journal is suspended during the import, the annotations are
+     * saved once when the import has ended instead.
+     *
+     * @param path      Path to the RDF file. The syntax is guessed from the extension.
+     * @param monitor   Receives the number of bytes read and the file size.
+     *
+     * @throws IOException If the file can not be read or parsed.
+     * @throws java.util.concurrent.CancellationException If the monitor cancels the import.
+     */
+    public void importMetadata(String path, ProgressMonitor monitor) throws IOException {
+        importMetadata(path, monitor, Runnable::run);
+    }
+
+    /**
+     * Imports RDF data from a file like {@link #importMetadata(String, ProgressMonitor)},
+     * parsing the file on the calling thread. The batches are added on the
+     * thread that owns the annotations, so the annotations can be edited
+     * between two batches. Edits made during the import are recorded as
+     * undoable changes as usual.
+     *
+     * @param path          Path to the RDF file. The syntax is guessed from the extension.
+     * @param monitor       Receives the number of bytes read and the file size.
+     * @param modelThread   Executor running tasks on the thread that owns the annotations.
+     *
+     * @throws IOException If the file can not be read or parsed.
+     * @throws java.util.concurrent.CancellationException If the monitor cancels the import.
+     */
+    public void importMetadata(String path, ProgressMonitor monitor, Executor modelThread) throws IOException {
+        Path file = Paths.get(path);
+        Lang lang = RDFLanguages.filenameToLang(path, Lang.RDFXML);
+        long size = Files.size(file);
+
+        // the batches are not tracked, edits between them are
+        Executor batches = batch -> modelThread.execute(() -> {
+            boolean tracking = change.isTracking();
+            change.setTracking(false);
+            try {
+                batch.run();
+            } finally {
+                change.setTracking(tracking);
+            }
+        });
+
+        ChangeJournal journal = this.journal;
+        if (journal != null) {
+            runOn(modelThread, journal::suspend);
+        }
+
+        try {
+            if (ParallelLineImporter.supports(lang)) {
+                new ParallelLineImporter(annotations, ParallelLineImporter.DEFAULT_CHUNK_SIZE,
+                        monitor, batches).read(file, lang);
+            } else {
+                importStream(file, lang, size, monitor, batches);
+            }
+        } catch (RiotException e) {
+            throw new IOException("Unable to import metadata from: " + path, e);
+        } finally {
+            if (journal != null) {
+                runOn(modelThread, journal::resume);
+            }
+        }
+    }
+
+    /**
+     * Runs a task on the thread that owns the annotations and waits for it.
+     */
+    private static void runOn(Executor modelThread, Runnable task) {
+        CompletableFuture.runAsync(task, modelThread).join();
+    }
+
+    private void importStream(Path file, Lang lang, long size, ProgressMonitor monitor,
+                              Executor modelThread) throws IOException {
+        try (CountingInputStream in = new CountingInputStream(
+                new BufferedInputStream(Files.newInputStream(file)))) {
+
+            ProgressMonitor bytesRead = new ProgressMonitor() {
+                @Override
+                public void progress(String message, long done, long total) {
+                    monitor.progress(message, in.getByteCount(), size);
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return monitor.isCancelled();
+                }
+            };
+
+            RDFDataMgr.parse(new BatchedModelSink(annotations, BatchedModelSink.DEFAULT_BATCH_SIZE,
+                    bytesRead, modelThread), in,
+                    file.toUri().toString(), lang);
+        }
     }
 
     public void add(Model m) {
@@ -135,26 +318,339 @@ public class MetadataService {
      * Creates a new Metadata Service using a given path. Combines existing
      * project RDF schemas (ontology files) and metadata storage (annotations)
      * into a common Model. Creates default schemas if some do not exist.
+     * Changes of the annotations are recorded in a journal next to the
+     * annotations file.
      *
      * @return MetadataService
      */
     public static MetadataService create(String projectPath) throws IOException {
+        return create(projectPath, ProgressMonitor.NONE);
+    }
+
+    /**
+     * Creates a new Metadata Service using a given path and reports the
+     * loading stages to a monitor.
+     *
+     * @param projectPath   Path to the project folder.
+     * @param monitor       Receives the current stage, may cancel the loading.
+     *
+     * @return MetadataService
+     * @throws IOException If files can not be read or the loading was interrupted.
+     * @throws CancellationException If the monitor cancels the loading.
+     */
+    public static MetadataService create(String projectPath, ProgressMonitor monitor) throws IOException {
+        return create(projectPath, Storage.MEMORY, monitor);
+    }
+
+    /**
+     * Creates a new Metadata Service for a project, using the storage
+     * selected in the project configuration.
+     *
+     * @param config    The project configuration.
+     * @param monitor   Receives the current stage, may cancel the loading.
+     *
+     * @return MetadataService
+     * @throws IOException If files can not be read or the loading was interrupted.
+     * @throws CancellationException If the monitor cancels the loading.
+     */
+    public static MetadataService create(ProjectConfig config, ProgressMonitor monitor) throws IOException {
+        return create(config.getProjectPath(), config.getStorage(), monitor);
+    }
+
+    /**
+     * Creates a new Metadata Service using a given path and storage.
+     *
+     * The graph of the annotations is a {@link LockingGraph} in all cases,
+     * so queries can read it on other threads while it is changed.
+     *
+     * With {@link Storage#MEMORY} the annotations are loaded into memory and
+     * changes are recorded in a journal next to the annotations file.
+     *
+     * With {@link Storage#COMPACT} the annotations are loaded into a
+     * {@link CompactGraph} instead, which needs a fraction of the memory.
+     * Like with a store, searches scan the literals and the links of a
+     * resource are looked up in the graph instead of keeping indexes in
+     * memory.
+     *
+     * With {@link Storage#TDB} the annotations live in a TDB store inside the
+     * project folder, only the parts that are accessed are read into memory.
+     * The store is filled from the annotations file when it is created, from
+     * then on it holds the current state of the annotations and the
+     * annotations file is no longer updated.
+     *
+     * @param projectPath   Path to the project folder.
+     * @param storage       Where the annotations are kept.
+     * @param monitor       Receives the current stage, may cancel the loading.
+     *
+     * @return MetadataService
+     * @throws IOException If files can not be read or the loading was interrupted.
+     * @throws CancellationException If the monitor cancels the loading.
+     */
+    public static MetadataService create(String projectPath, Storage storage,
+                                         ProgressMonitor monitor) throws IOException {
         if (projectPath == null) {
             throw new IOException("Cannot create metadata service at non-existing path");
         }
 
         MetadataFilesManager metaFiles = new MetadataFilesManager(projectPath);
 
-        OntModel schema = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM_RDFS_INF);
+        List<Path> schemaPaths = metaFiles.schemaPaths();
+        Path annotationsPath = metaFiles.annotationsPath();
+
+        // a binary snapshot avoids re-parsing the (RDF/XML) annotations on each open
+        ModelSnapshot snapshot = new ModelSnapshot(metaFiles.annotationsSnapshotPath());
+
+        // all files are parsed at the same time, the models are assembled afterwards
+        int threads = Math.min(schemaPaths.size() + 1, Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(threads, 1), r -> {
+            Thread t = new Thread(r, "metadata-loader");
+            t.setDaemon(true);
+            return t;
+        });
+
+        // the inference closure of the schemas is cached, keyed by the schema contents
+        ModelSnapshot closure = new ModelSnapshot(metaFiles.schemaClosurePath());
+
+        Dataset store = null;
+        boolean created = false;
+        if (storage == Storage.TDB) {
+            Path storePath = metaFiles.annotationsStorePath();
+            created = !Files.exists(storePath);
+            store = TDBFactory.createDataset(storePath.toString());
+        }
+
+        ChangeJournal journal = null;
+        try {
+            Dataset dataset = store;
+            Path initialData = created ? annotationsPath : null;
+            Future<Model> annotationsModel = pool.submit(() -> dataset != null
+                    ? openStore(dataset, initialData)
+                    : storage == Storage.COMPACT
+                    ? loadCompact(snapshot, annotationsPath)
+                    : snapshot.load(annotationsPath));
+
+            monitor.progress("Loading schemas", 0, 3);
+
+            OntModel schema;
+            if (closure.isValid(schemaPaths)) {
+                schema = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM, closure.read());
+            } else {
+                schema = loadSchema(schemaPaths, pool, monitor);
+                closure.write(schema.getBaseModel(), schemaPaths);
+            }
+
+            monitor.progress("Loading annotations", 1, 3);
+
+            Model loaded = await(annotationsModel, monitor);
+
+            // apply edits not yet contained in the annotations file before tracking changes
+            if (store == null) {
+                journal = new ChangeJournal(metaFiles.annotationsJournalPath(),
+                        annotationsPath, snapshot, ChangeJournal.DEFAULT_THRESHOLD);
+                journal.replay(loaded);
+            }
+
+            // queries read the annotations in the background while they are edited
+            Model data = ModelFactory.createModelForGraph(new LockingGraph(loaded.getGraph()));
+
+            checkCancelled(monitor);
+            monitor.progress("Building indexes", 2, 3);
+
+            MetadataService service = new MetadataService(schema, data);
+            // the indexes are only kept for annotations held in memory, they
+            // would not fit into memory if the annotations do not
+            service.query.setIndexed(storage == Storage.MEMORY);
+            service.query.getLiteralIndex();
+            AdjacencyIndex.forModel(data);
+            if (journal != null) {
+                journal.attach(data);
+                service.journal = journal;
+            } else {
+                service.storeSync = new StoreSync(store, (LockingGraph) data.getGraph());
+                data.register(service.storeSync);
+                service.store = store;
+            }
+
+            monitor.progress("Done", 3, 3);
+
+            // hand the journal and the store over to the service
+            journal = null;
+            store = null;
+
+            return service;
+        } finally {
+            pool.shutdownNow();
+
+            // loading failed or was cancelled, release what was opened so far
+            if (journal != null) {
+                journal.close();
+            }
+            if (store != null) {
+                awaitTermination(pool);
+                TDBFactory.release(store);
+            }
+        }
+    }
+
+    /**
+     * Loads the annotations into a {@link CompactGraph}. A valid snapshot is
+     * read directly into the graph, so the triples are never held as objects.
+     */
+    private static Model loadCompact(ModelSnapshot snapshot, Path source) throws IOException {
+        CompactGraph graph;
+
+        if (snapshot.isValid(Collections.singletonList(source))) {
+            CompactGraph.Builder builder = new CompactGraph.Builder();
+            snapshot.read(builder);
+            graph = builder.build();
+        } else {
+            graph = CompactGraph.copyOf(snapshot.load(source).getGraph());
+        }
+
+        return ModelFactory.createModelForGraph(graph);
+    }
+
+    /**
+     * Returns the annotations model of a TDB store and fills it with the
+     * contents of the given file, if any.
+     */
+    private static Model openStore(Dataset store, Path initialData) {
+        Model data = store.getDefaultModel();
+
+        if (initialData != null) {
+            TDBLoader.loadModel(data, initialData.toString());
+            TDB.sync(store);
+        }
+
+        return data;
+    }
+
+    /**
+     * Parses all schema files on the pool and computes their RDFS closure. The
+     * closure is returned as a plain ontology model without a reasoner attached,
+     * lookups on it are as fast as on any in-memory graph.
+     */
+    static OntModel loadSchema(List<Path> schemaPaths, ExecutorService pool,
+                                       ProgressMonitor monitor) throws IOException {
+        List<Future<Model>> schemaModels = new ArrayList<>();
+        for (Path p : schemaPaths) {
+            schemaModels.add(pool.submit(() -> RDFDataMgr.loadModel(p.toString())));
+        }
 
         // TODO figure out if using OntDocumentManager to read files makes sense
-        for (Path p : metaFiles.schemaPaths()) {
-            schema.addSubModel(RDFDataMgr.loadModel(p.toString()));
+        OntModel inferred = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM_RDFS_INF);
+        for (Future<Model> m : schemaModels) {
+            inferred.addSubModel(await(m, monitor), false);
         }
+        inferred.rebind();
+
+        Model materialized = ModelFactory.createDefaultModel().add(inferred);
+        materialized.setNsPrefixes(inferred);
 
-        Model data = RDFDataMgr.loadModel(metaFiles.annotationsPath().toString());
+        return ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM, materialized);
+    }
 
-        return new MetadataService(schema, data);
+    /**
+     * Waits until the loading tasks have stopped, so the files they use can
+     * be released.
+     */
+    private static void awaitTermination(ExecutorService pool) {
+        try {
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void checkCancelled(ProgressMonitor monitor) {
+        if (monitor.isCancelled()) {
+            throw new CancellationException("Loading of metadata was cancelled");
+        }
+    }
+
+    /**
+     * Waits for a loading task and converts its failure into an IOException.
+     * While waiting, the monitor is polled for cancellation.
+     */
+    private static <T> T await(Future<T> future, ProgressMonitor monitor) throws IOException {
+        try {
+            while (true) {
+                checkCancelled(monitor);
+                try {
+                    return future.get(100, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // check for cancellation again
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Loading of metadata was interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Unable to load metadata: " + cause.getMessage(), cause);
+        }
     }
 
+    /**
+     * Writes changes of the annotations through to the disk, so the store
+     * stays consistent if the application is not closed properly. The store
+     * is synced once shortly after a burst of changes, e.g. after all triples
+     * of a removed resource, while no one reads or changes the annotations.
+     */
+    private static class StoreSync implements SimpleModelChangeHandler {
+
+        public static final long DELAY = 500;
+
+        private final Dataset store;
+        private final LockingGraph graph;
+        private final ScheduledExecutorService syncer;
+
+        private ScheduledFuture<?> pending;
+
+        public StoreSync(Dataset store, LockingGraph graph) {
+            this.store = store;
+            this.graph = graph;
+
+            this.syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "store-sync");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        @Override
+        public void logAddChange(Model m) {
+            schedule();
+        }
+
+        @Override
+        public void logRemoveChange(Model m) {
+            schedule();
+        }
+
+        /**
+         * Stops syncing and waits for a running sync to finish.
+         */
+        public void close() {
+            syncer.shutdownNow();
+            awaitTermination(syncer);
+        }
+
+        private synchronized void schedule() {
+            if (pending == null && !syncer.isShutdown()) {
+                pending = syncer.schedule(this::sync, DELAY, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void sync() {
+            // changes from here on schedule the next sync
+            synchronized (this) {
+                pending = null;
+            }
+            graph.exclusive(() -> TDB.sync(store));
+        }
+    }
 }
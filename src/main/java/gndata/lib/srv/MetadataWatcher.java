@@ -0,0 +1,231 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.lib.srv;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+import com.hp.hpl.jena.ontology.OntModel;
+import com.hp.hpl.jena.rdf.model.*;
+import gndata.lib.util.*;
+import org.apache.jena.riot.RDFDataMgr;
+
+/**
+ * Watches the schema and annotation files of a project for changes made by
+ * other programs. When a file changed, it is parsed again and compared to
+ * the state it had when it was last loaded or saved. Only the difference is
+ * applied to the models of the metadata service, using the normal model
+ * operations on the thread that owns the models, so listeners (change
+ * tracking, journal, views) see the external change like any other change.
+ *
+ * The annotations file is only watched if the annotations are kept in
+ * memory; a TDB store is not updated from the annotations file.
+ *
+ * Note: blank nodes get new identities each time a file is parsed, so
+ * statements with blank nodes are always replaced as a whole.
+ */
+public class MetadataWatcher {
+
+    public static final long QUIET_PERIOD = 500;
+
+    private final MetadataService metadata;
+    private final Executor modelThread;
+    private final MetadataFilesManager metaFiles;
+    private final ModelSnapshot closure;
+
+    private final Path schemasFolder;
+    private final Path annotationsFolder;
+
+    private WatchService watcher;
+
+    /**
+     * Creates a watcher for a project.
+     *
+     * @param projectPath   Path to the project folder.
+     * @param metadata      The service holding the models to update.
+     * @param modelThread   Executor running tasks on the thread that owns the models.
+     * @throws IOException
+     */
+    public MetadataWatcher(String projectPath, MetadataService metadata, Executor modelThread) throws IOException {
+        this.metadata = metadata;
+        this.modelThread = modelThread;
+        this.metaFiles = new MetadataFilesManager(projectPath);
+        this.closure = new ModelSnapshot(metaFiles.schemaClosurePath());
+
+        this.schemasFolder = metaFiles.getSchemasFolderPath();
+        this.annotationsFolder = metaFiles.getAnnotationsFolderPath();
+    }
+
+    /**
+     * Starts watching the project folders on a background thread.
+     *
+     * @throws IOException
+     */
+    public synchronized void start() throws IOException {
+        if (watcher != null) {
+            return;
+        }
+
+        watcher = FileSystems.getDefault().newWatchService();
+        schemasFolder.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        if (metadata.getSaver() != null) {
+            annotationsFolder.register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
+        }
+
+        WatchService service = watcher;
+        Thread t = new Thread(() -> watch(service), "metadata-watcher");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Stops watching the project folders.
+     *
+     * @throws IOException
+     */
+    public synchronized void close() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+    }
+
+    /**
+     * Applies external changes of the annotations file to the annotations.
+     * The file is compared to the snapshot of its last loaded or saved state.
+     * The check runs after all pending saves, so own writes are not taken
+     * for external changes.
+     *
+     * @return A future that completes when the changes were applied.
+     */
+    public CompletableFuture<Void> reloadAnnotations() {
+        ModelSaver saver = metadata.getSaver();
+        if (saver == null || saver.getSnapshot() == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return saver.execute(() -> {
+            ModelSnapshot snapshot = saver.getSnapshot();
+            List<Path> sources = Collections.singletonList(saver.getPath());
+
+            if (snapshot.isValid(sources)) {
+                return null;
+            }
+
+            Model previous = Files.exists(snapshot.getPath())
+                    ? snapshot.read() : ModelFactory.createDefaultModel();
+            Model current = RDFDataMgr.loadModel(saver.getPath().toString());
+            snapshot.write(current, sources);
+
+            return new Delta(current, previous);
+        }).thenCompose(delta -> apply(metadata.getAnnotations(), delta));
+    }
+
+    /**
+     * Applies external changes of the schema files to the schema. The RDFS
+     * closure of the schema files is computed on the calling thread and
+     * compared to the cached closure of their last loaded state.
+     *
+     * @return A future that completes when the changes were applied.
+     * @throws IOException
+     */
+    public CompletableFuture<Void> reloadSchemas() throws IOException {
+        List<Path> schemaPaths = metaFiles.schemaPaths();
+
+        if (closure.isValid(schemaPaths)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Model previous = Files.exists(closure.getPath())
+                ? closure.read() : ModelFactory.createDefaultModel();
+        OntModel current = MetadataService.loadSchema(schemaPaths, ForkJoinPool.commonPool(), ProgressMonitor.NONE);
+        closure.write(current.getBaseModel(), schemaPaths);
+
+        return apply(metadata.getSchema(), new Delta(current.getBaseModel(), previous));
+    }
+
+    /**
+     * Applies the parts of a change that are not yet contained in the model,
+     * e.g. because they were made in the editor as well.
+     */
+    private CompletableFuture<Void> apply(Model model, Delta delta) {
+        if (delta == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return CompletableFuture.runAsync(() -> {
+            Model removed = delta.removed.intersection(model);
+            Model added = delta.added.difference(model);
+
+            if (!removed.isEmpty()) {
+                model.remove(removed);
+            }
+            if (!added.isEmpty()) {
+                model.add(added);
+            }
+        }, modelThread);
+    }
+
+    private void watch(WatchService service) {
+        try {
+            while (true) {
+                boolean schemas = false;
+                boolean annotations = false;
+
+                WatchKey key = service.take();
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        Path name = event.kind() == OVERFLOW ? null : (Path) event.context();
+
+                        if (key.watchable().equals(schemasFolder)) {
+                            schemas |= name == null || !name.toString().endsWith(".tmp");
+                        } else {
+                            annotations |= name == null || name.equals(MetadataFilesManager.ANNOTATIONS_FILE);
+                        }
+                    }
+                    // the project folder was removed
+                    if (!key.reset()) {
+                        return;
+                    }
+
+                    // wait until the other program has finished writing
+                    key = schemas || annotations ? service.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS) : null;
+                }
+
+                try {
+                    if (schemas) {
+                        reloadSchemas().join();
+                    }
+                    if (annotations) {
+                        reloadAnnotations().join();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // the watcher was closed
+        }
+    }
+
+    private static class Delta {
+
+        private final Model added;
+        private final Model removed;
+
+        public Delta(Model current, Model previous) {
+            this.added = current.difference(previous);
+            this.removed = previous.difference(current);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.lib.srv;
+
+import java.util.*;
+import java.util.function.Function;
+
+import com.hp.hpl.jena.graph.*;
+import com.hp.hpl.jena.rdf.listeners.StatementListener;
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.reasoner.InfGraph;
+import com.hp.hpl.jena.vocabulary.*;
+
+/**
+ * A cache for the display names of the resources of a model, see
+ * {@link ResourceAdapter#toNameString()}. Names are computed from the
+ * rdf:type and rdfs:label statements of a resource, the name of a resource
+ * is dropped when one of those statements is added or removed.
+ *
+ * There is one cache per graph, shared by all models over the graph. Graphs
+ * with inference can change without events and are not cached.
+ */
+public class NameCache extends StatementListener {
+
+    private static final Map<Graph, NameCache> caches = new WeakHashMap<>();
+
+    private final Map<Node, String> names = new HashMap<>();
+    // increased by each dropped name, a name computed across a change is not kept
+    private long version = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    private NameCache() {}
+
+    /**
+     * Returns the cache of the graph of a model, which is created and
+     * registered with the model on first use.
+     *
+     * @param model The model of the named resources.
+     *
+     * @return The cache or null if the names of the model can not be cached.
+     */
+    public static NameCache forModel(Model model) {
+        if (model == null || model.getGraph() instanceof InfGraph) {
+            return null;
+        }
+
+        synchronized (caches) {
+            NameCache cache = caches.get(model.getGraph());
+
+            if (cache == null) {
+                cache = new NameCache();
+                caches.put(model.getGraph(), cache);
+                model.register(cache);
+            }
+
+            return cache;
+        }
+    }
+
+    /**
+     * Returns the cached name of a resource or computes it. The name is
+     * computed without holding the cache, so threads naming other resources
+     * do not wait for it. If another thread has cached the name meanwhile,
+     * its name is returned.
+     *
+     * @param resource  The resource.
+     * @param compute   Computes the name if it is not cached.
+     *
+     * @return The name of the resource.
+     */
+    public String get(Resource resource, Function<Resource, String> compute) {
+        Node node = resource.asNode();
+        long before;
+
+        synchronized (this) {
+            String cached = names.get(node);
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+            before = version;
+        }
+
+        String name = compute.apply(resource);
+
+        synchronized (this) {
+            if (version != before) {
+                return name;
+            }
+
+            String cached = names.putIfAbsent(node, name);
+            return cached != null ? cached : name;
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized int size() {
+        return names.size();
+    }
+
+    public synchronized void clear() {
+        names.clear();
+        version++;
+    }
+
+    @Override
+    public synchronized void addedStatement(Statement s) {
+        changed(s);
+    }
+
+    @Override
+    public synchronized void removedStatement(Statement s) {
+        changed(s);
+    }
+
+    private void changed(Statement s) {
+        Property p = s.getPredicate();
+
+        if (p.equals(RDF.type) || p.equals(RDFS.label)) {
+            names.remove(s.getSubject().asNode());
+            version++;
+        }
+    }
+
+    /**
+     * Removing statements by pattern is reported without the removed
+     * statements, all names are dropped in that case.
+     */
+    @Override
+    public void notifyEvent(Model m, Object event) {
+        if (event instanceof GraphEvents) {
+            Object title = ((GraphEvents) event).getTitle();
+
+            if ("remove".equals(title) || "removeAll".equals(title)) {
+                clear();
+            }
+        }
+    }
+}
@@ -6,11 +6,12 @@ import java.util.stream.*;
 import static java.util.Spliterator.*;
 
 import com.hp.hpl.jena.datatypes.RDFDatatype;
+import com.hp.hpl.jena.graph.*;
 import com.hp.hpl.jena.ontology.*;
 import com.hp.hpl.jena.rdf.model.*;
 import com.hp.hpl.jena.util.iterator.*;
 import com.hp.hpl.jena.vocabulary.*;
-import gndata.lib.util.StatementComparator;
+import gndata.lib.util.*;
 import org.apache.commons.lang3.tuple.Pair;
 
 /**
@@ -44,9 +45,22 @@ public class ResourceAdapter {
      * as name. If this fails the name will be the class name combined with the first letters
      * of the {@link Resource#getLocalName()} of the resource.
      *
+     * Names are kept in the {@link NameCache} of the model until the type or
+     * label of the resource changes.
+     *
      * @return A human readable name for the resource.
      */
     public String toNameString() {
+        NameCache names = NameCache.forModel(resource.getModel());
+
+        return names == null ? nameOf(resource) : names.get(resource, ResourceAdapter::nameOf);
+    }
+
+    /**
+     * Computes the name of a resource, see {@link #toNameString()}. Names
+     * only depend on the rdf:type and rdfs:label statements of the resource.
+     */
+    private static String nameOf(Resource resource) {
         String name;
 
         if (resource.hasProperty(RDF.type, OWL.Class)) {
@@ -83,7 +97,7 @@ public class ResourceAdapter {
      */
     public String toInfoString() {
         long litCount = getLiterals().size();
-        long relCount = getResources().size();
+        long relCount = countResources();
         return String.format("Relations: %d, Literals: %d", relCount, litCount);
     }
 
@@ -138,7 +152,8 @@ public class ResourceAdapter {
      * Resources that represent a type are ignored. If the resource itself is a {@link OWL#Class}
      * the method will return all instances of this class.
      *
-     * For instance resources the method also resolves reverse relationships.
+     * For instance resources the method also resolves reverse relationships,
+     * which are read from the {@link AdjacencyIndex} of the model.
      *
      * @return A collection with related resources.
      */
@@ -150,6 +165,22 @@ public class ResourceAdapter {
                     .map(st -> Pair.of(st.getPredicate(), new ResourceAdapter(st.getSubject())))
                     .collect(Collectors.toList());
 
+        }
+
+        Model model = resource.getModel();
+        AdjacencyIndex index = AdjacencyIndex.forModel(model);
+
+        if (index != null) {
+            Node node = resource.asNode();
+
+            // the links are kept sorted by the index
+            return index.getLinks(node).stream()
+                    .map(t -> Pair.of(
+                            model.createProperty(t.getPredicate().getURI()),
+                            new ResourceAdapter(model.wrapAsResource(
+                                    t.getSubject().equals(node) ? t.getObject() : t.getSubject()))))
+                    .collect(Collectors.toList());
+
         } else {
             it = resource.listProperties().filterKeep(new ResourceFilter());
             Stream<Statement> forward = StreamSupport.stream(
@@ -169,6 +200,76 @@ public class ResourceAdapter {
         }
     }
 
+    /**
+     * Returns the related resources like {@link #getResources()}, as the
+     * nodes held by the graph. No adapters are created, so the list needs
+     * one reference per resource. The resources are read in one pass under
+     * the read lock of the model.
+     *
+     * @return The nodes of the related resources.
+     */
+    public List<Node> getResourceNodes() {
+        Model model = resource.getModel();
+
+        return LockingGraph.read(model, () -> {
+            List<Node> nodes = new ArrayList<>();
+            Node node = resource.asNode();
+
+            if (resource.hasProperty(RDF.type, OWL.Class)) {
+                ExtendedIterator<Triple> it = model.getGraph().find(Node.ANY, RDF.type.asNode(), node);
+                try {
+                    while (it.hasNext()) {
+                        nodes.add(it.next().getSubject());
+                    }
+                } finally {
+                    it.close();
+                }
+                return nodes;
+            }
+
+            AdjacencyIndex index = AdjacencyIndex.forModel(model);
+
+            if (index != null) {
+                for (Triple t : index.getLinks(node)) {
+                    nodes.add(t.getSubject().equals(node) ? t.getObject() : t.getSubject());
+                }
+            } else {
+                getResources().forEach(r -> nodes.add(r.getValue().getResource().asNode()));
+            }
+            return nodes;
+        });
+    }
+
+    /**
+     * Returns the number of resources related to the resource, see
+     * {@link #getResources()}, without creating them.
+     *
+     * @return The number of related resources.
+     */
+    public long countResources() {
+        if (resource.hasProperty(RDF.type, OWL.Class)) {
+            Graph graph = resource.getModel().getGraph();
+            return count(graph.find(Node.ANY, RDF.type.asNode(), resource.asNode()));
+        }
+
+        AdjacencyIndex index = AdjacencyIndex.forModel(resource.getModel());
+
+        return index != null ? index.degree(resource.asNode()) : getResources().size();
+    }
+
+    private static long count(ExtendedIterator<?> it) {
+        long count = 0;
+        try {
+            while (it.hasNext()) {
+                it.next();
+                count++;
+            }
+        } finally {
+            it.close();
+        }
+        return count;
+    }
+
     /**
      * Returns all available resources (in the related Model) of a particular OntClass
      * that can be connected via a given ObjectProperty.
@@ -4,7 +4,9 @@ import java.util.*;
 
 import static java.util.stream.Collectors.toList;
 
+import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.rdf.model.Resource;
+import gndata.lib.util.NaturalSortKey;
 
 /**
  * Represents an RDF Resource as a element in the file tree.
@@ -12,6 +14,7 @@ import com.hp.hpl.jena.rdf.model.Resource;
 public class ResourceFileAdapter extends ResourceAdapter implements IFileAdapter {
 
     private ResourceFileAdapter parent;
+    private volatile NaturalSortKey sortKey;
 
     public ResourceFileAdapter(Resource resource, ResourceFileAdapter parent) {
         super(resource);
@@ -31,6 +34,36 @@ public class ResourceFileAdapter extends ResourceAdapter implements IFileAdapter
                 .collect(toList());
     }
 
+    /**
+     * Returns the number of children, without creating them.
+     *
+     * @return The number of children.
+     */
+    public long countChildren() {
+        return countResources();
+    }
+
+    /**
+     * Returns the children as the nodes held by the graph, in the order of
+     * {@link #getChildren()}, see {@link #getResourceNodes()}.
+     *
+     * @return The nodes of the children.
+     */
+    public List<Node> getChildNodes() {
+        return getResourceNodes();
+    }
+
+    /**
+     * Creates the adapter of a child.
+     *
+     * @param node  The node of the child, see {@link #getChildNodes()}.
+     *
+     * @return The child.
+     */
+    public ResourceFileAdapter getChild(Node node) {
+        return new ResourceFileAdapter(resource.getModel().wrapAsResource(node), this);
+    }
+
     @Override
     public boolean isDirectory() {
         return true;
@@ -41,6 +74,21 @@ public class ResourceFileAdapter extends ResourceAdapter implements IFileAdapter
         return toNameString();
     }
 
+    /**
+     * Returns the key to sort the resource by its name. The key is computed
+     * on first use and kept, a renamed resource needs a new adapter.
+     *
+     * @return The sort key of the file name.
+     */
+    public NaturalSortKey getSortKey() {
+        NaturalSortKey key = sortKey;
+        if (key == null) {
+            key = new NaturalSortKey(getFileName());
+            sortKey = key;
+        }
+        return key;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o)
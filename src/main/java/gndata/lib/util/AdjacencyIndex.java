@@ -0,0 +1,268 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.lib.util;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+import com.hp.hpl.jena.graph.*;
+import com.hp.hpl.jena.mem.GraphMem;
+import com.hp.hpl.jena.rdf.listeners.StatementListener;
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.vocabulary.RDF;
+
+/**
+ * An index of the links between the resources of a model. A link is a
+ * statement with a named resource as subject and object and any predicate
+ * other than rdf:type. For each resource the index keeps the outgoing and
+ * the incoming links in arrays sorted like {@link StatementComparator}
+ * sorts them. The arrays refer to the triples of the graph, so the index
+ * needs two references per link.
+ *
+ * There is one index per graph, shared by all models over the graph. It is
+ * built on first use, for the annotations while the project is loaded, and
+ * updated with every change of the graph afterwards.
+ * Only graphs held in memory are indexed. Graphs which are not, like TDB or
+ * {@link CompactGraph}, answer the lookups of a resource themselves, and
+ * graphs with inference can change without events.
+ */
+public class AdjacencyIndex extends StatementListener {
+
+    /**
+     * Orders links by the URIs of subject, predicate and object.
+     */
+    public static final Comparator<Triple> ORDER = Comparator
+            .comparing((Triple t) -> t.getSubject().getURI())
+            .thenComparing(t -> t.getPredicate().getURI())
+            .thenComparing(t -> t.getObject().getURI());
+
+    private static final Triple[] NONE = new Triple[0];
+
+    private static final Map<Graph, AdjacencyIndex> indexes = new WeakHashMap<>();
+
+    private final Map<Node, Triple[]> forward = new HashMap<>();
+    private final Map<Node, Triple[]> reverse = new HashMap<>();
+
+    private AdjacencyIndex() {}
+
+    /**
+     * Returns the index of the graph of a model, which is built and
+     * registered with the model on first use.
+     *
+     * @param model The model to index.
+     *
+     * @return The index or null if the model is not indexed.
+     */
+    public static AdjacencyIndex forModel(Model model) {
+        if (model == null || !isIndexed(model.getGraph())) {
+            return null;
+        }
+
+        synchronized (indexes) {
+            AdjacencyIndex index = indexes.get(model.getGraph());
+
+            if (index == null) {
+                AdjacencyIndex built = new AdjacencyIndex();
+                Graph graph = model.getGraph();
+
+                // no change may be missed between reading the graph and listening to it
+                Supplier<AdjacencyIndex> build = () -> {
+                    built.build(graph);
+                    model.register(built);
+                    return built;
+                };
+                index = graph instanceof LockingGraph ? ((LockingGraph) graph).read(build) : build.get();
+                indexes.put(graph, index);
+            }
+
+            return index;
+        }
+    }
+
+    private static boolean isIndexed(Graph graph) {
+        Graph base = graph instanceof LockingGraph ? ((LockingGraph) graph).getWrapped() : graph;
+
+        return base instanceof GraphMem;
+    }
+    /**
+     * Tests if a statement is a link between two resources.
+     *
+     * @param t The statement.
+     *
+     * @return True if the statement is indexed.
+     */
+    public static boolean isLink(Triple t) {
+        return t.getSubject().isURI() && t.getObject().isURI()
+                && !t.getPredicate().equals(RDF.type.asNode());
+    }
+
+    /**
+     * Returns the links from a resource to other resources.
+     *
+     * @param node  The resource.
+     *
+     * @return The sorted links having the resource as subject.
+     */
+    public synchronized List<Triple> getForward(Node node) {
+        return Arrays.asList(forward.getOrDefault(node, NONE).clone());
+    }
+
+    /**
+     * Returns the links from other resources to a resource.
+     *
+     * @param node  The resource.
+     *
+     * @return The sorted links having the resource as object.
+     */
+    public synchronized List<Triple> getReverse(Node node) {
+        return Arrays.asList(reverse.getOrDefault(node, NONE).clone());
+    }
+
+    /**
+     * Returns all links of a resource. A link of a resource to itself is
+     * returned twice, once in each direction.
+     *
+     * @param node  The resource.
+     *
+     * @return The sorted links having the resource as subject or object.
+     */
+    public synchronized List<Triple> getLinks(Node node) {
+        Triple[] out = forward.getOrDefault(node, NONE);
+        Triple[] in = reverse.getOrDefault(node, NONE);
+
+        List<Triple> links = new ArrayList<>(out.length + in.length);
+
+        // both arrays are sorted, merge them
+        int a = 0;
+        int b = 0;
+        while (a < out.length || b < in.length) {
+            if (b == in.length || (a < out.length && ORDER.compare(out[a], in[b]) <= 0)) {
+                links.add(out[a++]);
+            } else {
+                links.add(in[b++]);
+            }
+        }
+
+        return links;
+    }
+
+    /**
+     * Returns the number of links of a resource.
+     *
+     * @param node  The resource.
+     *
+     * @return The number of links in both directions.
+     */
+    public synchronized int degree(Node node) {
+        return forward.getOrDefault(node, NONE).length + reverse.getOrDefault(node, NONE).length;
+    }
+
+    /**
+     * Collects the links of a graph and sorts them once per resource, rather
+     * than inserting each link into a sorted array.
+     */
+    private synchronized void build(Graph graph) {
+        Map<Node, List<Triple>> out = new HashMap<>();
+        Map<Node, List<Triple>> in = new HashMap<>();
+
+        ExtendedIterator<Triple> iter = graph.find(Node.ANY, Node.ANY, Node.ANY);
+        try {
+            while (iter.hasNext()) {
+                Triple t = iter.next();
+
+                if (isLink(t)) {
+                    out.computeIfAbsent(t.getSubject(), k -> new ArrayList<>(2)).add(t);
+                    in.computeIfAbsent(t.getObject(), k -> new ArrayList<>(2)).add(t);
+                }
+            }
+        } finally {
+            iter.close();
+        }
+
+        out.forEach((node, links) -> forward.put(node, sorted(links)));
+        in.forEach((node, links) -> reverse.put(node, sorted(links)));
+    }
+
+    private static Triple[] sorted(List<Triple> links) {
+        Triple[] array = links.toArray(new Triple[links.size()]);
+        Arrays.sort(array, ORDER);
+        return array;
+    }
+
+    private void add(Triple t) {
+        if (isLink(t)) {
+            add(forward, t.getSubject(), t);
+            add(reverse, t.getObject(), t);
+        }
+    }
+
+    private static void add(Map<Node, Triple[]> links, Node node, Triple t) {
+        Triple[] old = links.getOrDefault(node, NONE);
+        int i = Arrays.binarySearch(old, t, ORDER);
+
+        if (i < 0) {
+            i = -i - 1;
+            Triple[] array = new Triple[old.length + 1];
+            System.arraycopy(old, 0, array, 0, i);
+            array[i] = t;
+            System.arraycopy(old, i, array, i + 1, old.length - i);
+            links.put(node, array);
+        }
+    }
+
+    private void remove(Triple t) {
+        if (isLink(t)) {
+            remove(forward, t.getSubject(), t);
+            remove(reverse, t.getObject(), t);
+        }
+    }
+
+    private static void remove(Map<Node, Triple[]> links, Node node, Triple t) {
+        Triple[] old = links.get(node);
+        int i = old == null ? -1 : Arrays.binarySearch(old, t, ORDER);
+
+        if (i >= 0) {
+            if (old.length == 1) {
+                links.remove(node);
+            } else {
+                Triple[] array = new Triple[old.length - 1];
+                System.arraycopy(old, 0, array, 0, i);
+                System.arraycopy(old, i + 1, array, i, array.length - i);
+                links.put(node, array);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void addedStatement(Statement s) {
+        add(s.asTriple());
+    }
+
+    /**
+     * Events are also sent for statements which were not in the model,
+     * removing them is a no-op.
+     */
+    @Override
+    public synchronized void removedStatement(Statement s) {
+        remove(s.asTriple());
+    }
+
+    /**
+     * Removing statements by pattern is also reported statement by
+     * statement. Clearing the graph is not, the index is cleared then.
+     */
+    @Override
+    public synchronized void notifyEvent(Model m, Object event) {
+        if (event instanceof GraphEvents && "removeAll".equals(((GraphEvents) event).getTitle())) {
+            forward.clear();
+            reverse.clear();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.lib.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.sparql.core.Quad;
+import org.apache.jena.riot.system.StreamRDFBase;
+
+/**
+ * A RIOT stream sink that adds parsed triples to a model in batches of
+ * bounded size. Quads are added to the model as plain triples. After each
+ * batch the number of added triples is reported to the monitor and the
+ * monitor is checked for cancellation.
+ *
+ * The batches can be added on the thread that owns the model, while the
+ * parser runs on another thread. The parser waits until each batch was
+ * added, so at most one batch is held in memory.
+ */
+public class BatchedModelSink extends StreamRDFBase {
+
+    public static final int DEFAULT_BATCH_SIZE = 10000;
+
+    private final Model model;
+    private final int batchSize;
+    private final ProgressMonitor monitor;
+    private final Executor modelThread;
+
+    private final List<Statement> batch;
+    private long count = 0;
+
+    public BatchedModelSink(Model model, ProgressMonitor monitor) {
+        this(model, DEFAULT_BATCH_SIZE, monitor);
+    }
+
+    public BatchedModelSink(Model model, int batchSize, ProgressMonitor monitor) {
+        this(model, batchSize, monitor, Runnable::run);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param model         The model to add the triples to.
+     * @param batchSize     The number of triples added at once.
+     * @param monitor       Receives the number of added triples, may cancel the import.
+     * @param modelThread   Executor running tasks on the thread that owns the model.
+     */
+    public BatchedModelSink(Model model, int batchSize, ProgressMonitor monitor, Executor modelThread) {
+        this.model = model;
+        this.batchSize = batchSize;
+        this.monitor = monitor;
+        this.modelThread = modelThread;
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * Returns the number of triples added to the model so far.
+     *
+     * @return Number of added triples.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void triple(Triple triple) {
+        batch.add(model.asStatement(triple));
+
+        if (batch.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    @Override
+    public void quad(Quad quad) {
+        triple(quad.asTriple());
+    }
+
+    @Override
+    public void prefix(String prefix, String iri) {
+        model.setNsPrefix(prefix, iri);
+    }
+
+    @Override
+    public void finish() {
+        flush();
+    }
+
+    /**
+     * Adds all collected triples to the model.
+     *
+     * @throws CancellationException If the monitor requests cancellation.
+     */
+    public void flush() {
+        if (monitor.isCancelled()) {
+            throw new CancellationException("Import of triples was cancelled");
+        }
+
+        if (!batch.isEmpty()) {
+            add(model, batch, modelThread);
+            count += batch.size();
+            batch.clear();
+
+            monitor.progress("Importing triples", count, -1);
+        }
+    }
+
+    /**
+     * Adds statements to a model on the thread that owns the model and waits
+     * until they were added.
+     *
+     * @param model         The model.
+     * @param statements    The statements to add.
+     * @param modelThread   Executor running tasks on the thread that owns the model.
+     */
+    static void add(Model model, List<Statement> statements, Executor modelThread) {
+        try {
+            CompletableFuture.runAsync(() -> model.add(statements), modelThread).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
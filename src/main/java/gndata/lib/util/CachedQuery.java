@@ -0,0 +1,45 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.lib.util;
+
+import com.hp.hpl.jena.query.*;
+import com.hp.hpl.jena.sparql.algebra.*;
+
+/**
+ * A parsed query together with its optimised algebra expression. Instances
+ * are shared between executions and must not be modified.
+ */
+public class CachedQuery {
+
+    private final Query query;
+    private final Op op;
+
+    /**
+     * Compiles and optimises a parsed query.
+     *
+     * @param query The parsed query.
+     */
+    public CachedQuery(Query query) {
+        // result variables are computed lazily, do it before the query is shared
+        if (query.isSelectType()) {
+            query.setResultVars();
+        }
+
+        this.query = query;
+        this.op = Algebra.optimize(Algebra.compile(query));
+    }
+
+    public Query getQuery() {
+        return query;
+    }
+
+    public Op getOp() {
+        return op;
+    }
+}
@@ -18,6 +18,7 @@ public class ChangeHelper {
     private int position = -1;
 
     private boolean validate = false; // TODO do smth about it
+    private boolean tracking = true;
 
     public ChangeHelper(Model m, OntModel ont) {
         this.model = m;
@@ -102,6 +103,21 @@ public class ChangeHelper {
         }
     }
 
+    /**
+     * Enables or disables recording of changes. Changes made while tracking
+     * is disabled (e.g. bulk imports) are not kept in memory and can not
+     * be undone. Must be called on the thread that changes the model.
+     *
+     * @param tracking  Whether changes should be recorded.
+     */
+    public void setTracking(boolean tracking) {
+        this.tracking = tracking;
+    }
+
+    public boolean isTracking() {
+        return tracking;
+    }
+
     public Change get(int index) {
         return changes.get(index);
     }
@@ -199,11 +215,15 @@ public class ChangeHelper {
         }
 
         public void logAddChange(Model m) {
-            logChange(new Change(m, true));
+            if (tracking) {
+                logChange(new Change(m, true));
+            }
         }
 
         public void logRemoveChange(Model m) {
-            logChange(new Change(m, false));
+            if (tracking) {
+                logChange(new Change(m, false));
+            }
         }
     }
 
@@ -0,0 +1,386 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.lib.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static java.nio.file.StandardOpenOption.*;
+
+import com.hp.hpl.jena.graph.*;
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.sparql.core.Quad;
+import org.apache.jena.riot.*;
+import org.apache.jena.riot.system.StreamRDFBase;
+
+/**
+ * An append-only journal of the changes applied to a model. Each change is
+ * written as a block of N-Quads, where the graph name marks the triples as
+ * added or removed, followed by a commit line. Blocks without a commit line
+ * (e.g. after a crash during a write) are ignored on replay.
+ *
+ * Once the journal grows beyond a threshold, the model is written to the
+ * base file in the background and the journal is cut down to the changes
+ * that happened afterwards. The base file is written by a {@link ModelSaver}
+ * on its writer thread, the change that crossed the threshold only starts
+ * the write. While the journal records the changes, the base file is only
+ * written by compactions, the saver does not save the model on its own.
+ *
+ * Note: blank nodes are only stable within one session, changes on blank
+ * nodes of the base file can not be replayed reliably.
+ */
+public class ChangeJournal implements SimpleModelChangeHandler {
+
+    public static final long DEFAULT_THRESHOLD = 4 * 1024 * 1024;
+
+    private static final Node ADDED = NodeFactory.createURI("urn:gndata:journal:added");
+    private static final Node REMOVED = NodeFactory.createURI("urn:gndata:journal:removed");
+    private static final String COMMIT = "# commit\n";
+
+    private final Path journalPath;
+    private final Path basePath;
+    private final ModelSnapshot snapshot;
+    private final long threshold;
+
+    private Future<?> compaction = CompletableFuture.completedFuture(null);
+
+    private Model model;
+    private ModelSaver saver;
+    private FileChannel channel;
+    private long start = 0;     // bytes cut from the front of the journal so far
+    private boolean suspended = false;
+
+    /**
+     * Creates a journal for a base file.
+     *
+     * @param journalPath   Path to the journal file.
+     * @param basePath      Path to the RDF/XML file the journal is compacted into.
+     * @param snapshot      Snapshot of the base file, refreshed on compaction (may be null).
+     * @param threshold     Journal size in bytes that triggers a compaction.
+     */
+    public ChangeJournal(Path journalPath, Path basePath, ModelSnapshot snapshot, long threshold) {
+        this.journalPath = journalPath;
+        this.basePath = basePath;
+        this.snapshot = snapshot;
+        this.threshold = threshold;
+    }
+
+    public Path getPath() {
+        return journalPath;
+    }
+
+    /**
+     * Returns the saver writing the base file.
+     *
+     * @return The saver or null if the journal is not attached to a model.
+     */
+    public synchronized ModelSaver getSaver() {
+        return saver;
+    }
+
+    /**
+     * Applies all committed changes from the journal to a model. This should
+     * happen before any listeners that track changes are registered.
+     *
+     * @param m The model loaded from the base file.
+     * @throws IOException
+     */
+    public synchronized void replay(Model m) throws IOException {
+        if (!Files.exists(journalPath)) {
+            return;
+        }
+
+        byte[] content = Files.readAllBytes(journalPath);
+        int committed = committedLength(content);
+
+        ReplaySink sink = new ReplaySink(m);
+        try {
+            RDFDataMgr.parse(sink, new ByteArrayInputStream(content, 0, committed), Lang.NQUADS);
+        } catch (RiotException e) {
+            throw new IOException("Unable to replay change journal: " + journalPath, e);
+        }
+
+        // drop a partially written block, new changes are appended after the last commit
+        if (committed < content.length) {
+            try (FileChannel ch = FileChannel.open(journalPath, WRITE)) {
+                ch.truncate(committed);
+            }
+        }
+    }
+
+    /**
+     * Starts recording all changes of the model into the journal.
+     *
+     * @param m The model to record.
+     * @throws IOException
+     */
+    public synchronized void attach(Model m) throws IOException {
+        this.model = m;
+        this.saver = new ModelSaver(m, basePath, snapshot);
+        this.channel = FileChannel.open(journalPath, CREATE, WRITE, APPEND);
+
+        model.register(this);
+    }
+
+    /**
+     * Appends a change to the journal and forces it to the disk.
+     *
+     * @param ch The change to append.
+     * @throws IOException
+     */
+    public synchronized void append(Change ch) throws IOException {
+        if (channel == null || ch.getChange().isEmpty()) {
+            return;
+        }
+
+        Node op = ch.isAddition() ? ADDED : REMOVED;
+        Iterator<Quad> quads = ch.getChange().getGraph().find(Node.ANY, Node.ANY, Node.ANY)
+                .mapWith(t -> new Quad(op, t));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RDFDataMgr.writeQuads(out, quads);
+        out.write(COMMIT.getBytes(StandardCharsets.UTF_8));
+
+        channel.write(ByteBuffer.wrap(out.toByteArray()));
+        channel.force(false);
+
+        if (channel.size() > threshold) {
+            compact();
+        }
+    }
+
+    /**
+     * Writes the current state of the model to the base file and removes the
+     * changes contained in it from the journal. The model is written on the
+     * writer thread of the saver, the calling thread only starts the write.
+     * If a compaction is already running, no new one is started.
+     *
+     * Saves of the base file are written in the order they were started, so
+     * a save that was started before the compaction can not overwrite it.
+     *
+     * @return A future that completes when the (running) compaction is done.
+     */
+    public synchronized Future<?> compact() {
+        if (model == null || !compaction.isDone()) {
+            return compaction;
+        }
+
+        return checkpoint();
+    }
+
+    /**
+     * Like {@link #compact()}, but always starts a new write of the base
+     * file, also if a compaction is already running.
+     *
+     * @return A future that completes when the journal was cut.
+     */
+    public synchronized Future<?> checkpoint() {
+        if (model == null) {
+            return compaction;
+        }
+
+        long offset;
+        try {
+            offset = start + channel.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // the base file may contain changes after the offset as well,
+        // replaying them again on top of it gives the same state
+        compaction = saver.save().thenRun(() -> {
+            try {
+                truncate(offset);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        return compaction;
+    }
+
+    /**
+     * Stops recording changes, e.g. for a bulk import which would otherwise
+     * write and force each of its batches. Changes made in the meantime are
+     * only persisted by {@link #resume()} or {@link #close()}.
+     */
+    public synchronized void suspend() {
+        if (model == null || suspended) {
+            return;
+        }
+
+        suspended = true;
+        model.unregister(this);
+        saver.setSuspended(true);
+    }
+
+    /**
+     * Records changes again after {@link #suspend()} and writes the model to
+     * the base file once, so it contains the changes made while the journal
+     * was suspended.
+     *
+     * @return A future that completes when the base file was written.
+     */
+    public synchronized Future<?> resume() {
+        if (model == null || !suspended) {
+            return compaction;
+        }
+
+        suspended = false;
+        model.register(this);
+        saver.setSuspended(false);
+
+        return checkpoint();
+    }
+
+    /**
+     * Stops recording changes, waits for running writes of the base file and
+     * closes the journal file.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        ModelSaver closing;
+        synchronized (this) {
+            if (model != null) {
+                model.unregister(this);
+                model = null;
+            }
+            if (saver != null && suspended) {
+                // the changes made while suspended are saved on close
+                saver.setSuspended(false);
+                saver.schedule();
+            }
+            closing = saver;
+            saver = null;
+        }
+
+        // a running compaction needs the lock to truncate the journal
+        if (closing != null) {
+            closing.close();
+        }
+
+        synchronized (this) {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    @Override
+    public void logAddChange(Model m) {
+        logChange(new Change(m, true));
+    }
+
+    @Override
+    public void logRemoveChange(Model m) {
+        logChange(new Change(m, false));
+    }
+
+    private void logChange(Change ch) {
+        try {
+            append(ch);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write change journal: " + journalPath, e);
+        }
+    }
+
+    /**
+     * Removes the first bytes of the journal, which are contained in the base file now.
+     *
+     * @param offset    The end of the saved changes, counted from the start
+     *                  of the journal before it was cut the first time.
+     */
+    private synchronized void truncate(long offset) throws IOException {
+        if (offset <= start) {
+            return;
+        }
+
+        byte[] content = Files.readAllBytes(journalPath);
+        byte[] rest = Arrays.copyOfRange(content, (int) Math.min(offset - start, content.length), content.length);
+        start = offset;
+
+        Path tmpPath = Paths.get(journalPath.toString() + ".tmp");
+        Files.write(tmpPath, rest);
+
+        if (channel != null) {
+            channel.close();
+        }
+        Files.move(tmpPath, journalPath, StandardCopyOption.REPLACE_EXISTING);
+
+        if (model != null) {
+            channel = FileChannel.open(journalPath, CREATE, WRITE, APPEND);
+        } else {
+            channel = null;
+        }
+    }
+
+    private static int committedLength(byte[] content) {
+        byte[] commit = COMMIT.getBytes(StandardCharsets.UTF_8);
+
+        for (int end = content.length; end >= commit.length; end--) {
+            boolean match = true;
+            for (int i = 0; i < commit.length && match; i++) {
+                match = content[end - commit.length + i] == commit[i];
+            }
+            if (match) {
+                return end;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Applies journal entries in order, grouping consecutive triples with the same operation.
+     */
+    private static class ReplaySink extends StreamRDFBase {
+
+        private final Model model;
+        private final List<Statement> batch = new ArrayList<>();
+        private Node op;
+
+        public ReplaySink(Model model) {
+            this.model = model;
+        }
+
+        @Override
+        public void quad(Quad quad) {
+            if (!quad.getGraph().equals(op)) {
+                flush();
+                op = quad.getGraph();
+            }
+            batch.add(model.asStatement(quad.asTriple()));
+        }
+
+        @Override
+        public void finish() {
+            flush();
+        }
+
+        private void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            if (ADDED.equals(op)) {
+                model.add(batch);
+            } else {
+                model.remove(batch);
+            }
+            batch.clear();
+        }
+    }
+}
@@ -0,0 +1,757 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.lib.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import com.hp.hpl.jena.datatypes.TypeMapper;
+import com.hp.hpl.jena.graph.*;
+import com.hp.hpl.jena.graph.impl.GraphBase;
+import com.hp.hpl.jena.rdf.model.AnonId;
+import com.hp.hpl.jena.shared.PrefixMapping;
+import com.hp.hpl.jena.shared.impl.PrefixMappingImpl;
+import com.hp.hpl.jena.sparql.core.Quad;
+import com.hp.hpl.jena.util.iterator.*;
+import org.apache.jena.riot.system.StreamRDF;
+
+/**
+ * A memory efficient graph for large, mostly read data. The triples are
+ * kept in a compact base layer: every node is stored once in a dictionary,
+ * as the UTF-8 bytes of its term rather than as an object, and the triples
+ * are kept as node numbers in three sorted permutations (SPO, POS and OSP),
+ * so each pattern is found by binary search. A triple takes 36 bytes in the
+ * base layer instead of the objects of a default in-memory graph. The nodes
+ * of found triples are created from their terms, so reading is slower than
+ * from a default graph.
+ *
+ * Changes are kept in a small delta layer of added and deleted triples on
+ * top of the base layer. When the delta grows too large, both layers are
+ * merged into a new base layer.
+ *
+ * Nodes are matched by term equality, unlike the default in-memory graph
+ * literals with the same value but a different lexical form are not found
+ * by each other. Like other graphs, the graph must be changed by one thread
+ * at a time.
+ */
+public class CompactGraph extends GraphBase {
+
+    /**
+     * The delta is merged into the base layer when it holds more than this
+     * number of triples and more than a quarter of the base layer.
+     */
+    public static final int COMPACT_MIN = 100000;
+
+    private Base base;
+    private Graph added;
+    private Set<Triple> deleted;
+
+    /**
+     * Creates an empty graph.
+     */
+    public CompactGraph() {
+        this(new Builder().buildBase());
+    }
+
+    private CompactGraph(Base base) {
+        this.base = base;
+        this.added = Factory.createGraphMem();
+        this.deleted = new HashSet<>();
+    }
+
+    /**
+     * Creates a compact copy of a graph, including its prefixes.
+     *
+     * @param graph The graph to copy.
+     *
+     * @return The new graph.
+     */
+    public static CompactGraph copyOf(Graph graph) {
+        Builder builder = new Builder();
+
+        builder.prefixes.setNsPrefixes(graph.getPrefixMapping());
+        graph.find(Node.ANY, Node.ANY, Node.ANY).forEachRemaining(builder::triple);
+
+        return builder.build();
+    }
+
+    /**
+     * Returns the number of distinct nodes in the base layer.
+     *
+     * @return The size of the dictionary.
+     */
+    public int getNodeCount() {
+        return base.dictionary.size;
+    }
+
+    /**
+     * Returns the number of changed triples, which are not yet merged into
+     * the base layer.
+     *
+     * @return The size of the delta layer.
+     */
+    public int getDeltaSize() {
+        return added.size() + deleted.size();
+    }
+
+    /**
+     * Merges the changes into a new base layer. Iterators created before
+     * continue on the previous layers.
+     */
+    public void compact() {
+        Builder builder = new Builder();
+        graphBaseFind(Triple.ANY).forEachRemaining(builder::triple);
+
+        base = builder.buildBase();
+        added = Factory.createGraphMem();
+        deleted = new HashSet<>();
+    }
+
+    private void compactIfNeeded() {
+        int delta = getDeltaSize();
+
+        if (delta > COMPACT_MIN && delta > base.size / 4) {
+            compact();
+        }
+    }
+
+    @Override
+    public void performAdd(Triple t) {
+        if (base.contains(t)) {
+            deleted.remove(t);
+        } else {
+            added.add(t);
+        }
+        compactIfNeeded();
+    }
+
+    @Override
+    public void performDelete(Triple t) {
+        if (base.contains(t)) {
+            deleted.add(t);
+        } else {
+            added.delete(t);
+        }
+        compactIfNeeded();
+    }
+
+    @Override
+    protected ExtendedIterator<Triple> graphBaseFind(Triple pattern) {
+        ExtendedIterator<Triple> found = base.find(pattern, deleted);
+
+        return added.isEmpty() ? found : found.andThen(added.find(pattern));
+    }
+
+    @Override
+    protected boolean graphBaseContains(Triple t) {
+        if (!t.isConcrete()) {
+            return super.graphBaseContains(t);
+        }
+
+        return (base.contains(t) && !deleted.contains(t)) || added.contains(t);
+    }
+
+    @Override
+    protected int graphBaseSize() {
+        return base.size - deleted.size() + added.size();
+    }
+
+    /**
+     * Collects triples for a new graph. The builder can be used as the target
+     * of a parser, it keeps only the node numbers of the triples.
+     */
+    public static class Builder implements StreamRDF {
+
+        private final Dictionary dictionary = new Dictionary();
+        private final PrefixMapping prefixes = new PrefixMappingImpl();
+
+        private int[] s = new int[1024];
+        private int[] p = new int[1024];
+        private int[] o = new int[1024];
+        private int size = 0;
+
+        @Override
+        public void start() {}
+
+        @Override
+        public void triple(Triple t) {
+            if (size == s.length) {
+                int capacity = size + (size >> 1);
+                s = Arrays.copyOf(s, capacity);
+                p = Arrays.copyOf(p, capacity);
+                o = Arrays.copyOf(o, capacity);
+            }
+
+            s[size] = dictionary.add(t.getSubject());
+            p[size] = dictionary.add(t.getPredicate());
+            o[size] = dictionary.add(t.getObject());
+            size++;
+        }
+
+        /**
+         * Adds the triple of a quad, the graph of the quad is ignored.
+         */
+        @Override
+        public void quad(Quad quad) {
+            triple(quad.asTriple());
+        }
+
+        @Override
+        public void base(String base) {}
+
+        @Override
+        public void prefix(String prefix, String iri) {
+            prefixes.setNsPrefix(prefix, iri);
+        }
+
+        @Override
+        public void finish() {}
+
+        /**
+         * Creates the graph. The builder must not be used afterwards.
+         *
+         * @return A graph with the collected triples and prefixes.
+         */
+        public CompactGraph build() {
+            CompactGraph graph = new CompactGraph(buildBase());
+            graph.getPrefixMapping().setNsPrefixes(prefixes);
+
+            return graph;
+        }
+
+        private Base buildBase() {
+            Permutation spo = new Permutation(Permutation.SPO, s, p, o, size);
+            s = p = o = null;
+
+            // the other permutations are built from the distinct triples
+            Permutation pos = new Permutation(Permutation.POS, spo.b, spo.c, spo.a, spo.size);
+            Permutation osp = new Permutation(Permutation.OSP, spo.c, spo.a, spo.b, spo.size);
+
+            return new Base(dictionary, spo, pos, osp);
+        }
+    }
+
+    /**
+     * Maps nodes to consecutive numbers, using an open addressing hash table
+     * of node numbers. The nodes are not kept as objects. Each node is stored
+     * as its encoded term, the UTF-8 bytes of its URI, blank node label or
+     * lexical form, language and datatype, in one array of bytes. A node is
+     * created from its term when it is read, the nodes read last are kept.
+     */
+    private static class Dictionary {
+
+        private static final byte URI = 0;
+        private static final byte BLANK = 1;
+        private static final byte PLAIN = 2;
+        private static final byte LANG = 3;
+        private static final byte TYPED = 4;
+
+        private byte[] terms = new byte[16384];
+        private int[] offsets = new int[1025];
+        private int[] hashes = new int[1024];
+        private int[] table = new int[2048];
+        private int size = 0;
+
+        // read by concurrent readers, the entries are immutable
+        private final Decoded[] decoded = new Decoded[4096];
+
+        /**
+         * Returns the number of a node.
+         *
+         * @return The number or -1 if the node is not in the dictionary.
+         */
+        public int id(Node node) {
+            byte[] term = encode(node);
+            return id(term, hash(term));
+        }
+
+        private int id(byte[] term, int hash) {
+            int mask = table.length - 1;
+
+            for (int i = hash & mask; table[i] != 0; i = (i + 1) & mask) {
+                int id = table[i] - 1;
+                if (hashes[id] == hash && matches(id, term)) {
+                    return id;
+                }
+            }
+
+            return -1;
+        }
+
+        /**
+         * Returns the number of a node, adding the node if it is new.
+         */
+        public int add(Node node) {
+            byte[] term = encode(node);
+            int hash = hash(term);
+
+            int id = id(term, hash);
+            if (id >= 0) {
+                return id;
+            }
+
+            if (size == hashes.length) {
+                hashes = Arrays.copyOf(hashes, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2 + 1);
+                rehash(table.length * 2);
+            }
+
+            int end = offsets[size];
+            if (end + term.length > terms.length) {
+                terms = Arrays.copyOf(terms, Math.max(end + term.length, terms.length + (terms.length >> 1)));
+            }
+            System.arraycopy(term, 0, terms, end, term.length);
+
+            id = size++;
+            offsets[size] = end + term.length;
+            hashes[id] = hash;
+            insert(table, id);
+
+            return id;
+        }
+
+        public Node node(int id) {
+            int slot = id & (decoded.length - 1);
+            Decoded d = decoded[slot];
+
+            if (d == null || d.id != id) {
+                d = new Decoded(id, decode(offsets[id], offsets[id + 1]));
+                decoded[slot] = d;
+            }
+
+            return d.node;
+        }
+
+        private boolean matches(int id, byte[] term) {
+            int from = offsets[id];
+            if (offsets[id + 1] - from != term.length) {
+                return false;
+            }
+
+            for (int i = 0; i < term.length; i++) {
+                if (terms[from + i] != term[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void insert(int[] into, int id) {
+            int mask = into.length - 1;
+            int i = hashes[id] & mask;
+
+            while (into[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            into[i] = id + 1;
+        }
+
+        private void rehash(int capacity) {
+            table = new int[capacity];
+            for (int id = 0; id < size; id++) {
+                insert(table, id);
+            }
+        }
+
+        private static int hash(byte[] term) {
+            int h = Arrays.hashCode(term);
+            // spread the bits, the table uses the low bits only
+            return h ^ (h >>> 16);
+        }
+
+        /**
+         * Encodes a node as a kind byte followed by its strings. The language
+         * or datatype of a literal is preceded by its length, the lexical form
+         * takes the rest of the term.
+         */
+        private static byte[] encode(Node node) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+
+            if (node.isURI()) {
+                out.write(URI);
+                write(out, node.getURI());
+            } else if (node.isBlank()) {
+                out.write(BLANK);
+                write(out, node.getBlankNodeLabel());
+            } else if (node.isLiteral()) {
+                String lang = node.getLiteralLanguage();
+                String datatype = node.getLiteralDatatypeURI();
+
+                if (lang != null && !lang.isEmpty()) {
+                    out.write(LANG);
+                    writeWithLength(out, lang);
+                } else if (datatype != null) {
+                    out.write(TYPED);
+                    writeWithLength(out, datatype);
+                } else {
+                    out.write(PLAIN);
+                }
+                write(out, node.getLiteralLexicalForm());
+            } else {
+                throw new IllegalArgumentException("Only concrete nodes can be stored: " + node);
+            }
+
+            return out.toByteArray();
+        }
+
+        private static void write(ByteArrayOutputStream out, String text) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            out.write(bytes, 0, bytes.length);
+        }
+
+        private static void writeWithLength(ByteArrayOutputStream out, String text) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+
+            // seven bits per byte, the high bit marks a following byte
+            int n = bytes.length;
+            while (n >= 0x80) {
+                out.write((n & 0x7f) | 0x80);
+                n >>>= 7;
+            }
+            out.write(n);
+            out.write(bytes, 0, bytes.length);
+        }
+
+        private Node decode(int from, int to) {
+            byte kind = terms[from++];
+
+            if (kind == URI) {
+                return NodeFactory.createURI(string(from, to));
+            } else if (kind == BLANK) {
+                return NodeFactory.createAnon(new AnonId(string(from, to)));
+            } else if (kind == PLAIN) {
+                return NodeFactory.createLiteral(string(from, to));
+            }
+
+            int length = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = terms[from++];
+                length |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+
+            String extra = string(from, from + length);
+            String lexical = string(from + length, to);
+
+            return kind == LANG
+                    ? NodeFactory.createLiteral(lexical, extra, false)
+                    : NodeFactory.createLiteral(lexical, TypeMapper.getInstance().getSafeTypeByName(extra));
+        }
+
+        private String string(int from, int to) {
+            return new String(terms, from, to - from, StandardCharsets.UTF_8);
+        }
+
+        private static class Decoded {
+
+            private final int id;
+            private final Node node;
+
+            public Decoded(int id, Node node) {
+                this.id = id;
+                this.node = node;
+            }
+        }
+    }
+
+    /**
+     * The triples as node numbers in three columns, sorted by the first,
+     * second and third column.
+     */
+    private static class Permutation {
+
+        public static final int SPO = 0;
+        public static final int POS = 1;
+        public static final int OSP = 2;
+
+        private final int order;
+        private final int[] a;
+        private final int[] b;
+        private final int[] c;
+        private final int size;
+
+        /**
+         * Sorts the columns and drops duplicate rows. The arrays are copied.
+         */
+        public Permutation(int order, int[] a, int[] b, int[] c, int length) {
+            this.order = order;
+
+            int[] sa = Arrays.copyOf(a, length);
+            int[] sb = Arrays.copyOf(b, length);
+            int[] sc = Arrays.copyOf(c, length);
+            sort(sa, sb, sc, 0, length);
+
+            int distinct = 0;
+            for (int i = 0; i < length; i++) {
+                if (distinct == 0 || compare(sa, sb, sc, i, distinct - 1) != 0) {
+                    sa[distinct] = sa[i];
+                    sb[distinct] = sb[i];
+                    sc[distinct] = sc[i];
+                    distinct++;
+                }
+            }
+
+            this.a = distinct < length ? Arrays.copyOf(sa, distinct) : sa;
+            this.b = distinct < length ? Arrays.copyOf(sb, distinct) : sb;
+            this.c = distinct < length ? Arrays.copyOf(sc, distinct) : sc;
+            this.size = distinct;
+        }
+
+        /**
+         * Returns the rows starting with the given numbers.
+         *
+         * @param k1    The first column or -1 for all rows.
+         * @param k2    The second column or -1 for all rows matching k1.
+         * @param k3    The third column or -1 for all rows matching k1 and k2.
+         *
+         * @return The first and the end row.
+         */
+        public int[] range(int k1, int k2, int k3) {
+            int lo = 0;
+            int hi = size;
+
+            if (k1 >= 0) {
+                int from = lower(a, lo, hi, k1);
+                hi = lower(a, from, hi, k1 + 1);
+                lo = from;
+
+                if (k2 >= 0) {
+                    from = lower(b, lo, hi, k2);
+                    hi = lower(b, from, hi, k2 + 1);
+                    lo = from;
+
+                    if (k3 >= 0) {
+                        from = lower(c, lo, hi, k3);
+                        hi = lower(c, from, hi, k3 + 1);
+                        lo = from;
+                    }
+                }
+            }
+
+            return new int[] {lo, hi};
+        }
+
+        public int subject(int row) {
+            return order == SPO ? a[row] : order == POS ? c[row] : b[row];
+        }
+
+        public int predicate(int row) {
+            return order == SPO ? b[row] : order == POS ? a[row] : c[row];
+        }
+
+        public int object(int row) {
+            return order == SPO ? c[row] : order == POS ? b[row] : a[row];
+        }
+
+        /**
+         * Returns the first position in a sorted range with a value not less
+         * than the key.
+         */
+        private static int lower(int[] column, int lo, int hi, int key) {
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (column[mid] < key) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        private static int compare(int[] a, int[] b, int[] c, int i, int j) {
+            int cmp = Integer.compare(a[i], a[j]);
+            if (cmp == 0) {
+                cmp = Integer.compare(b[i], b[j]);
+            }
+            if (cmp == 0) {
+                cmp = Integer.compare(c[i], c[j]);
+            }
+            return cmp;
+        }
+
+        private static void swap(int[] a, int[] b, int[] c, int i, int j) {
+            int t = a[i]; a[i] = a[j]; a[j] = t;
+            t = b[i]; b[i] = b[j]; b[j] = t;
+            t = c[i]; c[i] = c[j]; c[j] = t;
+        }
+
+        /**
+         * Sorts the rows in [from, to) with a three-way quicksort, which
+         * stays fast with many equal rows. Recursion only follows the smaller
+         * part, so the stack depth is logarithmic.
+         */
+        private static void sort(int[] a, int[] b, int[] c, int from, int to) {
+            while (to - from > 16) {
+                int mid = (from + to) >>> 1;
+
+                // median of three as pivot, moved to the front
+                if (compare(a, b, c, mid, from) < 0) swap(a, b, c, mid, from);
+                if (compare(a, b, c, to - 1, from) < 0) swap(a, b, c, to - 1, from);
+                if (compare(a, b, c, to - 1, mid) < 0) swap(a, b, c, to - 1, mid);
+                swap(a, b, c, from, mid);
+
+                // rows in [from, lt) are less, [lt, i) equal and [gt, to) greater than the pivot
+                int lt = from;
+                int i = from + 1;
+                int gt = to;
+                while (i < gt) {
+                    int cmp = compare(a, b, c, i, lt);
+                    if (cmp < 0) {
+                        swap(a, b, c, i++, lt++);
+                    } else if (cmp > 0) {
+                        swap(a, b, c, i, --gt);
+                    } else {
+                        i++;
+                    }
+                }
+
+                if (lt - from < to - gt) {
+                    sort(a, b, c, from, lt);
+                    from = gt;
+                } else {
+                    sort(a, b, c, gt, to);
+                    to = lt;
+                }
+            }
+
+            for (int i = from + 1; i < to; i++) {
+                for (int j = i; j > from && compare(a, b, c, j, j - 1) < 0; j--) {
+                    swap(a, b, c, j, j - 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * The immutable base layer.
+     */
+    private static class Base {
+
+        private final Dictionary dictionary;
+        private final Permutation spo;
+        private final Permutation pos;
+        private final Permutation osp;
+        private final int size;
+
+        public Base(Dictionary dictionary, Permutation spo, Permutation pos, Permutation osp) {
+            this.dictionary = dictionary;
+            this.spo = spo;
+            this.pos = pos;
+            this.osp = osp;
+            this.size = spo.size;
+        }
+
+        public boolean contains(Triple t) {
+            int s = dictionary.id(t.getSubject());
+            int p = dictionary.id(t.getPredicate());
+            int o = dictionary.id(t.getObject());
+
+            if (s < 0 || p < 0 || o < 0) {
+                return false;
+            }
+
+            int[] range = spo.range(s, p, o);
+            return range[0] < range[1];
+        }
+
+        /**
+         * Finds the triples matching a pattern, using the permutation that
+         * starts with the bound nodes of the pattern.
+         */
+        public ExtendedIterator<Triple> find(Triple pattern, Set<Triple> deleted) {
+            int s = id(pattern.getSubject());
+            int p = id(pattern.getPredicate());
+            int o = id(pattern.getObject());
+
+            // a node which is not in the dictionary matches nothing
+            if (s == -2 || p == -2 || o == -2) {
+                return NullIterator.instance();
+            }
+
+            if (s >= 0) {
+                if (p >= 0) {
+                    return new Rows(spo, spo.range(s, p, o), deleted);
+                } else if (o >= 0) {
+                    return new Rows(osp, osp.range(o, s, -1), deleted);
+                }
+                return new Rows(spo, spo.range(s, -1, -1), deleted);
+            } else if (p >= 0) {
+                return new Rows(pos, pos.range(p, o, -1), deleted);
+            } else if (o >= 0) {
+                return new Rows(osp, osp.range(o, -1, -1), deleted);
+            }
+
+            return new Rows(spo, spo.range(-1, -1, -1), deleted);
+        }
+
+        /**
+         * Returns the number of a node, -1 for any node and -2 for an unknown
+         * node.
+         */
+        private int id(Node node) {
+            if (!node.isConcrete()) {
+                return -1;
+            }
+
+            int id = dictionary.id(node);
+            return id < 0 ? -2 : id;
+        }
+
+        /**
+         * Iterates over a range of rows, skipping deleted triples.
+         */
+        private class Rows extends NiceIterator<Triple> {
+
+            private final Permutation perm;
+            private final Set<Triple> deleted;
+            private final int end;
+            private int row;
+            private Triple next;
+
+            public Rows(Permutation perm, int[] range, Set<Triple> deleted) {
+                this.perm = perm;
+                this.deleted = deleted;
+                this.row = range[0];
+                this.end = range[1];
+            }
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && row < end) {
+                    Triple t = Triple.create(
+                            dictionary.node(perm.subject(row)),
+                            dictionary.node(perm.predicate(row)),
+                            dictionary.node(perm.object(row)));
+                    row++;
+
+                    if (deleted.isEmpty() || !deleted.contains(t)) {
+                        next = t;
+                    }
+                }
+
+                return next != null;
+            }
+
+            @Override
+            public Triple next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                Triple t = next;
+                next = null;
+                return t;
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.lib.util;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A set of ints kept in a sorted array. The set needs four bytes per value,
+ * adding values in ascending order is cheap, adding or removing other values
+ * moves the larger ones. Used for the posting lists of indexes, which map
+ * keys to the ids of the items having them.
+ */
+public class IntSet {
+
+    private static final int[] EMPTY = new int[0];
+
+    private int[] values = EMPTY;
+    private int size = 0;
+
+    public IntSet() {
+    }
+
+    /**
+     * Creates a copy of a set.
+     *
+     * @param other The set to copy.
+     */
+    public IntSet(IntSet other) {
+        this.values = Arrays.copyOf(other.values, other.size);
+        this.size = other.size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int value) {
+        return Arrays.binarySearch(values, 0, size, value) >= 0;
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param value The value.
+     *
+     * @return True if the value was not in the set.
+     */
+    public boolean add(int value) {
+        int i = size > 0 && values[size - 1] < value ? size : Arrays.binarySearch(values, 0, size, value);
+        if (i >= 0 && i < size) {
+            return false;
+        }
+        if (i < 0) {
+            i = -i - 1;
+        }
+
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(4, size + (size >> 1)));
+        }
+        System.arraycopy(values, i, values, i + 1, size - i);
+        values[i] = value;
+        size++;
+
+        return true;
+    }
+
+    /**
+     * Removes a value.
+     *
+     * @param value The value.
+     *
+     * @return True if the value was in the set.
+     */
+    public boolean remove(int value) {
+        int i = Arrays.binarySearch(values, 0, size, value);
+        if (i < 0) {
+            return false;
+        }
+
+        System.arraycopy(values, i + 1, values, i, size - i - 1);
+        size--;
+
+        return true;
+    }
+
+    /**
+     * Adds all values of another set.
+     *
+     * @param other The other set.
+     */
+    public void addAll(IntSet other) {
+        int[] merged = new int[size + other.size];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+
+        while (i < size && j < other.size) {
+            int a = values[i];
+            int b = other.values[j];
+
+            if (a < b) {
+                merged[n++] = a;
+                i++;
+            } else if (b < a) {
+                merged[n++] = b;
+                j++;
+            } else {
+                merged[n++] = a;
+                i++;
+                j++;
+            }
+        }
+        while (i < size) {
+            merged[n++] = values[i++];
+        }
+        while (j < other.size) {
+            merged[n++] = other.values[j++];
+        }
+
+        values = merged;
+        size = n;
+    }
+
+    /**
+     * Removes the values which are not in another set.
+     *
+     * @param other The other set.
+     */
+    public void retainAll(IntSet other) {
+        int n = 0;
+
+        for (int i = 0; i < size; i++) {
+            if (other.contains(values[i])) {
+                values[n++] = values[i];
+            }
+        }
+
+        size = n;
+    }
+
+    public void clear() {
+        values = EMPTY;
+        size = 0;
+    }
+
+    /**
+     * Passes the values to a consumer in ascending order.
+     *
+     * @param action    The consumer.
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(values[i]);
+        }
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof IntSet)) {
+            return false;
+        }
+        IntSet other = (IntSet) o;
+        return size == other.size
+                && Arrays.equals(Arrays.copyOf(values, size), Arrays.copyOf(other.values, size));
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (int i = 0; i < size; i++) {
+            hash = 31 * hash + values[i];
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
@@ -0,0 +1,474 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.lib.util;
+
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.function.*;
+import java.util.regex.Pattern;
+
+import com.hp.hpl.jena.graph.*;
+import com.hp.hpl.jena.rdf.listeners.StatementListener;
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+/**
+ * An inverted index from the words in literal values to the subjects of the
+ * statements holding them. Words are the runs of letters and digits of a
+ * literal, compared case-insensitively. Parts of words, like fragments of
+ * identifiers, are found through an additional {@link NGramIndex} over the
+ * literals.
+ *
+ * Each distinct literal gets an int id, the words and trigrams map to sorted
+ * arrays of these ids. The subjects of the found literals are looked up in
+ * the graph, so the index holds each literal once, no matter how many
+ * statements use it.
+ *
+ * The index listens to the changes of the model and is updated with every
+ * added or removed statement. Model and index must be accessed by one thread
+ * at a time, lookups are safe from any thread.
+ */
+public class LiteralIndex extends StatementListener {
+
+    private static final Pattern SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final Model model;
+    private final Graph graph;
+
+    private final NavigableMap<String, IntSet> postings = new TreeMap<>();
+    private final Map<Node, Integer> ids = new HashMap<>();
+    private final List<Node> literals = new ArrayList<>();
+    private final Deque<Integer> freeIds = new ArrayDeque<>();
+    private final NGramIndex substrings = new NGramIndex();
+
+    /**
+     * Indexes all literals of the model and keeps the index up to date
+     * until {@link #close()} is called.
+     *
+     * @param model The model to index.
+     */
+    public LiteralIndex(Model model) {
+        this.model = model;
+        this.graph = model.getGraph();
+
+        graph.find(Node.ANY, Node.ANY, Node.ANY).forEachRemaining(t -> add(t.getObject()));
+        model.register(this);
+    }
+
+    /**
+     * Stops updating the index.
+     */
+    public void close() {
+        model.unregister(this);
+    }
+
+    /**
+     * Returns the number of distinct literals in the index.
+     *
+     * @return The number of literals.
+     */
+    public synchronized int size() {
+        return ids.size();
+    }
+
+    /**
+     * Returns the subjects of literals containing a word.
+     *
+     * @param token The word.
+     *
+     * @return The matching subjects.
+     */
+    public synchronized Set<Node> lookup(String token) {
+        return subjects(literalsWith(token));
+    }
+
+    /**
+     * Returns the subjects of literals containing a word that starts with a
+     * prefix.
+     *
+     * @param prefix The start of the word.
+     *
+     * @return The matching subjects.
+     */
+    public synchronized Set<Node> lookupPrefix(String prefix) {
+        return subjects(literalsWithPrefix(prefix));
+    }
+
+    private IntSet literalsWith(String token) {
+        IntSet found = postings.get(normalise(token));
+
+        return found == null ? new IntSet() : found;
+    }
+
+    private IntSet literalsWithPrefix(String prefix) {
+        IntSet found = new IntSet();
+        String start = normalise(prefix);
+
+        for (Map.Entry<String, IntSet> e : postings.tailMap(start, true).entrySet()) {
+            if (!e.getKey().startsWith(start)) {
+                break;
+            }
+            found.addAll(e.getValue());
+        }
+
+        return found;
+    }
+
+    /**
+     * Searches the subjects having literals with all words of a search text.
+     * The last word of the text may be incomplete and matches as a prefix.
+     * A text without any word matches nothing.
+     *
+     * @param text The search text.
+     *
+     * @return The matching subjects.
+     */
+    public synchronized Set<Node> search(String text) {
+        List<String> tokens = tokenize(text);
+        if (tokens.isEmpty()) {
+            return new HashSet<>();
+        }
+
+        List<IntSet> matches = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            matches.add(i == tokens.size() - 1
+                    ? literalsWithPrefix(tokens.get(i)) : literalsWith(tokens.get(i)));
+        }
+        matches.sort(Comparator.comparingInt(IntSet::size));
+
+        // the rarest word gives the candidates, which are checked for the other words
+        Set<Node> found = subjects(matches.get(0));
+        for (IntSet words : matches.subList(1, matches.size())) {
+            found.removeIf(subject -> !hasLiteral(subject, words));
+        }
+
+        return found;
+    }
+
+    /**
+     * Searches the subjects having a literal that contains a string
+     * anywhere, ignoring case.
+     *
+     * @param substring The string to search for, an empty string matches nothing.
+     *
+     * @return The matching subjects.
+     */
+    public synchronized Set<Node> searchSubstring(String substring) {
+        return subjects(substrings.search(substring));
+    }
+
+    private Set<Node> subjects(IntSet literalIds) {
+        Set<Node> found = new HashSet<>();
+
+        literalIds.forEach(id -> {
+            Node literal = literals.get(id);
+
+            // graphs may also return literals with the same value
+            graph.find(Node.ANY, Node.ANY, literal).forEachRemaining(t -> {
+                if (t.getObject().equals(literal)) {
+                    found.add(t.getSubject());
+                }
+            });
+        });
+
+        return found;
+    }
+
+    private boolean isUsed(Node literal) {
+        ExtendedIterator<Triple> iter = graph.find(Node.ANY, Node.ANY, literal);
+        try {
+            while (iter.hasNext()) {
+                if (iter.next().getObject().equals(literal)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            iter.close();
+        }
+    }
+
+    private boolean hasLiteral(Node subject, IntSet literalIds) {
+        ExtendedIterator<Triple> iter = graph.find(subject, Node.ANY, Node.ANY);
+        try {
+            while (iter.hasNext()) {
+                Integer id = ids.get(iter.next().getObject());
+                if (id != null && literalIds.contains(id)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            iter.close();
+        }
+    }
+
+    /**
+     * Searches like {@link #search(String)} without an index, by reading all
+     * statements of a graph. Used for graphs which are not held in memory.
+     *
+     * @param graph The graph to search.
+     * @param text  The search text.
+     *
+     * @return The matching subjects.
+     */
+    public static Set<Node> search(Graph graph, String text) {
+        List<String> tokens = tokenize(text);
+        Map<Node, BitSet> matched = new HashMap<>();
+
+        if (!tokens.isEmpty()) {
+            scan(graph, (subject, literal) -> matchWords(tokens, subject, literal, matched), () -> false);
+        }
+
+        Set<Node> found = new HashSet<>();
+        addAllWords(tokens, matched, found);
+
+        return found;
+    }
+
+    /**
+     * Searches like {@link #searchSubstring(String)} without an index, by
+     * reading all statements of a graph.
+     *
+     * @param graph     The graph to search.
+     * @param substring The string to search for, an empty string matches nothing.
+     *
+     * @return The matching subjects.
+     */
+    public static Set<Node> searchSubstring(Graph graph, String substring) {
+        String query = normalise(substring);
+        Set<Node> found = new HashSet<>();
+
+        if (!query.isEmpty()) {
+            scan(graph, (subject, literal) -> {
+                if (normalise(literal).contains(query)) {
+                    found.add(subject);
+                }
+            }, () -> false);
+        }
+
+        return found;
+    }
+
+    /**
+     * Searches like {@link #search(Graph, String)} and, with the trimmed text,
+     * like {@link #searchSubstring(Graph, String)}, reading the statements of
+     * the graph only once. The search can be cancelled from another thread.
+     *
+     * @param graph     The graph to search.
+     * @param text      The search text.
+     * @param cancelled Tells if the search should stop.
+     *
+     * @return The subjects matching either way.
+     * @throws CancellationException If the search was cancelled.
+     */
+    public static Set<Node> searchAll(Graph graph, String text, BooleanSupplier cancelled) {
+        List<String> tokens = tokenize(text);
+        String query = normalise(text.trim());
+        Map<Node, BitSet> matched = new HashMap<>();
+        Set<Node> found = new HashSet<>();
+
+        if (!tokens.isEmpty() || !query.isEmpty()) {
+            scan(graph, (subject, literal) -> {
+                if (!query.isEmpty() && normalise(literal).contains(query)) {
+                    found.add(subject);
+                }
+                matchWords(tokens, subject, literal, matched);
+            }, cancelled);
+        }
+        addAllWords(tokens, matched, found);
+
+        return found;
+    }
+
+    /**
+     * Marks the words of a search text that a literal of a subject contains.
+     */
+    private static void matchWords(List<String> tokens, Node subject, String literal, Map<Node, BitSet> matched) {
+        if (tokens.isEmpty()) {
+            return;
+        }
+
+        List<String> words = tokenize(literal);
+
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            boolean prefix = i == tokens.size() - 1;
+
+            for (String word : words) {
+                if (prefix ? word.startsWith(token) : word.equals(token)) {
+                    matched.computeIfAbsent(subject, k -> new BitSet()).set(i);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the subjects having all words of a search text.
+     */
+    private static void addAllWords(List<String> tokens, Map<Node, BitSet> matched, Set<Node> found) {
+        matched.forEach((subject, words) -> {
+            if (words.cardinality() == tokens.size()) {
+                found.add(subject);
+            }
+        });
+    }
+
+    private static void scan(Graph graph, BiConsumer<Node, String> action, BooleanSupplier cancelled) {
+        ExtendedIterator<Triple> iter = graph.find(Node.ANY, Node.ANY, Node.ANY);
+        try {
+            for (long n = 0; iter.hasNext(); n++) {
+                if (n % 4096 == 0 && cancelled.getAsBoolean()) {
+                    throw new CancellationException("Search was cancelled");
+                }
+
+                Triple t = iter.next();
+
+                if (t.getObject().isLiteral()) {
+                    action.accept(t.getSubject(), t.getObject().getLiteralLexicalForm());
+                }
+            }
+        } finally {
+            iter.close();
+        }
+    }
+
+    /**
+     * Tests if a literal contains any of the words of a search text, using
+     * the same rules as {@link #search(String)}.
+     *
+     * @param literal   The literal value.
+     * @param text      The search text.
+     *
+     * @return True if the literal contains a word of the text.
+     */
+    public static boolean matches(String literal, String text) {
+        List<String> tokens = tokenize(text);
+        List<String> words = tokenize(literal);
+
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            boolean prefix = i == tokens.size() - 1;
+
+            for (String word : words) {
+                if (prefix ? word.startsWith(token) : word.equals(token)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Splits a text into lower case words.
+     *
+     * @param text The text to split.
+     *
+     * @return The words in the order of the text.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+
+        for (String token : SEPARATOR.split(text)) {
+            if (!token.isEmpty()) {
+                tokens.add(normalise(token));
+            }
+        }
+
+        return tokens;
+    }
+
+    private static String normalise(String token) {
+        return token.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Indexes the words of a literal, unless it is in the index already.
+     * Only the new literal is read, not the other literals of the subject.
+     */
+    private void add(Node node) {
+        if (!node.isLiteral() || ids.containsKey(node)) {
+            return;
+        }
+
+        int id;
+        if (freeIds.isEmpty()) {
+            id = literals.size();
+            literals.add(node);
+        } else {
+            id = freeIds.pop();
+            literals.set(id, node);
+        }
+        ids.put(node, id);
+
+        String text = node.getLiteralLexicalForm();
+        for (String token : tokenize(text)) {
+            postings.computeIfAbsent(token, k -> new IntSet()).add(id);
+        }
+        substrings.put(id, text);
+    }
+
+    private void remove(Node node) {
+        Integer id = ids.remove(node);
+        if (id == null) {
+            return;
+        }
+
+        for (String token : tokenize(node.getLiteralLexicalForm())) {
+            IntSet found = postings.get(token);
+
+            if (found != null) {
+                found.remove(id);
+                if (found.isEmpty()) {
+                    postings.remove(token);
+                }
+            }
+        }
+        substrings.remove(id);
+
+        literals.set(id, null);
+        freeIds.push(id);
+    }
+
+    @Override
+    public synchronized void addedStatement(Statement s) {
+        add(s.getObject().asNode());
+    }
+
+    /**
+     * Removes the literal, unless other statements still use it. Events are
+     * also sent for statements which were not in the model, so the graph is
+     * asked rather than counting the uses.
+     */
+    @Override
+    public synchronized void removedStatement(Statement s) {
+        Node object = s.getObject().asNode();
+
+        if (object.isLiteral() && !isUsed(object)) {
+            remove(object);
+        }
+    }
+
+    /**
+     * Removing statements by pattern is also reported statement by
+     * statement. Clearing the graph is not, the index is cleared then.
+     */
+    @Override
+    public synchronized void notifyEvent(Model m, Object event) {
+        if (event instanceof GraphEvents && "removeAll".equals(((GraphEvents) event).getTitle())) {
+            postings.clear();
+            ids.clear();
+            literals.clear();
+            freeIds.clear();
+            substrings.clear();
+        }
+    }
+}
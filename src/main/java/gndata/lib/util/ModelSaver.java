@@ -0,0 +1,254 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.lib.util;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Collections;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardCopyOption.*;
+
+import com.hp.hpl.jena.rdf.model.*;
+
+/**
+ * Writes a model to an RDF/XML file in the background.
+ *
+ * The model is serialised on a single writer thread, so files are always
+ * written in the order the saves were started. The writer holds the read
+ * lock of the model while it serialises, if the model is backed by a
+ * {@link LockingGraph}, so each file is a consistent state of the model and
+ * no copy of the model is needed. Other models must not be changed while a
+ * save is running. Each file is written to a temporary file, forced to the
+ * disk and moved over the target, so an interrupted write never leaves a
+ * partially written target behind.
+ *
+ * With auto save enabled, the saver listens to changes of the model and
+ * writes the model once after a burst of changes, instead of once per change.
+ */
+public class ModelSaver implements SimpleModelChangeHandler {
+
+    public static final long DEFAULT_DELAY = 2000;
+
+    private final Model model;
+    private final Path target;
+    private final ModelSnapshot snapshot;
+    private final ScheduledExecutorService writer;
+    private final AtomicLong saveCount = new AtomicLong();
+
+    private boolean autoSave;
+    private long delay;
+    private ScheduledFuture<?> pending;
+    private volatile boolean dirty;
+    private volatile boolean suspended;
+
+    /**
+     * Creates a saver for a model.
+     *
+     * @param model     The model to save.
+     * @param target    Path to the RDF/XML file the model is written to.
+     * @param snapshot  Snapshot of the target, refreshed after each write (may be null).
+     */
+    public ModelSaver(Model model, Path target, ModelSnapshot snapshot) {
+        this.model = model;
+        this.target = target;
+        this.snapshot = snapshot;
+
+        this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "model-saver");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public Path getPath() {
+        return target;
+    }
+
+    public ModelSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns the number of completed writes.
+     *
+     * @return The number of writes.
+     */
+    public long getSaveCount() {
+        return saveCount.get();
+    }
+
+    /**
+     * Enables or disables auto save. When enabled, the model is saved once no
+     * save was started for the given delay after a change.
+     *
+     * @param autoSave  True to enable auto save.
+     * @param delay     Time in milliseconds changes are collected before saving.
+     */
+    public synchronized void setAutoSave(boolean autoSave, long delay) {
+        model.unregister(this);
+
+        this.autoSave = autoSave;
+        this.delay = delay;
+
+        if (autoSave) {
+            model.register(this);
+        }
+    }
+
+    /**
+     * Suspends or resumes auto save. While suspended, changes only mark the
+     * model as changed and scheduled saves are skipped.
+     *
+     * @param suspended True to suspend auto save.
+     */
+    public synchronized void setSuspended(boolean suspended) {
+        this.suspended = suspended;
+    }
+
+    /**
+     * Marks the model as changed and schedules a save, unless one is
+     * already scheduled. Changes made until the save starts are included in
+     * the scheduled save.
+     */
+    public synchronized void schedule() {
+        dirty = true;
+
+        if (suspended || !autoSave || (pending != null && !pending.isDone())) {
+            return;
+        }
+
+        pending = writer.schedule(() -> {
+            if (dirty && !suspended) {
+                save();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the model in the background. The file contains at least the
+     * changes made before the call, and possibly later ones.
+     *
+     * @return A future that completes when the model was written.
+     */
+    public CompletableFuture<Void> save() {
+        dirty = false;
+
+        return CompletableFuture.runAsync(() -> LockingGraph.read(model, () -> {
+            try {
+                write(model, target);
+
+                if (snapshot != null) {
+                    snapshot.write(model, Collections.singletonList(target));
+                }
+                saveCount.incrementAndGet();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to save model: " + target, e);
+            }
+            return null;
+        }), writer);
+    }
+
+    /**
+     * Runs a task on the writer thread, after all writes that were started
+     * before and before all writes that are started later. This allows to
+     * inspect the target without interfering with the saver.
+     *
+     * @param task  The task to run.
+     *
+     * @return A future with the result of the task.
+     */
+    public <T> CompletableFuture<T> execute(Callable<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, writer);
+    }
+
+    /**
+     * Stops auto save, saves unsaved changes and waits for all writes to
+     * finish.
+     *
+     * @throws IOException If waiting for the writes was interrupted.
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            model.unregister(this);
+            autoSave = false;
+
+            if (pending != null) {
+                pending.cancel(false);
+            }
+        }
+
+        if (dirty) {
+            save();
+        }
+
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while saving: " + target);
+        }
+    }
+
+    @Override
+    public void logAddChange(Model m) {
+        schedule();
+    }
+
+    @Override
+    public void logRemoveChange(Model m) {
+        schedule();
+    }
+
+    /**
+     * Writes a model to an RDF/XML file. The file is written to a temporary
+     * file first, which is forced to the disk and moved over the target.
+     *
+     * @param model     The model to write.
+     * @param target    Path to the RDF/XML file.
+     * @throws IOException
+     */
+    public static void write(Model model, Path target) throws IOException {
+        Path tmpPath = Paths.get(target.toString() + ".tmp");
+
+        // resources created in the editor may have relative URIs, which the
+        // default RDF/XML writer refuses to write
+        RDFWriter rdfWriter = model.getWriter("RDF/XML");
+        rdfWriter.setProperty("allowBadURIs", "true");
+
+        try (FileOutputStream file = new FileOutputStream(tmpPath.toFile());
+             OutputStream out = new BufferedOutputStream(file)) {
+            rdfWriter.write(model, out, null);
+            out.flush();
+            file.getFD().sync();
+        }
+
+        try {
+            Files.move(tmpPath, target, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpPath, target, REPLACE_EXISTING);
+        }
+
+        // persist the rename, not supported on all platforms
+        try (FileChannel dir = FileChannel.open(target.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // the file itself is complete, only the rename may be lost on a crash
+        }
+    }
+}
@@ -0,0 +1,213 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.lib.util;
+
+import java.io.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+
+import com.hp.hpl.jena.rdf.model.*;
+import org.apache.jena.riot.*;
+import org.apache.jena.riot.system.StreamRDF;
+
+/**
+ * A binary (RDF Thrift) copy of a model that was parsed from one or more
+ * source files. A small stamp file next to the snapshot records the size and
+ * modification time as well as a content hash of the sources, so that a
+ * stale snapshot can be detected without parsing the sources again.
+ */
+public class ModelSnapshot {
+
+    public static final String STAMP_SUFFIX = ".stamp";
+
+    private final Path snapshotPath;
+    private final Path stampPath;
+
+    public ModelSnapshot(Path snapshotPath) {
+        this.snapshotPath = snapshotPath;
+        this.stampPath = Paths.get(snapshotPath.toString() + STAMP_SUFFIX);
+    }
+
+    public Path getPath() {
+        return snapshotPath;
+    }
+
+    /**
+     * Checks whether the snapshot still represents the given source files.
+     * The cheap size / modification time comparison is tried first, the
+     * content hash is only computed when it fails. In the latter case the
+     * stamp is refreshed to make the next check cheap again.
+     *
+     * @param sources   The files the snapshot was created from.
+     *
+     * @return True if the snapshot can be used instead of the sources.
+     * @throws IOException
+     */
+    public boolean isValid(List<Path> sources) throws IOException {
+        if (!Files.exists(snapshotPath) || !Files.exists(stampPath)) {
+            return false;
+        }
+
+        List<String> stamp = Files.readAllLines(stampPath);
+        if (stamp.size() < 2) {
+            return false;
+        }
+
+        if (stamp.get(0).equals(fileKey(sources))) {
+            return true;
+        }
+
+        String contentKey = contentKey(sources);
+        if (stamp.get(1).equals(contentKey)) {
+            writeStamp(fileKey(sources), contentKey);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Reads the snapshot into a new in-memory model.
+     *
+     * @return The model stored in the snapshot.
+     * @throws IOException
+     */
+    public Model read() throws IOException {
+        Model model = ModelFactory.createDefaultModel();
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(snapshotPath))) {
+            RDFDataMgr.read(model, in, Lang.RDFTHRIFT);
+        } catch (RiotException e) {
+            throw new IOException("Unable to read snapshot: " + snapshotPath, e);
+        }
+
+        return model;
+    }
+
+    /**
+     * Reads the snapshot into a stream of triples, without creating a model.
+     *
+     * @param sink  Receives the triples and prefixes of the snapshot.
+     * @throws IOException
+     */
+    public void read(StreamRDF sink) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(snapshotPath))) {
+            RDFDataMgr.parse(sink, in, Lang.RDFTHRIFT);
+        } catch (RiotException e) {
+            throw new IOException("Unable to read snapshot: " + snapshotPath, e);
+        }
+    }
+
+    /**
+     * Writes the model as a new snapshot of the given source files. The
+     * snapshot is written to a temporary file first and moved into place
+     * afterwards, so a reader never sees a partially written snapshot.
+     *
+     * @param model     The model to store.
+     * @param sources   The files the model was created from.
+     * @throws IOException
+     */
+    public void write(Model model, List<Path> sources) throws IOException {
+        Path tmpPath = Paths.get(snapshotPath.toString() + ".tmp");
+
+        // remove the stamp first, an interrupted write must not leave a valid stamp
+        Files.deleteIfExists(stampPath);
+
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmpPath))) {
+            RDFDataMgr.write(out, model, RDFFormat.RDF_THRIFT);
+        }
+        Files.move(tmpPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING);
+
+        writeStamp(fileKey(sources), contentKey(sources));
+    }
+
+    /**
+     * Loads a model from a source file, using the snapshot if it is up to
+     * date. Otherwise the source is parsed and a new snapshot is written.
+     *
+     * @param source    The RDF file to load.
+     *
+     * @return The loaded model.
+     * @throws IOException
+     */
+    public Model load(Path source) throws IOException {
+        List<Path> sources = Collections.singletonList(source);
+
+        if (isValid(sources)) {
+            return read();
+        }
+
+        Model model = RDFDataMgr.loadModel(source.toString());
+        write(model, sources);
+
+        return model;
+    }
+
+    /**
+     * Builds a key from size and modification time of the given files.
+     *
+     * @param sources   The files to build the key for.
+     *
+     * @return The key string.
+     * @throws IOException
+     */
+    public static String fileKey(List<Path> sources) throws IOException {
+        StringBuilder key = new StringBuilder();
+
+        for (Path p : sources) {
+            key.append(p.getFileName())
+                    .append(':').append(Files.size(p))
+                    .append(':').append(Files.getLastModifiedTime(p).toMillis())
+                    .append(';');
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Builds a key from the SHA-1 hash of the contents of the given files.
+     *
+     * @param sources   The files to build the key for.
+     *
+     * @return The key string.
+     * @throws IOException
+     */
+    public static String contentKey(List<Path> sources) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Unable to compute content hash", e);
+        }
+
+        byte[] buffer = new byte[64 * 1024];
+        for (Path p : sources) {
+            digest.update(p.getFileName().toString().getBytes("UTF-8"));
+
+            try (InputStream in = Files.newInputStream(p)) {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    digest.update(buffer, 0, n);
+                }
+            }
+        }
+
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(String.format("%02x", b));
+        }
+
+        return key.toString();
+    }
+
+    private void writeStamp(String fileKey, String contentKey) throws IOException {
+        Files.write(stampPath, Arrays.asList(fileKey, contentKey));
+    }
+}
@@ -0,0 +1,175 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.lib.util;
+
+import java.util.*;
+
+/**
+ * A substring index over the texts of items with int ids. Each text is
+ * split into overlapping trigrams, a search intersects the ids of the
+ * trigrams of the search string and verifies the remaining candidates.
+ * Search strings shorter than a trigram are looked up in the trigrams
+ * themselves, whose number does not grow with the number of items.
+ *
+ * The trigrams map to sorted arrays of ids and the texts are kept in a list
+ * by id, so ids should be small numbers like positions in a list. The texts
+ * are kept as they are passed in. Callers usually pass strings they hold
+ * anyway, so the index does not copy the texts.
+ *
+ * All lookups are case-insensitive. Items may have several texts, a search
+ * string matches if it is contained in one of them.
+ */
+public class NGramIndex {
+
+    public static final int N = 3;
+
+    private final Map<String, IntSet> grams = new HashMap<>();
+    private final List<String[]> texts = new ArrayList<>();
+    private int size = 0;
+
+    /**
+     * Indexes an item by its texts, replacing the texts it was indexed by
+     * before. An item without texts is removed.
+     *
+     * @param id            The id of the item.
+     * @param itemTexts     The texts of the item.
+     */
+    public synchronized void put(int id, String... itemTexts) {
+        remove(id);
+
+        if (itemTexts.length > 0) {
+            while (texts.size() <= id) {
+                texts.add(null);
+            }
+            texts.set(id, itemTexts);
+            size++;
+
+            for (String gram : grams(itemTexts)) {
+                grams.computeIfAbsent(gram, k -> new IntSet()).add(id);
+            }
+        }
+    }
+
+    /**
+     * Removes an item from the index.
+     *
+     * @param id    The id of the item.
+     */
+    public synchronized void remove(int id) {
+        String[] itemTexts = id < texts.size() ? texts.set(id, null) : null;
+        if (itemTexts == null) {
+            return;
+        }
+        size--;
+
+        for (String gram : grams(itemTexts)) {
+            IntSet ids = grams.get(gram);
+
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    grams.remove(gram);
+                }
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        grams.clear();
+        texts.clear();
+        size = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Finds the items with a text containing a search string.
+     *
+     * @param substring The search string, an empty string matches nothing.
+     *
+     * @return The ids of the matching items.
+     */
+    public synchronized IntSet search(String substring) {
+        String query = normalise(substring);
+        IntSet found = new IntSet();
+
+        if (query.isEmpty()) {
+            return found;
+        }
+
+        if (query.length() < N) {
+            // each occurrence is part of a trigram or of a text shorter than one
+            grams.forEach((gram, ids) -> {
+                if (gram.contains(query)) {
+                    found.addAll(ids);
+                }
+            });
+
+            return found;
+        }
+
+        List<IntSet> candidates = new ArrayList<>();
+        for (String gram : grams(query)) {
+            IntSet ids = grams.get(gram);
+            if (ids == null) {
+                return found;
+            }
+            candidates.add(ids);
+        }
+        candidates.sort(Comparator.comparingInt(IntSet::size));
+
+        found.addAll(candidates.get(0));
+        for (IntSet ids : candidates.subList(1, candidates.size())) {
+            found.retainAll(ids);
+        }
+
+        // the trigrams may occur in a different order or in different texts
+        IntSet verified = new IntSet();
+        found.forEach(id -> {
+            for (String text : texts.get(id)) {
+                if (normalise(text).contains(query)) {
+                    verified.add(id);
+                    break;
+                }
+            }
+        });
+
+        return verified;
+    }
+
+    private static String normalise(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the distinct trigrams of each text, or the whole text if it is
+     * shorter than a trigram.
+     */
+    private static Set<String> grams(String... itemTexts) {
+        Set<String> result = new HashSet<>();
+
+        for (String text : itemTexts) {
+            String normalised = normalise(text);
+
+            if (normalised.length() < N) {
+                if (!normalised.isEmpty()) {
+                    result.add(normalised);
+                }
+            } else {
+                for (int i = 0; i + N <= normalised.length(); i++) {
+                    result.add(normalised.substring(i, i + N));
+                }
+            }
+        }
+
+        return result;
+    }
+}
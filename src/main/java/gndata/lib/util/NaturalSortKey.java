@@ -0,0 +1,135 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.lib.util;
+
+import java.text.*;
+import java.util.*;
+
+/**
+ * An immutable key for sorting names in natural order. Names are split into
+ * runs of digits and other text. Runs of digits are compared by their
+ * numeric value, so "Trial 2" comes before "Trial 10". Text is compared by
+ * the collation rules of the default locale, which are evaluated once when
+ * the key is created.
+ */
+public class NaturalSortKey implements Comparable<NaturalSortKey> {
+
+    // collators are not safe for concurrent use, keys are created in parallel
+    private static final ThreadLocal<Collator> collator = ThreadLocal.withInitial(Collator::getInstance);
+
+    private final String name;
+    private final Object[] parts;
+
+    /**
+     * Creates the key of a name.
+     *
+     * @param name  The name to sort by.
+     */
+    public NaturalSortKey(String name) {
+        this.name = name;
+        this.parts = split(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Splits a name into collation keys for text and digit strings without
+     * leading zeros for numbers.
+     */
+    private static Object[] split(String name) {
+        List<Object> parts = new ArrayList<>();
+        Collator text = collator.get();
+
+        int start = 0;
+        while (start < name.length()) {
+            boolean digits = isDigit(name.charAt(start));
+
+            int end = start + 1;
+            while (end < name.length() && isDigit(name.charAt(end)) == digits) {
+                end++;
+            }
+
+            String part = name.substring(start, end);
+            if (digits) {
+                int zeros = 0;
+                while (zeros < part.length() - 1 && part.charAt(zeros) == '0') {
+                    zeros++;
+                }
+                parts.add(part.substring(zeros));
+            } else {
+                parts.add(text.getCollationKey(part));
+            }
+
+            start = end;
+        }
+
+        return parts.toArray();
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Compares the parts of two names in order. A number sorts before text
+     * at the same position. Names with equal keys are ordered by their
+     * characters, so the order is total.
+     */
+    @Override
+    public int compareTo(NaturalSortKey other) {
+        int n = Math.min(parts.length, other.parts.length);
+
+        for (int i = 0; i < n; i++) {
+            int cmp = compare(parts[i], other.parts[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+
+        int cmp = Integer.compare(parts.length, other.parts.length);
+        return cmp != 0 ? cmp : name.compareTo(other.name);
+    }
+
+    private static int compare(Object a, Object b) {
+        boolean numberA = a instanceof String;
+        boolean numberB = b instanceof String;
+
+        if (numberA && numberB) {
+            String x = (String) a;
+            String y = (String) b;
+
+            // without leading zeros the longer number is the larger one
+            int cmp = Integer.compare(x.length(), y.length());
+            return cmp != 0 ? cmp : x.compareTo(y);
+        } else if (numberA) {
+            return -1;
+        } else if (numberB) {
+            return 1;
+        }
+
+        return ((CollationKey) a).compareTo((CollationKey) b);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof NaturalSortKey && name.equals(((NaturalSortKey) o).name);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
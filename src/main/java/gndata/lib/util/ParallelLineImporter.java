@@ -0,0 +1,237 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.lib.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.sparql.core.Quad;
+import org.apache.jena.riot.*;
+import org.apache.jena.riot.lang.LabelToNode;
+import org.apache.jena.riot.system.*;
+
+/**
+ * Imports line based RDF files (N-Triples, N-Quads) in parallel. The file is
+ * split into chunks at line boundaries, the chunks are memory mapped and
+ * parsed on a fork-join pool. The parsed chunks are added to the model in
+ * file order, in batches of {@link BatchedModelSink#DEFAULT_BATCH_SIZE}
+ * triples, on the thread that owns the model. Quads are added to the model
+ * as plain triples.
+ *
+ * Blank node labels are mapped to the same blank node in all chunks of one
+ * file, and to new blank nodes for each imported file.
+ */
+public class ParallelLineImporter {
+
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private final Model model;
+    private final int chunkSize;
+    private final ProgressMonitor monitor;
+    private final Executor modelThread;
+    private final ForkJoinPool pool;
+
+    public ParallelLineImporter(Model model, ProgressMonitor monitor) {
+        this(model, DEFAULT_CHUNK_SIZE, monitor);
+    }
+
+    public ParallelLineImporter(Model model, int chunkSize, ProgressMonitor monitor) {
+        this(model, chunkSize, monitor, Runnable::run);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param model         The model to add the triples to.
+     * @param chunkSize     The size of the chunks in bytes.
+     * @param monitor       Receives the number of bytes added, may cancel the import.
+     * @param modelThread   Executor running tasks on the thread that owns the model.
+     */
+    public ParallelLineImporter(Model model, int chunkSize, ProgressMonitor monitor, Executor modelThread) {
+        this.model = model;
+        this.chunkSize = chunkSize;
+        this.monitor = monitor;
+        this.modelThread = modelThread;
+        this.pool = ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Checks if files of a language can be split at line boundaries.
+     *
+     * @param lang  The RDF language.
+     *
+     * @return True for N-Triples and N-Quads.
+     */
+    public static boolean supports(Lang lang) {
+        return RDFLanguages.NTRIPLES.equals(lang) || RDFLanguages.NQUADS.equals(lang);
+    }
+
+    /**
+     * Parses a file and adds its triples to the model. The monitor receives the
+     * number of bytes added so far and the file size. At most two chunks per
+     * worker thread are parsed ahead of the chunk that is added to the model.
+     *
+     * @param file  Path to the file.
+     * @param lang  The language of the file, N-Triples or N-Quads.
+     *
+     * @return The number of imported triples.
+     * @throws IOException If the file can not be read.
+     * @throws RiotException If the file can not be parsed.
+     * @throws CancellationException If the monitor cancels the import.
+     */
+    public long read(Path file, Lang lang) throws IOException {
+        String base = file.toUri().toString();
+        UUID scope = UUID.randomUUID();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<long[]> chunks = split(channel);
+            int window = pool.getParallelism() * 2;
+
+            Deque<ForkJoinTask<List<Triple>>> running = new ArrayDeque<>();
+            int next = 0;
+            int added = 0;
+            long count = 0;
+
+            try {
+                while (next < chunks.size() || !running.isEmpty()) {
+                    while (next < chunks.size() && running.size() < window) {
+                        long[] chunk = chunks.get(next++);
+                        running.add(pool.submit(() -> parse(channel, chunk[0], chunk[1], lang, base, scope)));
+                    }
+
+                    if (monitor.isCancelled()) {
+                        throw new CancellationException("Import of triples was cancelled");
+                    }
+
+                    List<Triple> triples = running.poll().join();
+                    List<Statement> batch = new ArrayList<>(BatchedModelSink.DEFAULT_BATCH_SIZE);
+                    for (Triple t : triples) {
+                        batch.add(model.asStatement(t));
+
+                        if (batch.size() == BatchedModelSink.DEFAULT_BATCH_SIZE) {
+                            BatchedModelSink.add(model, batch, modelThread);
+                            batch.clear();
+                        }
+                    }
+                    BatchedModelSink.add(model, batch, modelThread);
+
+                    count += triples.size();
+                    monitor.progress("Importing triples", chunks.get(added++)[1], size);
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                running.forEach(t -> t.cancel(true));
+            }
+
+            return count;
+        }
+    }
+
+    /**
+     * Splits the file into chunks of about the chunk size, each ending after a
+     * line break or at the end of the file.
+     */
+    private List<long[]> split(FileChannel channel) throws IOException {
+        List<long[]> chunks = new ArrayList<>();
+        long size = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+        long start = 0;
+        while (start < size) {
+            long end = nextLine(channel, Math.min(start + chunkSize, size), buffer);
+            chunks.add(new long[] {start, end});
+            start = end;
+        }
+
+        return chunks;
+    }
+
+    private static long nextLine(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        long size = channel.size();
+
+        while (position < size) {
+            buffer.clear();
+            int n = channel.read(buffer, position);
+            for (int i = 0; i < n; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += Math.max(n, 0);
+        }
+
+        return size;
+    }
+
+    private static List<Triple> parse(FileChannel channel, long start, long end,
+                                      Lang lang, String base, UUID scope) {
+        ByteBuffer chunk;
+        try {
+            chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // the same scope maps a label to the same blank node in every chunk
+        ParserProfile profile = RiotLib.profile(lang, base);
+        profile.setLabelToNode(LabelToNode.createScopeByDocumentHash(scope));
+
+        ReaderRIOT reader = RDFDataMgr.createReader(lang);
+        reader.setParserProfile(profile);
+
+        List<Triple> triples = new ArrayList<>();
+        reader.read(new ByteBufferInputStream(chunk), base, null, new StreamRDFBase() {
+            @Override
+            public void triple(Triple triple) {
+                triples.add(triple);
+            }
+
+            @Override
+            public void quad(Quad quad) {
+                triples.add(quad.asTriple());
+            }
+        }, null);
+
+        return triples;
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        public ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+
+            return n;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.lib.util;
+
+/**
+ * Receives progress information from long running operations and tells
+ * them whether they should stop early.
+ */
+@FunctionalInterface
+public interface ProgressMonitor {
+
+    /**
+     * A monitor that ignores all progress and never cancels.
+     */
+    ProgressMonitor NONE = (message, done, total) -> { };
+
+    /**
+     * Reports the progress of an operation.
+     *
+     * @param message   Description of the current step.
+     * @param done      Amount of work done so far.
+     * @param total     Total amount of work or -1 if it is unknown.
+     */
+    void progress(String message, long done, long total);
+
+    /**
+     * Operations check this regularly and abort with a
+     * {@link java.util.concurrent.CancellationException} if it returns true.
+     *
+     * @return True if the operation should be aborted.
+     */
+    default boolean isCancelled() {
+        return false;
+    }
+}
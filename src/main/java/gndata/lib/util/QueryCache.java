@@ -0,0 +1,229 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.lib.util;
+
+import java.util.*;
+
+import com.hp.hpl.jena.query.*;
+import com.hp.hpl.jena.shared.PrefixMapping;
+
+/**
+ * A bounded cache of parsed and optimised queries, dropping the least
+ * recently used query when full. Queries are looked up by their text with
+ * insignificant white space removed, together with the prefixes the query
+ * was parsed with.
+ */
+public class QueryCache {
+
+    public static final int DEFAULT_SIZE = 64;
+
+    private final Map<Key, CachedQuery> entries;
+    private long hits = 0;
+    private long misses = 0;
+
+    public QueryCache() {
+        this(DEFAULT_SIZE);
+    }
+
+    public QueryCache(int size) {
+        this.entries = new LinkedHashMap<Key, CachedQuery>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedQuery> eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+    /**
+     * Returns the compiled query for a query string, parsing and optimising
+     * it only if it is not in the cache.
+     *
+     * @param queryString   The SPARQL query.
+     * @param prefixes      Prefixes that can be used in the query without
+     *                      declaring them, may be null.
+     *
+     * @return The compiled query.
+     * @throws QueryParseException If the query can not be parsed.
+     */
+    public CachedQuery get(String queryString, PrefixMapping prefixes) {
+        Map<String, String> prefixMap = prefixes == null
+                ? Collections.emptyMap() : prefixes.getNsPrefixMap();
+        Key key = new Key(normalise(queryString), prefixMap);
+
+        synchronized (this) {
+            CachedQuery cached = entries.get(key);
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+
+        CachedQuery compiled = new CachedQuery(parse(queryString, prefixMap));
+        synchronized (this) {
+            entries.put(key, compiled);
+        }
+
+        return compiled;
+    }
+
+    /**
+     * Parses a query with predefined prefixes.
+     *
+     * @param queryString   The SPARQL query.
+     * @param prefixes      Prefixes that can be used in the query without
+     *                      declaring them.
+     *
+     * @return The parsed query.
+     * @throws QueryParseException If the query can not be parsed.
+     */
+    public static Query parse(String queryString, Map<String, String> prefixes) {
+        Query query = new Query();
+        query.getPrefixMapping().setNsPrefixes(prefixes);
+        QueryFactory.parse(query, queryString, null, Syntax.syntaxSPARQL_11);
+
+        return query;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Collapses white space outside of literals and IRIs. Comments are kept
+     * with their line break, since they end at the end of the line. A '&lt;'
+     * only starts an IRI if it is followed by IRI characters and a '&gt;', as
+     * in the SPARQL grammar, otherwise it is a comparison operator.
+     *
+     * @param queryString   The SPARQL query.
+     *
+     * @return The normalised query.
+     */
+    public static String normalise(String queryString) {
+        StringBuilder sb = new StringBuilder(queryString.length());
+        boolean space = false;
+
+        int i = 0;
+        while (i < queryString.length()) {
+            char c = queryString.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                space = true;
+                i++;
+                continue;
+            }
+
+            if (space && sb.length() > 0 && sb.charAt(sb.length() - 1) != '\n') {
+                sb.append(' ');
+            }
+            space = false;
+
+            int end;
+            if (c == '"' || c == '\'') {
+                end = endOfLiteral(queryString, i);
+            } else if (c == '<') {
+                end = endOfIRI(queryString, i);
+            } else if (c == '#') {
+                int eol = queryString.indexOf('\n', i);
+                end = eol < 0 ? queryString.length() : eol + 1;
+            } else {
+                end = i + 1;
+            }
+
+            sb.append(queryString, i, end);
+            i = end;
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Returns the position after a literal that starts at a quote. Long
+     * literals in triple quotes may contain single quote characters.
+     */
+    private static int endOfLiteral(String s, int start) {
+        char quote = s.charAt(start);
+        boolean isLong = start + 2 < s.length()
+                && s.charAt(start + 1) == quote && s.charAt(start + 2) == quote;
+
+        int i = start + (isLong ? 3 : 1);
+        while (i < s.length()) {
+            char c = s.charAt(i);
+
+            if (c == '\\') {
+                i += 2;
+            } else if (c != quote) {
+                i++;
+            } else if (!isLong) {
+                return i + 1;
+            } else if (i + 2 < s.length() && s.charAt(i + 1) == quote && s.charAt(i + 2) == quote) {
+                return i + 3;
+            } else {
+                i++;
+            }
+        }
+
+        return s.length();
+    }
+
+    /**
+     * Returns the position after an IRI that starts at a '&lt;', or the
+     * position after the '&lt;' if it is an operator.
+     */
+    private static int endOfIRI(String s, int start) {
+        for (int i = start + 1; i < s.length(); i++) {
+            char c = s.charAt(i);
+
+            if (c == '>') {
+                return i + 1;
+            } else if (c <= ' ' || "<\"{}|^`\\".indexOf(c) >= 0) {
+                break;
+            }
+        }
+
+        return start + 1;
+    }
+
+    private static class Key {
+
+        private final String query;
+        private final Map<String, String> prefixes;
+
+        public Key(String query, Map<String, String> prefixes) {
+            this.query = query;
+            this.prefixes = prefixes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return query.equals(other.query) && prefixes.equals(other.prefixes);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * query.hashCode() + prefixes.hashCode();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.lib.util;
+
+import java.util.*;
+import java.util.stream.*;
+
+import static java.util.Spliterator.*;
+
+import com.hp.hpl.jena.query.*;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.sparql.engine.*;
+
+/**
+ * A cursor over the solutions of a SELECT query. Solutions are computed
+ * while the cursor advances, nothing is copied in advance. The cursor must
+ * be closed to release the query evaluation, this happens automatically
+ * when the last solution was read. A running evaluation can be aborted
+ * from another thread with {@link #cancel()}.
+ */
+public class QueryCursor implements Iterator<QuerySolution>, AutoCloseable {
+
+    private final QueryIterator iter;
+    private final ResultSet results;
+
+    private long position = 0;
+    private boolean closed = false;
+    private volatile boolean cancelled = false;
+
+    /**
+     * Creates a cursor over the bindings of a query evaluation.
+     *
+     * @param iter  The query evaluation.
+     * @param vars  The result variables of the query.
+     * @param model The model the resources of the solutions belong to.
+     */
+    public QueryCursor(QueryIterator iter, List<String> vars, Model model) {
+        this.iter = iter;
+        this.results = new ResultSetStream(vars, model, iter);
+    }
+
+    public List<String> getResultVars() {
+        return results.getResultVars();
+    }
+
+    /**
+     * Returns the number of solutions read so far.
+     *
+     * @return The number of solutions.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (cancelled) {
+            throw new QueryCancelledException();
+        }
+        if (closed) {
+            return false;
+        }
+
+        boolean hasNext = results.hasNext();
+        if (!hasNext) {
+            close();
+        }
+
+        return hasNext;
+    }
+
+    @Override
+    public QuerySolution next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        position++;
+        return results.nextSolution();
+    }
+
+    /**
+     * Reads the next solutions.
+     *
+     * @param size  The maximum number of solutions to read.
+     *
+     * @return The solutions, fewer than requested at the end of the results.
+     */
+    public List<QuerySolution> nextPage(int size) {
+        List<QuerySolution> page = new ArrayList<>(Math.min(size, 1024));
+
+        while (page.size() < size && hasNext()) {
+            page.add(next());
+        }
+
+        return page;
+    }
+
+    /**
+     * Skips solutions without creating them.
+     *
+     * @param count The number of solutions to skip.
+     *
+     * @return The number of skipped solutions, fewer than requested at the
+     *         end of the results.
+     */
+    public long skip(long count) {
+        long skipped = 0;
+
+        while (skipped < count && hasNext()) {
+            results.nextBinding();
+            position++;
+            skipped++;
+        }
+
+        return skipped;
+    }
+
+    /**
+     * Returns the remaining solutions as a stream, which closes the cursor
+     * when it is closed.
+     *
+     * @return A sequential stream of solutions.
+     */
+    public Stream<QuerySolution> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, NONNULL | IMMUTABLE), false)
+                .onClose(this::close);
+    }
+
+    /**
+     * Aborts the evaluation of the query. This may be called from any thread,
+     * the thread reading the cursor gets a {@link QueryCancelledException}
+     * when it tries to read the next solution. The cursor still has to be
+     * closed by the reading thread.
+     */
+    public void cancel() {
+        cancelled = true;
+        iter.cancel();
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            iter.close();
+        }
+    }
+}
@@ -1,17 +1,33 @@
 package gndata.lib.util;
 
 import java.util.*;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
 import java.util.stream.*;
 
-import static java.util.Spliterator.*;
-
+import com.hp.hpl.jena.graph.*;
 import com.hp.hpl.jena.query.*;
 import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.op.OpSlice;
+import com.hp.hpl.jena.sparql.core.*;
+import com.hp.hpl.jena.sparql.engine.*;
+import com.hp.hpl.jena.sparql.engine.binding.*;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import com.hp.hpl.jena.sparql.engine.main.QC;
+import com.hp.hpl.jena.sparql.modify.TemplateLib;
+import com.hp.hpl.jena.sparql.util.Context;
 import com.hp.hpl.jena.vocabulary.*;
 import org.apache.jena.atlas.lib.StrUtils;
 
 /**
  * A helper for building and executing RDF queries.
+ *
+ * If the graph of the model is a {@link LockingGraph}, queries may run on
+ * other threads than the one changing the model. Methods returning results
+ * read the graph under its read lock. Open cursors have to be read within
+ * {@link #read(Supplier)} and must not be used across changes of the model,
+ * see {@link #getGeneration()}.
  */
 public class QueryHelper {
 
@@ -22,9 +38,194 @@ public class QueryHelper {
     );
 
     private Model model;
+    private Graph graph;
+    private LockingGraph lock;
+    private QueryCache cache;
+    private ResultCache results;
+    private LiteralIndex index;
+    private boolean indexed = true;
+    private QueryTemplate substrings;
 
     public QueryHelper(Model m) {
         this.model = m;
+        this.graph = m.getGraph();
+        if (graph instanceof LockingGraph) {
+            // queries run on the wrapped graph to use its optimisations
+            this.lock = (LockingGraph) graph;
+            this.graph = lock.getWrapped();
+        }
+        this.cache = new QueryCache();
+        this.results = new ResultCache(m);
+    }
+
+    public Model getModel() {
+        return model;
+    }
+
+    public QueryCache getCache() {
+        return cache;
+    }
+
+    public ResultCache getResultCache() {
+        return results;
+    }
+
+    /**
+     * Returns the generation of the model, which changes with each change of
+     * the model. Cursors opened in an earlier generation have to be opened
+     * again.
+     *
+     * @return The generation, always 0 if the model is not locked.
+     */
+    public long getGeneration() {
+        return lock != null ? lock.getGeneration() : 0;
+    }
+
+    /**
+     * Reads the model under its read lock, if it has one. The model can not
+     * change while the reader runs.
+     *
+     * @param reader    The reading code, must not change the model.
+     *
+     * @return The result of the reader.
+     */
+    public <T> T read(Supplier<T> reader) {
+        return lock != null ? lock.read(reader) : reader.get();
+    }
+
+    /**
+     * Returns the read lock of the model, for readers which read in steps.
+     *
+     * @return The read lock, a lock without other users if the model is not locked.
+     */
+    public Lock readLock() {
+        return lock != null ? lock.readLock() : new ReentrantLock();
+    }
+
+    /**
+     * Enables or disables the literal index. Without the index searches scan
+     * the literals of the model, which suits models that are not held in
+     * memory.
+     *
+     * @param indexed   False to search without an index.
+     */
+    public synchronized void setIndexed(boolean indexed) {
+        this.indexed = indexed;
+
+        if (!indexed && index != null) {
+            index.close();
+            index = null;
+        }
+    }
+
+    public synchronized boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * Returns the index of the literals of the model. The index is built on
+     * first use and updated with every change of the model afterwards.
+     *
+     * @return The literal index or null if the index is disabled.
+     */
+    public synchronized LiteralIndex getLiteralIndex() {
+        if (index == null && indexed) {
+            index = read(() -> new LiteralIndex(model));
+        }
+        return index;
+    }
+
+    /**
+     * Searches the resources having literals with all words of a search
+     * text, see {@link LiteralIndex#search(String)}.
+     *
+     * @param text  The search text.
+     *
+     * @return The matching subjects.
+     */
+    public Set<Node> searchLiterals(String text) {
+        LiteralIndex literals = getLiteralIndex();
+
+        return literals != null ? literals.search(text) : read(() -> LiteralIndex.search(graph, text));
+    }
+
+    /**
+     * Searches the resources having a literal that contains a string, see
+     * {@link LiteralIndex#searchSubstring(String)}. Without the literal index
+     * a query template is run with the string bound to it, the template is
+     * compiled on the first search.
+     *
+     * @param substring The string to search for.
+     *
+     * @return The matching subjects.
+     */
+    public Set<Node> searchSubstring(String substring) {
+        LiteralIndex literals = getLiteralIndex();
+        if (literals != null) {
+            return literals.searchSubstring(substring);
+        }
+
+        Set<Node> found = new HashSet<>();
+        if (substring.isEmpty()) {
+            return found;
+        }
+
+        // the text is bound to the compiled query, quotes in it need no escaping
+        Map<String, RDFNode> values = Collections.singletonMap("text",
+                ResourceFactory.createPlainLiteral(substring.toLowerCase(Locale.ROOT)));
+
+        return read(() -> {
+            try (QueryCursor cursor = getSubstringTemplate().select(values)) {
+                cursor.forEachRemaining(sol -> found.add(sol.get("s").asNode()));
+            }
+            return found;
+        });
+    }
+
+    private synchronized QueryTemplate getSubstringTemplate() {
+        if (substrings == null) {
+            substrings = template("SELECT DISTINCT ?s WHERE { ?s ?p ?o " +
+                    "FILTER (isLiteral(?o) && contains(lcase(str(?o)), ?text)) }");
+        }
+        return substrings;
+    }
+
+    /**
+     * Returns a compiled query for a query string, which declares all
+     * prefixes it uses. Repeated queries are taken from the cache.
+     *
+     * @param queryString   The SPARQL query.
+     *
+     * @return The compiled query.
+     */
+    public CachedQuery compile(String queryString) {
+        return cache.get(queryString, null);
+    }
+
+    /**
+     * Returns a compiled query for a query without prefix declarations.
+     * The prefixes of the model can be used in the query, as if the
+     * {@link #getPrefixHeader()} was prepended to it.
+     *
+     * @param queryBody The SPARQL query without prefixes.
+     *
+     * @return The compiled query.
+     */
+    public CachedQuery prepare(String queryBody) {
+        return cache.get(queryBody, model);
+    }
+
+    /**
+     * Compiles a query without prefix declarations into a template, whose
+     * variables are bound to values when it is executed. Templates should be
+     * kept and reused, but are also taken from the query cache.
+     *
+     * @param queryBody The SPARQL query without prefixes.
+     *
+     * @return The query template.
+     */
+    public QueryTemplate template(String queryBody) {
+        return new QueryTemplate(this, prepare(queryBody));
     }
 
     /**
@@ -47,44 +248,279 @@ public class QueryHelper {
      *
      * @param search The search parameter.
      *
-     * @return A stream of resources with a property having a part of the
-     *         search string as literal value.
+     * @return A stream of resources with a literal value containing the
+     *         words of the search string, see {@link LiteralIndex#search(String)},
+     *         or containing the whole search string as a part.
      */
     public Stream<Resource> streamSearchResults(String search) {
-        String qs = StrUtils.strjoin("",
-                "SELECT DISTINCT ?s ",
-                "WHERE {",
-                "  ?s ?p ?o ",
-                "  FILTER regex(?o, '", search, "', 'i')}"
-        );
+        return streamSearchResults(search, () -> false);
+    }
 
-        Query query = QueryFactory.create(qs);
-        ResultSet rs = QueryExecutionFactory.create(query, this.model).execSelect();
+    /**
+     * Searches like {@link #streamSearchResults(String)}. Without the literal
+     * index all statements of the model are read, under the read lock, which
+     * can take long for a large store. Such a search should run in the
+     * background and can be cancelled from another thread.
+     *
+     * @param search    The search parameter.
+     * @param cancelled Tells if the search should stop.
+     *
+     * @return A stream of the matching resources.
+     * @throws java.util.concurrent.CancellationException If the search was cancelled.
+     */
+    public Stream<Resource> streamSearchResults(String search, BooleanSupplier cancelled) {
+        LiteralIndex literals = getLiteralIndex();
+        Set<Node> found;
+
+        if (literals != null) {
+            found = literals.search(search);
+            found.addAll(literals.searchSubstring(search.trim()));
+        } else {
+            found = read(() -> LiteralIndex.searchAll(graph, search, cancelled));
+        }
+
+        return found.stream().map(model::wrapAsResource);
+    }
+
+    /**
+     * Collects the statements of resources in one pass under the read lock,
+     * each resource is looked up only once. Literals are ignored.
+     *
+     * @param nodes The resources to describe, may contain duplicates.
+     *
+     * @return A new model with all statements having one of the resources as subject.
+     */
+    public Model describe(Iterable<Node> nodes) {
+        Model description = ModelFactory.createDefaultModel();
+        Graph target = description.getGraph();
 
-        String var = rs.getResultVars().get(0);
-        Stream<QuerySolution> stream =StreamSupport.stream(
-                Spliterators.spliteratorUnknownSize(rs, NONNULL | IMMUTABLE | DISTINCT), false);
+        read(() -> {
+            Set<Node> seen = new HashSet<>();
+            for (Node n : nodes) {
+                if (n != null && !n.isLiteral() && seen.add(n)) {
+                    graph.find(n, Node.ANY, Node.ANY).forEachRemaining(target::add);
+                }
+            }
+            return null;
+        });
 
-        return stream.map(sol -> sol.getResource(var));
+        return description;
+    }
+
+    /**
+     * Runs a SELECT query and returns a cursor over its solutions. The
+     * solutions are computed while the cursor advances.
+     *
+     * @param queryString   The SPARQL query.
+     *
+     * @return An open cursor, which has to be closed by the caller.
+     */
+    public QueryCursor select(String queryString) {
+        return select(compile(queryString));
+    }
+
+    /**
+     * Runs a compiled SELECT query and returns a cursor over its solutions.
+     *
+     * @param query The compiled query.
+     *
+     * @return An open cursor, which has to be closed by the caller.
+     */
+    public QueryCursor select(CachedQuery query) {
+        return new QueryCursor(exec(query.getOp()), query.getQuery().getResultVars(), model);
+    }
+
+    /**
+     * Runs a compiled SELECT query with bound variables. The values are
+     * substituted into the algebra expression and passed on as the input of
+     * the evaluation, so the solutions contain them.
+     */
+    QueryCursor select(CachedQuery query, Binding values) {
+        Op op = Substitute.substitute(query.getOp(), values);
+
+        return new QueryCursor(exec(op, values, newContext()), query.getQuery().getResultVars(), model);
+    }
+
+    /**
+     * Runs a compiled CONSTRUCT query with bound variables, see
+     * {@link #select(CachedQuery, Binding)}.
+     */
+    Model construct(CachedQuery query, Binding values) {
+        Op op = Substitute.substitute(query.getOp(), values);
+
+        return read(() -> construct(query, exec(op, values, newContext())));
+    }
+
+    /**
+     * Parses and optimises a query without prefix declarations for
+     * profiling. The query is not taken from the cache, so the measured
+     * times are those of a new query.
+     *
+     * @param queryBody The SPARQL query without prefixes.
+     *
+     * @return An empty profile of the query, to be passed to {@link #select(QueryProfile)}.
+     */
+    public QueryProfile profile(String queryBody) {
+        long start = System.nanoTime();
+        Query parsed = QueryCache.parse(queryBody, model.getNsPrefixMap());
+
+        long parsedAt = System.nanoTime();
+        CachedQuery query = new CachedQuery(parsed);
+
+        return new QueryProfile(query, parsedAt - start, System.nanoTime() - parsedAt);
+    }
+
+    /**
+     * Runs a profiled SELECT query. The profile records the statistics of
+     * the execution while the cursor is read.
+     *
+     * @param profile   The profile of the query.
+     *
+     * @return An open cursor, which has to be closed by the caller.
+     */
+    public QueryCursor select(QueryProfile profile) {
+        Context context = newContext();
+        QC.setFactory(context, profile::createExecutor);
+
+        CachedQuery query = profile.getQuery();
+        QueryIterator iter = profile.track(exec(query.getOp(), context));
+
+        return new QueryCursor(iter, query.getQuery().getResultVars(), model);
+    }
+
+    /**
+     * Runs a compiled SELECT query for a range of its solutions. The range is
+     * applied to the evaluation, so the solutions before the range are not
+     * materialised either.
+     *
+     * @param query     The compiled query.
+     * @param offset    Number of solutions to skip.
+     * @param limit     Maximum number of solutions.
+     *
+     * @return An open cursor, which has to be closed by the caller.
+     */
+    public QueryCursor select(CachedQuery query, long offset, long limit) {
+        Op page = new OpSlice(query.getOp(), offset, limit);
+
+        return new QueryCursor(exec(page), query.getQuery().getResultVars(), model);
+    }
+
+    /**
+     * Fetches one page of the solutions of a compiled SELECT query.
+     *
+     * @param query     The compiled query.
+     * @param page      The number of the page, starting at 0.
+     * @param pageSize  The number of solutions per page.
+     *
+     * @return The solutions on the page, empty after the last page.
+     */
+    public List<QuerySolution> fetchPage(CachedQuery query, long page, int pageSize) {
+        return read(() -> {
+            try (QueryCursor cursor = select(query, page * pageSize, pageSize)) {
+                return cursor.nextPage(pageSize);
+            }
+        });
     }
 
     public ResultSet ExecSelect(String queryString) {
-        Query query = QueryFactory.create(queryString);
-        QueryExecution qexec = QueryExecutionFactory.create(query, this.model);
+        return ExecSelect(compile(queryString));
+    }
 
-        ResultSet resultModel = ResultSetFactory.copyResults(qexec.execSelect());
-        qexec.close();
+    /**
+     * Runs a compiled SELECT query. Results of queries whose part of the
+     * model did not change since they were run last are taken from the
+     * result cache.
+     *
+     * @param query The compiled query.
+     *
+     * @return The solutions, which are kept in memory.
+     */
+    public ResultSet ExecSelect(CachedQuery query) {
+        ResultSet cached = results.getSelect(query);
+        if (cached != null) {
+            return cached;
+        }
 
-        return resultModel;
+        long epoch = results.getEpoch();
+        List<Binding> solutions = read(() -> {
+            QueryIterator iter = exec(query.getOp());
+
+            List<Binding> all = new ArrayList<>();
+            iter.forEachRemaining(all::add);
+            iter.close();
+
+            return all;
+        });
+
+        results.putSelect(query, epoch, solutions);
+
+        return new ResultSetStream(query.getQuery().getResultVars(), model,
+                new QueryIterPlainWrapper(solutions.iterator()));
     }
 
     public Model ExecConstruct(String queryString) {
-        Query query = QueryFactory.create(queryString);
-        QueryExecution qexec = QueryExecutionFactory.create(query, this.model);
+        return ExecConstruct(compile(queryString));
+    }
+
+    /**
+     * Runs a compiled CONSTRUCT query, using the result cache like
+     * {@link #ExecSelect(CachedQuery)}.
+     *
+     * @param query The compiled query.
+     *
+     * @return A new model with the constructed statements.
+     */
+    public Model ExecConstruct(CachedQuery query) {
+        Model cached = results.getConstruct(query);
+        if (cached != null) {
+            return cached;
+        }
+
+        long epoch = results.getEpoch();
+        Model resultModel = read(() -> construct(query, exec(query.getOp())));
 
-        Model resultModel = qexec.execConstruct();
-        qexec.close();
+        results.putConstruct(query, epoch, resultModel);
 
         return resultModel;
     }
+
+    private Model construct(CachedQuery query, QueryIterator iter) {
+        Model resultModel = ModelFactory.createDefaultModel();
+        resultModel.setNsPrefixes(query.getQuery().getPrefixMapping());
+
+        Iterator<Triple> triples = TemplateLib.calcTriples(
+                query.getQuery().getConstructTemplate().getTriples(), iter);
+        triples.forEachRemaining(resultModel.getGraph()::add);
+        iter.close();
+
+        return resultModel;
+    }
+
+    /**
+     * Evaluates the algebra expression of a compiled query on the model. The
+     * expression is already optimised, so the optimiser is not run again.
+     */
+    private QueryIterator exec(Op op) {
+        return exec(op, newContext());
+    }
+
+    private QueryIterator exec(Op op, Context context) {
+        return exec(op, BindingRoot.create(), context);
+    }
+
+    private QueryIterator exec(Op op, Binding input, Context context) {
+        DatasetGraph dataset = DatasetGraphFactory.createOneGraph(graph);
+
+        Plan plan = QueryEngineRegistry.findFactory(op, dataset, context)
+                .create(op, dataset, input, context);
+
+        return plan.iterator();
+    }
+
+    private static Context newContext() {
+        Context context = ARQ.getContext().copy();
+        context.set(ARQ.optimization, false);
+
+        return context;
+    }
 }
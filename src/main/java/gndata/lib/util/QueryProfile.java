@@ -0,0 +1,269 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.lib.util;
+
+import java.util.*;
+
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.engine.*;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIteratorWrapper;
+import com.hp.hpl.jena.sparql.engine.main.OpExecutor;
+
+/**
+ * Timings and row counts of a single query execution. A profile is created
+ * by {@link QueryHelper#profile(String)}, which measures parsing and
+ * optimisation, and filled while the cursor of
+ * {@link QueryHelper#select(QueryProfile)} is read.
+ *
+ * Each operator of the algebra counts how often it was evaluated, the rows
+ * it produced and the time spent producing them. Times include the time of
+ * the operators below, all times are in nanoseconds.
+ */
+public class QueryProfile {
+
+    private final CachedQuery query;
+    private final long parseTime;
+    private final long optimiseTime;
+
+    private final Map<Op, Operator> operators = new IdentityHashMap<>();
+    private final List<Operator> order = new ArrayList<>();
+
+    private long executionTime = 0;
+    private long results = 0;
+
+    public QueryProfile(CachedQuery query, long parseTime, long optimiseTime) {
+        this.query = query;
+        this.parseTime = parseTime;
+        this.optimiseTime = optimiseTime;
+    }
+
+    public CachedQuery getQuery() {
+        return query;
+    }
+
+    public long getParseTime() {
+        return parseTime;
+    }
+
+    public long getOptimiseTime() {
+        return optimiseTime;
+    }
+
+    public synchronized long getExecutionTime() {
+        return executionTime;
+    }
+
+    public synchronized long getResults() {
+        return results;
+    }
+
+    /**
+     * Returns the optimised algebra expression that was executed.
+     *
+     * @return The algebra in SSE syntax.
+     */
+    public String getAlgebra() {
+        return query.getOp().toString();
+    }
+
+    /**
+     * Returns the statistics of the evaluated operators.
+     *
+     * @return The operators in the order of their first evaluation.
+     */
+    public synchronized List<Operator> getOperators() {
+        List<Operator> copy = new ArrayList<>();
+        for (Operator op : order) {
+            copy.add(new Operator(op));
+        }
+        return copy;
+    }
+
+    /**
+     * Creates an executor, which evaluates the operators with the
+     * statistics of this profile.
+     */
+    OpExecutor createExecutor(ExecutionContext context) {
+        return new ProfilingExecutor(context);
+    }
+
+    /**
+     * Wraps the evaluation of the whole query to measure its time and the
+     * number of results.
+     */
+    QueryIterator track(QueryIterator iter) {
+        return new Counting(iter, null);
+    }
+
+    private synchronized Operator operator(Op op, int depth) {
+        Operator stats = operators.get(op);
+
+        if (stats == null) {
+            stats = new Operator(op, depth);
+            operators.put(op, stats);
+            order.add(stats);
+        }
+        stats.calls++;
+
+        return stats;
+    }
+
+    private synchronized void count(Operator stats, long time, boolean row) {
+        if (stats == null) {
+            executionTime += time;
+            results += row ? 1 : 0;
+        } else {
+            stats.time += time;
+            stats.rows += row ? 1 : 0;
+        }
+    }
+
+    /**
+     * Formats the profile as a text report.
+     *
+     * @return A report with the timings, the operators and the algebra.
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append(String.format("Parse:     %10.3f ms%n", millis(parseTime)));
+        sb.append(String.format("Optimise:  %10.3f ms%n", millis(optimiseTime)));
+        sb.append(String.format("Execution: %10.3f ms%n", millis(executionTime)));
+        sb.append(String.format("Results:   %10d%n%n", results));
+
+        sb.append(String.format("%-40s %8s %10s %12s%n", "Operator", "Calls", "Rows", "Time [ms]"));
+        for (Operator op : order) {
+            sb.append(String.format("%-40s %8d %10d %12.3f%n",
+                    op.getLabel(), op.getCalls(), op.getRows(), millis(op.getTime())));
+        }
+
+        sb.append(String.format("%nAlgebra:%n")).append(getAlgebra());
+
+        return sb.toString();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * Statistics of a single operator.
+     */
+    public static class Operator {
+
+        private final Op op;
+        private final int depth;
+        private long calls = 0;
+        private long rows = 0;
+        private long time = 0;
+
+        private Operator(Op op, int depth) {
+            this.op = op;
+            this.depth = depth;
+        }
+
+        private Operator(Operator other) {
+            this(other.op, other.depth);
+            this.calls = other.calls;
+            this.rows = other.rows;
+            this.time = other.time;
+        }
+
+        public Op getOp() {
+            return op;
+        }
+
+        public String getName() {
+            return op.getName();
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * Returns the start of the algebra expression of the operator,
+         * indented by its depth.
+         *
+         * @return A single line label.
+         */
+        public String getLabel() {
+            String expr = op.toString().replaceAll("\\s+", " ").trim();
+            String label = String.join("", Collections.nCopies(depth, "  ")) + expr;
+
+            return label.length() <= 40 ? label : label.substring(0, 37) + "...";
+        }
+    }
+
+    /**
+     * Evaluates each operator with an iterator that records its statistics.
+     */
+    private class ProfilingExecutor extends OpExecutor {
+
+        public ProfilingExecutor(ExecutionContext context) {
+            super(context);
+        }
+
+        @Override
+        protected QueryIterator exec(Op op, QueryIterator input) {
+            // the level is raised by the evaluation of the operator itself
+            Operator stats = operator(op, level + 1 - TOP_LEVEL);
+            long start = System.nanoTime();
+
+            QueryIterator iter = super.exec(op, input);
+            count(stats, System.nanoTime() - start, false);
+
+            return new Counting(iter, stats);
+        }
+    }
+
+    private class Counting extends QueryIteratorWrapper {
+
+        private final Operator stats;
+
+        public Counting(QueryIterator iter, Operator stats) {
+            super(iter);
+            this.stats = stats;
+        }
+
+        @Override
+        protected boolean hasNextBinding() {
+            long start = System.nanoTime();
+            try {
+                return super.hasNextBinding();
+            } finally {
+                count(stats, System.nanoTime() - start, false);
+            }
+        }
+
+        @Override
+        protected Binding moveToNextBinding() {
+            long start = System.nanoTime();
+            try {
+                return super.moveToNextBinding();
+            } finally {
+                count(stats, System.nanoTime() - start, true);
+            }
+        }
+    }
+}
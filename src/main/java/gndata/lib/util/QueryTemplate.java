@@ -0,0 +1,111 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.lib.util;
+
+import java.util.*;
+
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.sparql.algebra.OpVars;
+import com.hp.hpl.jena.sparql.core.*;
+import com.hp.hpl.jena.sparql.engine.binding.*;
+
+/**
+ * A query which is parsed and optimised once and executed many times with
+ * different values for some of its variables. The values are put into the
+ * compiled algebra expression instead of the query text, so they need no
+ * quoting and can not change the structure of the query.
+ *
+ * Templates are created by {@link QueryHelper#template(String)} and can be
+ * shared between threads.
+ */
+public class QueryTemplate {
+
+    // characters with a special meaning in XPath regular expressions
+    private static final String REGEX_SPECIAL = "\\.?*+{}()[]^$|-";
+
+    private final QueryHelper helper;
+    private final CachedQuery query;
+
+    QueryTemplate(QueryHelper helper, CachedQuery query) {
+        this.helper = helper;
+        this.query = query;
+    }
+
+    public CachedQuery getQuery() {
+        return query;
+    }
+
+    /**
+     * Returns the variables of the query, which can be bound to values.
+     *
+     * @return The names of the variables.
+     */
+    public Set<String> getParameters() {
+        Set<String> names = new LinkedHashSet<>();
+        for (Var var : OpVars.mentionedVars(query.getOp())) {
+            names.add(var.getVarName());
+        }
+        return names;
+    }
+
+    /**
+     * Runs the SELECT query with bound variables. Bound variables keep their
+     * value in the solutions.
+     *
+     * @param values    Values for variables of the query by name.
+     *
+     * @return An open cursor, which has to be closed by the caller.
+     */
+    public QueryCursor select(Map<String, ? extends RDFNode> values) {
+        return helper.select(query, bind(values));
+    }
+
+    /**
+     * Runs the CONSTRUCT query with bound variables.
+     *
+     * @param values    Values for variables of the query by name.
+     *
+     * @return A new model with the constructed statements.
+     */
+    public Model construct(Map<String, ? extends RDFNode> values) {
+        return helper.construct(query, bind(values));
+    }
+
+    private static Binding bind(Map<String, ? extends RDFNode> values) {
+        BindingMap binding = BindingFactory.create();
+
+        values.forEach((name, value) -> {
+            if (value != null) {
+                binding.add(Var.alloc(name), value.asNode());
+            }
+        });
+
+        return binding;
+    }
+
+    /**
+     * Creates a literal for a regex FILTER, which matches a text literally.
+     *
+     * @param text  The text to search for, e.g. typed by the user.
+     *
+     * @return A plain literal with the special characters of the text escaped.
+     */
+    public static Literal regex(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 8);
+
+        for (char c : text.toCharArray()) {
+            if (REGEX_SPECIAL.indexOf(c) >= 0) {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+
+        return ResourceFactory.createPlainLiteral(sb.toString());
+    }
+}
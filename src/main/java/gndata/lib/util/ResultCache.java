@@ -0,0 +1,419 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.lib.util;
+
+import java.util.*;
+
+import com.hp.hpl.jena.graph.*;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.listeners.StatementListener;
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.sparql.algebra.*;
+import com.hp.hpl.jena.sparql.algebra.op.*;
+import com.hp.hpl.jena.sparql.engine.ResultSetStream;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import com.hp.hpl.jena.sparql.expr.*;
+import com.hp.hpl.jena.vocabulary.RDF;
+
+/**
+ * A bounded cache for the results of SELECT and CONSTRUCT queries on a
+ * model, dropping the least recently used result when full. Besides the
+ * solutions of a SELECT query, the distinct resources of its solutions, as
+ * listed by a {@link ResultPager}, can be cached.
+ *
+ * The cache listens to the changes of the model. Every change increments
+ * an epoch counter and records it as the version of the changed predicate
+ * and, for rdf:type statements, of the changed type. A result stays valid as
+ * long as none of the predicates and types the query matches changed since
+ * it was computed. Queries with variable predicates or property paths depend
+ * on the whole model and are invalidated by any change.
+ */
+public class ResultCache extends StatementListener {
+
+    public static final int DEFAULT_SIZE = 32;
+    public static final int DEFAULT_MAX_RESULTS = 10000;
+
+    private final Model model;
+    private final int maxResults;
+    private final Map<Key, Entry> entries;
+
+    private final Map<Node, Long> predicateVersions = new HashMap<>();
+    private final Map<Node, Long> typeVersions = new HashMap<>();
+    private long epoch = 0;
+    private long cleared = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+
+    public ResultCache(Model model) {
+        this(model, DEFAULT_SIZE, DEFAULT_MAX_RESULTS);
+    }
+
+    /**
+     * Creates a cache and starts listening to the changes of the model.
+     *
+     * @param model         The queried model.
+     * @param size          The maximum number of cached results.
+     * @param maxResults    Results with more solutions or statements are
+     *                      not cached.
+     */
+    public ResultCache(Model model, int size, int maxResults) {
+        this.model = model;
+        this.maxResults = maxResults;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > size;
+            }
+        };
+
+        model.register(this);
+    }
+
+    /**
+     * Stops listening to the model and drops all results.
+     */
+    public synchronized void close() {
+        model.unregister(this);
+        entries.clear();
+    }
+
+    /**
+     * Returns the current epoch. It has to be read before a query is
+     * executed and passed to the put methods, so a change during the
+     * execution invalidates the result.
+     *
+     * @return The number of changes seen so far.
+     */
+    public synchronized long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Returns the cached solutions of a SELECT query.
+     *
+     * @param query The compiled query.
+     *
+     * @return The solutions with their own cursor or null if there is no
+     *         valid result.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized ResultSet getSelect(CachedQuery query) {
+        List<Binding> cached = (List<Binding>) get(new Key(Kind.SELECT, query));
+
+        return cached == null ? null : new ResultSetStream(query.getQuery().getResultVars(),
+                model, new QueryIterPlainWrapper(cached.iterator()));
+    }
+
+    /**
+     * Caches the solutions of a SELECT query.
+     *
+     * @param query     The compiled query.
+     * @param epoch     The epoch before the query was executed.
+     * @param results   The solutions, which must not be modified afterwards.
+     */
+    public synchronized void putSelect(CachedQuery query, long epoch, List<Binding> results) {
+        if (results.size() <= maxResults) {
+            put(new Key(Kind.SELECT, query), epoch, Collections.unmodifiableList(results));
+        }
+    }
+
+    /**
+     * Returns the cached resources of the solutions of a SELECT query.
+     *
+     * @param query The compiled query.
+     *
+     * @return The distinct resources, which must not be modified, or null if
+     *         there is no valid result.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized List<Node> getResources(CachedQuery query) {
+        return (List<Node>) get(new Key(Kind.RESOURCES, query));
+    }
+
+    /**
+     * Caches the resources of the solutions of a SELECT query.
+     *
+     * @param query     The compiled query.
+     * @param epoch     The epoch before the query was executed.
+     * @param resources The distinct resources, which must not be modified
+     *                  afterwards.
+     */
+    public synchronized void putResources(CachedQuery query, long epoch, List<Node> resources) {
+        if (resources.size() <= maxResults) {
+            put(new Key(Kind.RESOURCES, query), epoch, Collections.unmodifiableList(resources));
+        }
+    }
+
+    /**
+     * Returns the cached model of a CONSTRUCT query.
+     *
+     * @param query The compiled query.
+     *
+     * @return A copy of the model or null if there is no valid result.
+     */
+    public synchronized Model getConstruct(CachedQuery query) {
+        Model cached = (Model) get(new Key(Kind.CONSTRUCT, query));
+
+        return cached == null ? null : copy(cached);
+    }
+
+    /**
+     * Caches the model of a CONSTRUCT query.
+     *
+     * @param query     The compiled query.
+     * @param epoch     The epoch before the query was executed.
+     * @param results   The constructed model, it is copied.
+     */
+    public synchronized void putConstruct(CachedQuery query, long epoch, Model results) {
+        if (results.size() <= maxResults) {
+            put(new Key(Kind.CONSTRUCT, query), epoch, copy(results));
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private Object get(Key key) {
+        Entry entry = entries.get(key);
+
+        if (entry != null && entry.isValid()) {
+            hits++;
+            return entry.results;
+        }
+
+        entries.remove(key);
+        misses++;
+        return null;
+    }
+
+    private void put(Key key, long epoch, Object results) {
+        Entry entry = new Entry(key.query.getOp(), epoch, results);
+
+        if (entry.isValid()) {
+            entries.put(key, entry);
+        }
+    }
+
+    private static Model copy(Model results) {
+        Model copy = ModelFactory.createDefaultModel();
+        copy.setNsPrefixes(results);
+        copy.add(results);
+
+        return copy;
+    }
+
+    @Override
+    public synchronized void addedStatement(Statement s) {
+        changed(s);
+    }
+
+    @Override
+    public synchronized void removedStatement(Statement s) {
+        changed(s);
+    }
+
+    private void changed(Statement s) {
+        epoch++;
+
+        Node predicate = s.getPredicate().asNode();
+        predicateVersions.put(predicate, epoch);
+
+        if (predicate.equals(RDF.type.asNode())) {
+            typeVersions.put(s.getObject().asNode(), epoch);
+        }
+    }
+
+    /**
+     * Clearing a graph held in memory is reported without the removed
+     * statements, all results are invalidated in that case. Removing by
+     * pattern reports each removed statement as well.
+     */
+    @Override
+    public synchronized void notifyEvent(Model m, Object event) {
+        if (event instanceof GraphEvents && "removeAll".equals(((GraphEvents) event).getTitle())) {
+            cleared = ++epoch;
+        }
+    }
+
+    private enum Kind { SELECT, CONSTRUCT, RESOURCES }
+
+    /**
+     * The kind of a cached result together with its query. Compiled queries
+     * are shared by the query cache, so they are compared by identity.
+     */
+    private static final class Key {
+
+        private final Kind kind;
+        private final CachedQuery query;
+
+        public Key(Kind kind, CachedQuery query) {
+            this.kind = kind;
+            this.query = query;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).kind == kind && ((Key) o).query == query;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * kind.hashCode() + System.identityHashCode(query);
+        }
+    }
+
+    /**
+     * A cached result together with the parts of the model it depends on.
+     */
+    private class Entry {
+
+        private final long computed;
+        private final Object results;
+
+        private final Set<Node> predicates = new HashSet<>();
+        private final Set<Node> types = new HashSet<>();
+        private boolean global = false;
+
+        public Entry(Op op, long computed, Object results) {
+            this.computed = computed;
+            this.results = results;
+
+            OpWalker.walk(op, new Dependencies());
+        }
+
+        public boolean isValid() {
+            if (cleared > computed || (global && epoch > computed)) {
+                return false;
+            }
+
+            for (Node predicate : predicates) {
+                if (predicateVersions.getOrDefault(predicate, 0L) > computed) {
+                    return false;
+                }
+            }
+            for (Node type : types) {
+                if (typeVersions.getOrDefault(type, 0L) > computed) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private void match(Triple t) {
+            Node p = t.getPredicate();
+
+            if (!p.isConcrete()) {
+                global = true;
+            } else if (p.equals(RDF.type.asNode()) && t.getObject().isConcrete()) {
+                types.add(t.getObject());
+            } else {
+                predicates.add(p);
+            }
+        }
+
+        /**
+         * Collects the matched predicates and types, including those of
+         * EXISTS and NOT EXISTS patterns in expressions.
+         */
+        private class Dependencies extends OpVisitorBase {
+
+            private final ExprVisitor exprs = new ExprVisitorBase() {
+                @Override
+                public void visit(ExprFunctionOp func) {
+                    OpWalker.walk(func.getGraphPattern(), Dependencies.this);
+                }
+            };
+
+            private void walk(Collection<? extends Expr> list) {
+                if (list != null) {
+                    list.forEach(expr -> ExprWalker.walk(exprs, expr));
+                }
+            }
+
+            @Override
+            public void visit(OpBGP op) {
+                op.getPattern().forEach(Entry.this::match);
+            }
+
+            @Override
+            public void visit(OpTriple op) {
+                match(op.getTriple());
+            }
+
+            @Override
+            public void visit(OpQuadPattern op) {
+                op.getBasicPattern().forEach(Entry.this::match);
+            }
+
+            @Override
+            public void visit(OpPath op) {
+                global = true;
+            }
+
+            @Override
+            public void visit(OpPropFunc op) {
+                global = true;
+            }
+
+            @Override
+            public void visit(OpFilter op) {
+                walk(op.getExprs().getList());
+            }
+
+            @Override
+            public void visit(OpLeftJoin op) {
+                if (op.getExprs() != null) {
+                    walk(op.getExprs().getList());
+                }
+            }
+
+            @Override
+            public void visit(OpExtend op) {
+                walk(op.getVarExprList().getExprs().values());
+            }
+
+            @Override
+            public void visit(OpAssign op) {
+                walk(op.getVarExprList().getExprs().values());
+            }
+
+            @Override
+            public void visit(OpGroup op) {
+                walk(op.getGroupVars().getExprs().values());
+                for (ExprAggregator agg : op.getAggregators()) {
+                    ExprList args = agg.getAggregator().getExprList();
+                    if (args != null) {
+                        walk(args.getList());
+                    }
+                }
+            }
+
+            @Override
+            public void visit(OpOrder op) {
+                op.getConditions().forEach(c -> ExprWalker.walk(exprs, c.getExpression()));
+            }
+        }
+    }
+}
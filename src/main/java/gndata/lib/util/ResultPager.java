@@ -0,0 +1,344 @@
+// Copyright (c) 2014, German Neuroinformatics Node (G-Node)
+//
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted under the terms of the BSD License. See
+// LICENSE file in the root of the Project.
+
+package gndata.lib.util;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.*;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.rdf.listeners.StatementListener;
+import com.hp.hpl.jena.rdf.model.*;
+
+/**
+ * Pages through the distinct resources found in the solutions of a SELECT
+ * query, without holding more than a bounded number of pages in memory.
+ *
+ * The query is evaluated once, by the code counting its solutions, which
+ * passes each solution to {@link #add(List)}. The pager keeps the distinct
+ * resources bound to any variable in the order they first appear, literals
+ * are not listed. Pages are numbered in this order, so they are stable as
+ * long as the resources are not collected again.
+ *
+ * A page is read by describing its resources in one pass under the read
+ * lock of the model, see {@link QueryHelper#describe(Iterable)}. The rows of
+ * the page are the resources of that description, so they can be shown
+ * without reading the model again.
+ *
+ * The pager listens to the model while it holds pages. After a change of
+ * the model the next request drops the cached pages, the page is described
+ * from the changed model. Code which counts the solutions can
+ * {@link #watch()} the model to learn about the next change through the
+ * change handlers, e.g. to collect the resources again.
+ */
+public class ResultPager implements AutoCloseable {
+
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int DEFAULT_CACHED_PAGES = 32;
+
+    private final QueryHelper helper;
+    private final CachedQuery query;
+    private final int pageSize;
+    private final Map<Long, List<Resource>> pages;
+
+    private final ModelChangedListener changes = new ChangeListener();
+    private final List<Runnable> changeHandlers = new CopyOnWriteArrayList<>();
+    private final List<Runnable> resetHandlers = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean watching = new AtomicBoolean();
+
+    private final Set<Node> seen = new HashSet<>();
+    private List<Node> resources = new ArrayList<>();
+
+    private final AtomicLong version = new AtomicLong();
+
+    private boolean listening = false;
+    private long pagesVersion = 0;
+
+    public ResultPager(QueryHelper helper, CachedQuery query) {
+        this(helper, query, DEFAULT_PAGE_SIZE, DEFAULT_CACHED_PAGES);
+    }
+
+    /**
+     * Creates a pager over the resources of a compiled query. The pager is
+     * empty until resources are added.
+     *
+     * @param helper        The helper of the queried model.
+     * @param query         The compiled SELECT query.
+     * @param pageSize      The number of resources per page.
+     * @param cachedPages   The maximum number of pages kept in memory.
+     */
+    public ResultPager(QueryHelper helper, CachedQuery query, int pageSize, int cachedPages) {
+        this.helper = helper;
+        this.query = query;
+        this.pageSize = pageSize;
+        this.pages = new LinkedHashMap<Long, List<Resource>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, List<Resource>> eldest) {
+                return size() > cachedPages;
+            }
+        };
+    }
+
+    public QueryHelper getHelper() {
+        return helper;
+    }
+
+    public CachedQuery getQuery() {
+        return query;
+    }
+
+    public List<String> getResultVars() {
+        return query.getQuery().getResultVars();
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Returns the number of distinct resources collected so far.
+     *
+     * @return The number of rows.
+     */
+    public synchronized long size() {
+        return resources.size();
+    }
+
+    /**
+     * Adds the resources of solutions which were not seen before. Called
+     * while the query is evaluated, the added rows are appended.
+     *
+     * @param solutions The next solutions of the query.
+     *
+     * @return The number of resources collected so far.
+     */
+    public synchronized long add(List<QuerySolution> solutions) {
+        List<String> vars = getResultVars();
+
+        for (QuerySolution solution : solutions) {
+            for (String var : vars) {
+                RDFNode node = solution.get(var);
+
+                if (node != null && node.isResource() && seen.add(node.asNode())) {
+                    resources.add(node.asNode());
+                }
+            }
+        }
+
+        return resources.size();
+    }
+
+    /**
+     * Replaces all resources, after the query was evaluated again on the
+     * changed model. The cached pages are dropped, the version of the
+     * results increases and the reset handlers are run.
+     *
+     * @param found The distinct resources in the order of the new solutions.
+     */
+    public void setResources(List<Node> found) {
+        synchronized (this) {
+            seen.clear();
+            seen.addAll(found);
+            resources = new ArrayList<>(found);
+            pages.clear();
+            version.incrementAndGet();
+        }
+
+        resetHandlers.forEach(Runnable::run);
+    }
+
+    /**
+     * Returns the collected resources. The list is a copy, which can be
+     * read while the pager collects more resources.
+     *
+     * @return The distinct resources in the order of the solutions.
+     */
+    public synchronized List<Node> getResources() {
+        return new ArrayList<>(resources);
+    }
+
+    /**
+     * Returns the version of the results, which increases with each change
+     * of the model while the pager listens to it and when the resources are
+     * replaced. A page read after taking the version belongs to the results
+     * of that version or of a later one.
+     *
+     * @return The version of the results.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Adds code which is run on the next change of the model after a call
+     * of {@link #watch()}. Handlers run on the thread changing the model while
+     * it holds the write lock, so they must not wait for readers.
+     *
+     * @param handler   The code to run.
+     */
+    public void addChangeHandler(Runnable handler) {
+        changeHandlers.add(handler);
+    }
+
+    public void removeChangeHandler(Runnable handler) {
+        changeHandlers.remove(handler);
+    }
+
+    /**
+     * Adds code which is run after the resources were replaced, see
+     * {@link #setResources(List)}, on the thread replacing them.
+     *
+     * @param handler   The code to run.
+     */
+    public void addResetHandler(Runnable handler) {
+        resetHandlers.add(handler);
+    }
+
+    public void removeResetHandler(Runnable handler) {
+        resetHandlers.remove(handler);
+    }
+
+    /**
+     * Runs the change handlers once when the model changes next. Must be
+     * called again to learn about later changes, so a burst of changes is
+     * reported once.
+     */
+    public void watch() {
+        listen();
+        watching.set(true);
+    }
+
+    /**
+     * Returns a page of resources. The resources are described outside the
+     * lock of the pager, so resources can be added meanwhile. Only complete
+     * pages are cached.
+     *
+     * @param page  The number of the page, starting at 0.
+     *
+     * @return The described resources of the page, fewer than the page size
+     *         on the last page and empty after it.
+     */
+    public List<Resource> getPage(long page) {
+        List<Node> nodes;
+        long readVersion;
+
+        synchronized (this) {
+            refresh();
+
+            List<Resource> cached = pages.get(page);
+            if (cached != null) {
+                return cached;
+            }
+
+            long from = page * pageSize;
+            if (from >= resources.size()) {
+                return Collections.emptyList();
+            }
+
+            int to = (int) Math.min(from + pageSize, resources.size());
+            nodes = new ArrayList<>(resources.subList((int) from, to));
+            readVersion = pagesVersion;
+        }
+
+        listen();
+        Model description = helper.describe(nodes);
+
+        List<Resource> rows = new ArrayList<>(nodes.size());
+        nodes.forEach(n -> rows.add(description.wrapAsResource(n)));
+        List<Resource> described = Collections.unmodifiableList(rows);
+
+        synchronized (this) {
+            // a page described across a change is dropped with the next request
+            if (rows.size() == pageSize && readVersion == pagesVersion) {
+                pages.put(page, described);
+            }
+        }
+
+        return described;
+    }
+
+    /**
+     * Returns a single described resource.
+     *
+     * @param index The position of the resource, starting at 0.
+     *
+     * @return The resource or null if there are fewer resources.
+     */
+    public Resource get(long index) {
+        List<Resource> page = getPage(index / pageSize);
+        int offset = (int) (index % pageSize);
+
+        return offset < page.size() ? page.get(offset) : null;
+    }
+
+    /**
+     * Drops the cached pages and stops listening to the model. The pager can
+     * still be used afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        pages.clear();
+
+        synchronized (changes) {
+            if (listening) {
+                helper.getModel().unregister(changes);
+                listening = false;
+            }
+        }
+    }
+
+    private void listen() {
+        synchronized (changes) {
+            if (!listening) {
+                helper.getModel().register(changes);
+                listening = true;
+            }
+        }
+    }
+
+    private void refresh() {
+        long current = version.get();
+        if (pagesVersion != current) {
+            pages.clear();
+            pagesVersion = current;
+        }
+    }
+
+    /**
+     * Marks the pages as outdated. Changes run on another thread than the
+     * reads and must not wait for the pager, the pages are dropped by the
+     * next request.
+     */
+    private class ChangeListener extends StatementListener {
+
+        @Override
+        public void addedStatement(Statement s) {
+            changed();
+        }
+
+        @Override
+        public void removedStatement(Statement s) {
+            changed();
+        }
+
+        @Override
+        public void notifyEvent(Model m, Object event) {
+            changed();
+        }
+
+        private void changed() {
+            version.incrementAndGet();
+
+            if (watching.getAndSet(false)) {
+                changeHandlers.forEach(Runnable::run);
+            }
+        }
+    }
+}
@@ -3,6 +3,7 @@ package gndata.app.state;
 import gndata.lib.config.ProjectConfig;
 import gndata.lib.srv.MetadataService;
 import gndata.lib.srv.ProjectService;
+import gndata.lib.util.ProgressMonitor;
 import org.apache.commons.io.FileUtils;
 import org.junit.After;
 import org.junit.Before;
@@ -16,6 +17,7 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.*;
 
 import static org.junit.Assert.*;
 
@@ -92,5 +94,71 @@ public class ProjectStateTest {
         assertNull(state.getMetadata());
     }
 
+    @Test
+    public void testOpenConfig() throws Exception {
+        state = new ProjectState(Runnable::run);
+        config = ProjectConfig.load(fooPath.toString());
+
+        List<String> stages = new ArrayList<>();
+        ProjectConfig opened = state.openConfig(config, (message, done, total) -> stages.add(message))
+                .get(1, TimeUnit.MINUTES);
+
+        assertSame(config, opened);
+        assertSame(config, state.getConfig());
+        assertNotNull(state.getService());
+        assertNotNull(state.getMetadata());
+        assertEquals("Done", stages.get(stages.size() - 1));
+    }
+
+    @Test
+    public void testOpenConfigCancelled() throws Exception {
+        state = new ProjectState(Runnable::run);
+        config = ProjectConfig.load(fooPath.toString());
+        state.openConfig(config, ProgressMonitor.NONE).get(1, TimeUnit.MINUTES);
+        MetadataService metadata = state.getMetadata();
+
+        // cancelled while loading, the open project stays
+        otherConfig = ProjectConfig.load(barPath.toString());
+        try {
+            state.openConfig(otherConfig, cancelledAfter(null)).get(1, TimeUnit.MINUTES);
+            fail("Loading should have been cancelled");
+        } catch (CancellationException e) {
+            // pass test
+        }
+        assertSame(config, state.getConfig());
+        assertSame(metadata, state.getMetadata());
+
+        // cancelled after loading, the loaded project is not published
+        Future<ProjectConfig> opening = state.openConfig(otherConfig, cancelledAfter("Done"));
+        try {
+            opening.get(1, TimeUnit.MINUTES);
+            fail("Loading should have been cancelled");
+        } catch (CancellationException e) {
+            // pass test
+        }
+        assertSame(config, state.getConfig());
+        assertSame(metadata, state.getMetadata());
+    }
+
+    /**
+     * Returns a monitor that is cancelled once a stage was reported, or
+     * right away if the stage is null.
+     */
+    private static ProgressMonitor cancelledAfter(String stage) {
+        return new ProgressMonitor() {
+            private volatile boolean cancelled = stage == null;
+
+            @Override
+            public void progress(String message, long done, long total) {
+                cancelled |= message.equals(stage);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return cancelled;
+            }
+        };
+    }
+
     // TODO write tests for listeners
 }
\ No newline at end of file
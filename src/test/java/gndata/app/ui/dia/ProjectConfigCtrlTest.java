@@ -51,6 +51,13 @@ public class ProjectConfigCtrlTest {
         assertThat(ctrl.get().getDescription()).isEqualTo("Changed");
     }
 
+    @Test
+    public void testStorageBinding() {
+        ctrl.storageProperty().set(ProjectConfig.Storage.TDB);
+        assertThat(ctrl.get().getStorage()).isEqualTo(ProjectConfig.Storage.TDB);
+        assertThat(config.getStorage()).isEqualTo(ProjectConfig.Storage.MEMORY);
+    }
+
     @Test
     public void testGetResult() throws Exception {
         ProjectConfig result = ctrl.get();
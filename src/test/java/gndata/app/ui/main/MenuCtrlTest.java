@@ -12,9 +12,13 @@ import gndata.app.state.AppState;
 import gndata.app.state.ProjectState;
 import gndata.lib.config.GlobalConfig;
 import gndata.lib.config.ProjectConfig;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import javafx.embed.swing.JFXPanel;
 import org.apache.commons.io.FileUtils;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.File;
@@ -22,18 +26,34 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
 public class MenuCtrlTest {
 
     private static final Path tmpConf = Paths.get(System.getProperty("java.io.tmpdir"), "test.json");
     private static final Path tmpPath = Paths.get(System.getProperty("java.io.tmpdir"), "test-project");
 
+    private static boolean toolkit;
+
     TestableMenuCtrl ctrl;
     AppState appState;
     ProjectState projectState;
 
+    @BeforeClass
+    public static void startToolkit() {
+        // loading runs in a task, which needs the FX application thread
+        try {
+            new JFXPanel();
+            toolkit = true;
+        } catch (RuntimeException | Error e) {
+            toolkit = false;
+        }
+    }
+
     @Before
     public void setUp() throws Exception {
         appState = new AppState();
@@ -54,11 +74,14 @@ public class MenuCtrlTest {
 
     @Test
     public void testCreateProject() throws Exception {
+        assumeTrue(toolkit);
         assertFalse(projectState.isConfigured());
 
-        ctrl.createProject();
+        onFxThread(ctrl::createProject);
+        ctrl.awaitProgress();
 
         assertTrue(projectState.isConfigured());
+        assertTrue(appState.getConfig().hasProject(tmpPath.toFile().getAbsolutePath()));
 
         assertEquals("OtherName", projectState.getConfig().getName());
         assertEquals("OtherDescription", projectState.getConfig().getDescription());
@@ -66,22 +89,41 @@ public class MenuCtrlTest {
 
     @Test
     public void testOpenProject() throws Exception {
+        assumeTrue(toolkit);
         assertFalse(projectState.isConfigured());
 
-        ctrl.openProject();
+        onFxThread(ctrl::openProject);
+        ctrl.awaitProgress();
 
         assertTrue(projectState.isConfigured());
+        assertNull(ctrl.error);
+    }
+
+    @Test
+    public void testOpenProjectFails() throws Exception {
+        assumeTrue(toolkit);
+        Path annotations = tmpPath.resolve("metadata").resolve("annotations");
+        Files.createDirectories(annotations);
+        Files.write(annotations.resolve("metadata.rdf"), "not rdf".getBytes());
+
+        onFxThread(ctrl::openProject);
+        ctrl.awaitProgress();
+
+        assertFalse(projectState.isConfigured());
+        assertEquals("Unable to open project", ctrl.error);
     }
 
     @Test
     public void testProjectSettings() throws Exception {
+        assumeTrue(toolkit);
         ProjectConfig config = ProjectConfig.load(tmpPath.toString());
         projectState.setConfig(config);
 
         assertNull(config.getName());
         assertNull(config.getDescription());
 
-        ctrl.projectSettings();
+        onFxThread(ctrl::projectSettings);
+        ctrl.awaitProgress();
 
         assertEquals("OtherName", projectState.getConfig().getName());
         assertEquals("OtherDescription", projectState.getConfig().getDescription());
@@ -94,15 +136,47 @@ public class MenuCtrlTest {
         assertFalse(appState.isRunning());
     }
 
+    /**
+     * Runs an action on the FX application thread and waits for it.
+     */
+    private static void onFxThread(Runnable action) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        Platform.runLater(() -> {
+            try {
+                action.run();
+            } finally {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
     /**
      * A better testable version of MenuCtrl.
      */
     private static class TestableMenuCtrl extends MenuCtrl {
 
+        private volatile Task<?> progress;
+        private volatile String error;
+
         public TestableMenuCtrl(AppState appState, ProjectState projectState) {
             super(appState, projectState);
         }
 
+        /**
+         * Waits until the task of the last progress dialog is done and its
+         * handlers have run.
+         */
+        public void awaitProgress() throws Exception {
+            try {
+                progress.get(30, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                // reported to the failure handler
+            }
+            // the handlers run on the FX thread after the task is done
+            onFxThread(() -> {});
+        }
+
         @Override
         protected Optional<File> showDirectoryChooser() {
             return Optional.of(tmpPath.toFile());
@@ -119,5 +193,15 @@ public class MenuCtrlTest {
         protected Optional<String> showListDialog(GlobalConfig config) {
             return Optional.of(tmpPath.toString());
         }
+
+        @Override
+        protected void showProgress(String title, Task<?> task) {
+            progress = task;
+        }
+
+        @Override
+        protected void showError(String header, Throwable e) {
+            error = header;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,103 @@
+package gndata.app.ui.util;
+
+import java.util.*;
+import javafx.collections.ListChangeListener;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+/**
+ * Tests for lists loading their elements page by page.
+ */
+public class PagedListTest {
+
+    private List<Long> loads;
+    private PagedList<String> list;
+
+    @Before
+    public void setUp() throws Exception {
+        loads = new ArrayList<>();
+        list = new PagedList<>(250, (offset, limit) -> {
+            loads.add(offset);
+
+            List<String> page = new ArrayList<>();
+            for (long i = offset; i < Math.min(offset + limit, 250); i++) {
+                page.add("item " + i);
+            }
+            return page;
+        }, Runnable::run, Runnable::run, 100, 2);
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        assertEquals(250, list.size());
+        assertTrue(loads.isEmpty());
+
+        assertEquals("item 150", list.get(150));
+        assertEquals("item 199", list.get(199));
+        assertEquals("item 249", list.get(249));
+        assertEquals(Arrays.asList(100L, 200L), loads);
+
+        // only two pages are kept
+        assertEquals("item 0", list.get(0));
+        assertEquals("item 100", list.get(100));
+        assertEquals(Arrays.asList(100L, 200L, 0L, 100L), loads);
+        assertEquals(2, list.getLoadedPages());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testOutOfBounds() throws Exception {
+        list.get(250);
+    }
+
+    @Test
+    public void testShortPage() throws Exception {
+        PagedList<String> shrunk = new PagedList<>(10, (offset, limit) -> Collections.singletonList("only"),
+                Runnable::run, Runnable::run, 100, 2);
+
+        assertEquals("only", shrunk.get(0));
+        assertNull(shrunk.get(5));
+    }
+
+    @Test
+    public void testBackground() throws Exception {
+        Deque<Runnable> background = new ArrayDeque<>();
+        Deque<Runnable> fxThread = new ArrayDeque<>();
+        PagedList<String> async = new PagedList<>(250, (offset, limit) -> {
+            if (offset == 200) {
+                throw new IllegalStateException("no such page");
+            }
+            return Collections.nCopies(limit, "item");
+        }, background::add, fxThread::add, 100, 2);
+
+        List<Integer> updated = new ArrayList<>();
+        async.addListener((ListChangeListener<String>) c -> {
+            while (c.next()) {
+                if (c.wasUpdated()) {
+                    updated.add(c.getFrom());
+                }
+            }
+        });
+
+        // the page is loaded once in the background
+        assertNull(async.get(5));
+        assertNull(async.get(6));
+        assertEquals(1, background.size());
+        background.pop().run();
+        assertTrue(updated.isEmpty());
+
+        fxThread.pop().run();
+        assertEquals(Collections.singletonList(0), updated);
+        assertEquals("item", async.get(5));
+
+        // failed pages are not loaded again
+        assertNull(async.get(210));
+        background.pop().run();
+        fxThread.pop().run();
+        assertNull(async.get(210));
+        assertTrue(background.isEmpty());
+        assertEquals("no such page", async.getError(210));
+        assertNull(async.getError(5));
+    }
+}
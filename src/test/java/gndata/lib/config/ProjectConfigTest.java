@@ -41,4 +41,16 @@ public class ProjectConfigTest {
         assertEquals(conf.getName(), "myName");
         assertEquals(conf.getDescription(), "myDescription");
     }
+
+    @Test
+    public void testStorage() throws Exception {
+        conf = ProjectConfig.load(tmpPath.toString());
+        assertEquals(ProjectConfig.Storage.MEMORY, conf.getStorage());
+
+        conf.setStorage(ProjectConfig.Storage.TDB);
+        conf.store();
+        conf = ProjectConfig.load(tmpPath.toString());
+        assertEquals(ProjectConfig.Storage.TDB, conf.getStorage());
+        assertEquals(ProjectConfig.Storage.TDB, new ProjectConfig(conf).getStorage());
+    }
 }
\ No newline at end of file
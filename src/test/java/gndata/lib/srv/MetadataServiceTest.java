@@ -1,15 +1,21 @@
 package gndata.lib.srv;
 
+import java.io.OutputStream;
 import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
 
-import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.*;
 
-import com.hp.hpl.jena.ontology.OntModel;
+import com.hp.hpl.jena.ontology.*;
+import com.hp.hpl.jena.query.ResultSetFormatter;
 import com.hp.hpl.jena.rdf.model.*;
 import com.hp.hpl.jena.reasoner.*;
 import com.hp.hpl.jena.vocabulary.*;
-import gndata.lib.util.FakeRDFModel;
+import gndata.lib.config.ProjectConfig.Storage;
+import gndata.lib.util.*;
 import org.apache.commons.io.FileUtils;
+import org.apache.jena.riot.*;
 import org.junit.*;
 
 
@@ -63,6 +69,117 @@ public class MetadataServiceTest {
         assertNotNull(annotations);
     }
 
+    @Test
+    public void testSchemaClosure() throws Exception {
+        MetadataService first = MetadataService.create(tmpPath.toString());
+        first.close();
+
+        MetadataFilesManager metaFiles = new MetadataFilesManager(tmpPath.toString());
+        assert(Files.exists(metaFiles.schemaClosurePath()));
+
+        OntModel inferred = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM_RDFS_INF);
+        for (Path p : metaFiles.schemaPaths()) {
+            inferred.addSubModel(RDFDataMgr.loadModel(p.toString()));
+        }
+
+        MetadataService second = MetadataService.create(tmpPath.toString());
+        second.close();
+
+        assert(second.getSchema().isIsomorphicWith(first.getSchema()));
+        assert(ModelFactory.createDefaultModel().add(inferred).isIsomorphicWith(second.getSchema()));
+        assertEquals(
+                new OntologyHelper(inferred).listClasses().size(),
+                second.ontmanager.listClasses().size());
+    }
+
+    @Test
+    public void testCreateStore() throws Exception {
+        MetadataFilesManager metaFiles = new MetadataFilesManager(tmpPath.toString());
+        try (OutputStream out = Files.newOutputStream(metaFiles.annotationsPath())) {
+            RDFDataMgr.write(out, FakeRDFModel.getFakeAnnotations(), RDFFormat.RDFXML);
+        }
+
+        MetadataService first = MetadataService.create(tmpPath.toString(), Storage.TDB, ProgressMonitor.NONE);
+        assert(first.getAnnotations().isIsomorphicWith(FakeRDFModel.getFakeAnnotations()));
+        assertNull(first.getJournal());
+
+        Resource tbl = first.getAnnotations().getResource(FakeRDFModel.tbl);
+        first.getAnnotations().add(tbl, RDFS.label, "TBL");
+
+        // the triples are removed one by one, the store is synced once
+        Resource rhm = first.getAnnotations().getResource(FakeRDFModel.rhm);
+        long removed = first.getAnnotations().listStatements(rhm, null, (RDFNode) null).toList().size();
+        first.getAnnotations().removeAll(rhm, null, null);
+        first.close();
+
+        assert(Files.isDirectory(metaFiles.annotationsStorePath()));
+        assert(!Files.exists(metaFiles.annotationsJournalPath()));
+
+        // the store is not filled from the annotations file again
+        MetadataService second = MetadataService.create(tmpPath.toString(), Storage.TDB, ProgressMonitor.NONE);
+        Model annotations = second.getAnnotations();
+        assert(annotations.contains(annotations.getResource(FakeRDFModel.tbl), RDFS.label, "TBL"));
+        assert(!annotations.contains(annotations.getResource(FakeRDFModel.rhm), null));
+        assertEquals(FakeRDFModel.getFakeAnnotations().size() + 1 - removed, annotations.size());
+        assertEquals(1, ResultSetFormatter.consume(second.query.ExecSelect(QueryHelper.stdPrefix + "\n" +
+                "SELECT ?s WHERE { ?s rdfs:label \"TBL\" }")));
+        second.close();
+    }
+
+    @Test
+    public void testCreateCompact() throws Exception {
+        MetadataFilesManager metaFiles = new MetadataFilesManager(tmpPath.toString());
+        try (OutputStream out = Files.newOutputStream(metaFiles.annotationsPath())) {
+            RDFDataMgr.write(out, FakeRDFModel.getFakeAnnotations(), RDFFormat.RDFXML);
+        }
+
+        MetadataService first = MetadataService.create(tmpPath.toString(), Storage.COMPACT, ProgressMonitor.NONE);
+        assert(((LockingGraph) first.getAnnotations().getGraph()).getWrapped() instanceof CompactGraph);
+        assert(first.getAnnotations().isIsomorphicWith(FakeRDFModel.getFakeAnnotations()));
+        assertNotNull(first.getJournal());
+
+        Resource tbl = first.getAnnotations().getResource(FakeRDFModel.tbl);
+        first.getAnnotations().add(tbl, RDFS.label, "TBL");
+        first.close();
+
+        // the second time the graph is built from the snapshot and the journal
+        MetadataService second = MetadataService.create(tmpPath.toString(), Storage.COMPACT, ProgressMonitor.NONE);
+        Model annotations = second.getAnnotations();
+        assert(((LockingGraph) annotations.getGraph()).getWrapped() instanceof CompactGraph);
+        // no indexes are kept in memory next to the compact graph
+        assert(!second.query.isIndexed());
+        assertNull(AdjacencyIndex.forModel(annotations));
+        assert(annotations.contains(annotations.getResource(FakeRDFModel.tbl), RDFS.label, "TBL"));
+        assertEquals(FakeRDFModel.getFakeAnnotations().size() + 1, annotations.size());
+        second.close();
+    }
+
+    @Test
+    public void testCreateProgress() throws Exception {
+        List<String> stages = new ArrayList<>();
+        MetadataService ms = MetadataService.create(tmpPath.toString(), (msg, done, total) -> stages.add(msg));
+        ms.close();
+
+        assertEquals(Arrays.asList("Loading schemas", "Loading annotations", "Building indexes", "Done"), stages);
+
+        ProgressMonitor cancelled = new ProgressMonitor() {
+            @Override
+            public void progress(String message, long done, long total) { }
+
+            @Override
+            public boolean isCancelled() {
+                return true;
+            }
+        };
+
+        try {
+            MetadataService.create(tmpPath.toString(), cancelled);
+            throw new Exception("Cancelled loading should raise exception");
+        } catch (CancellationException e) {
+            // pass test
+        }
+    }
+
     @Test
     public void testAnnotations() throws Exception {
         Model annotations = service.getAnnotations("Tim");
@@ -76,6 +193,99 @@ public class MetadataServiceTest {
         assert(!annotations.contains(rhm_resource, RDF.type));
     }
 
+    @Test
+    public void testImport() throws Exception {
+        Files.createDirectories(tmpPath);
+        Path file = tmpPath.resolve("import.nt");
+
+        Model data = ModelFactory.createDefaultModel();
+        for (int i = 0; i < 25; i++) {
+            data.add(data.createResource("http://example.org/res/" + i), RDFS.label, "resource " + i);
+        }
+        try (OutputStream out = Files.newOutputStream(file)) {
+            RDFDataMgr.write(out, data, Lang.NTRIPLES);
+        }
+
+        List<Long> progress = new ArrayList<>();
+        service.importMetadata(file.toString(), (msg, done, total) -> progress.add(done));
+
+        assert(service.getAnnotations().containsAll(data));
+        assert(!progress.isEmpty());
+        assertEquals(service.change.size(), 0);
+    }
+
+    @Test
+    public void testImportOnModelThread() throws Exception {
+        Files.createDirectories(tmpPath);
+        Path file = tmpPath.resolve("import.ttl");
+
+        Model data = ModelFactory.createDefaultModel();
+        for (int i = 0; i < 25; i++) {
+            data.add(data.createResource("http://example.org/res/" + i), RDFS.label, "resource " + i);
+        }
+        try (OutputStream out = Files.newOutputStream(file)) {
+            RDFDataMgr.write(out, data, Lang.TURTLE);
+        }
+
+        ExecutorService owner = Executors.newSingleThreadExecutor();
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        Resource edited = service.getAnnotations().createResource("http://example.org/edited");
+
+        Executor modelThread = task -> owner.execute(() -> {
+            threads.add(Thread.currentThread());
+
+            // an edit made while the file is imported is tracked
+            if (service.change.size() == 0) {
+                service.getAnnotations().add(edited, RDFS.label, "edited");
+            }
+            task.run();
+        });
+
+        service.importMetadata(file.toString(), ProgressMonitor.NONE, modelThread);
+
+        // tracking is restored on the model thread after the last batch
+        boolean tracking = CompletableFuture.supplyAsync(service.change::isTracking, owner).join();
+        owner.shutdown();
+
+        assertEquals(1, threads.size());
+        assertFalse(threads.contains(Thread.currentThread()));
+        assert(service.getAnnotations().containsAll(data));
+        assertEquals(1, service.change.size());
+        assert(tracking);
+    }
+
+    @Test
+    public void testImportCancel() throws Exception {
+        Files.createDirectories(tmpPath);
+        Path file = tmpPath.resolve("import.nt");
+
+        Model data = ModelFactory.createDefaultModel();
+        data.add(data.createResource("http://example.org/res"), RDFS.label, "resource");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            RDFDataMgr.write(out, data, Lang.NTRIPLES);
+        }
+
+        ProgressMonitor cancelled = new ProgressMonitor() {
+            @Override
+            public void progress(String message, long done, long total) { }
+
+            @Override
+            public boolean isCancelled() {
+                return true;
+            }
+        };
+
+        try {
+            service.importMetadata(file.toString(), cancelled);
+            throw new Exception("Cancelled import should raise exception");
+        } catch (CancellationException e) {
+            // pass test
+        }
+
+        assert(!service.getAnnotations().containsAny(data));
+        assert(service.change.isTracking());
+    }
+
     @Test
     public void testReasoner() throws Exception {
         Reasoner r = service.getReasoner();
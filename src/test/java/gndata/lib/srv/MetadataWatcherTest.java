@@ -0,0 +1,126 @@
+package gndata.lib.srv;
+
+import java.io.OutputStream;
+import java.nio.file.*;
+
+import static org.junit.Assert.*;
+
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.vocabulary.*;
+import gndata.lib.util.FakeRDFModel;
+import org.apache.commons.io.FileUtils;
+import org.apache.jena.riot.*;
+import org.junit.*;
+
+/**
+ * Tests for the detection of external changes of metadata files.
+ */
+public class MetadataWatcherTest {
+
+    private static final Path tmpPath = Paths.get(System.getProperty("java.io.tmpdir"), "test-watcher");
+    private static final String ex = "http://example.org/watcher#";
+
+    private MetadataService service;
+    private MetadataWatcher watcher;
+    private MetadataFilesManager metaFiles;
+
+    @Before
+    public void setUp() throws Exception {
+        metaFiles = new MetadataFilesManager(tmpPath.toString());
+        service = MetadataService.create(tmpPath.toString());
+        watcher = new MetadataWatcher(tmpPath.toString(), service, Runnable::run);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        watcher.close();
+        service.close();
+
+        if (Files.exists(tmpPath)) {
+            FileUtils.deleteDirectory(tmpPath.toFile());
+        }
+    }
+
+    /**
+     * Blank nodes differ after each parse, only named resources can be compared.
+     */
+    private Model fakeAnnotations() {
+        Model m = ModelFactory.createDefaultModel();
+        for (Statement st : FakeRDFModel.getFakeAnnotations().listStatements().toList()) {
+            if (!st.getSubject().isAnon() && !st.getObject().isAnon()) {
+                m.add(st);
+            }
+        }
+        return m;
+    }
+
+    private void writeExternal(Path file, Model m) throws Exception {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            RDFDataMgr.write(out, m, RDFFormat.RDFXML);
+        }
+    }
+
+    @Test
+    public void testReloadAnnotations() throws Exception {
+        Model annotations = service.getAnnotations();
+
+        // an edit in the editor, not yet saved
+        Resource tbl = annotations.createResource(FakeRDFModel.tbl);
+        annotations.add(tbl, RDFS.label, "TBL");
+
+        Model external = fakeAnnotations();
+        writeExternal(metaFiles.annotationsPath(), external);
+
+        watcher.reloadAnnotations().get();
+
+        assertTrue(annotations.containsAll(external));
+        assertTrue(annotations.contains(tbl, RDFS.label, "TBL"));
+
+        // only the difference to the previous file content is applied
+        Resource rhm = external.getResource(FakeRDFModel.rhm);
+        external.removeAll(rhm, null, null);
+        writeExternal(metaFiles.annotationsPath(), external);
+
+        long before = service.change.size();
+        watcher.reloadAnnotations().get();
+
+        assertFalse(annotations.contains(rhm, null));
+        assertTrue(annotations.containsAll(external));
+        assertEquals(before + 1, service.change.size());
+
+        // an unchanged file is not parsed again
+        watcher.reloadAnnotations().get();
+        assertEquals(before + 1, service.change.size());
+    }
+
+    @Test
+    public void testReloadSchemas() throws Exception {
+        Model extra = ModelFactory.createDefaultModel();
+        Resource thing = extra.createResource(ex + "Thing", OWL.Class);
+        Resource special = extra.createResource(ex + "SpecialThing", OWL.Class);
+        extra.add(special, RDFS.subClassOf, thing);
+
+        writeExternal(metaFiles.getSchemasFolderPath().resolve("extra.owl"), extra);
+
+        watcher.reloadSchemas().get();
+
+        assertTrue(service.getSchema().contains(special, RDFS.subClassOf, thing));
+        assertTrue(service.getSchema().contains(special, RDFS.subClassOf, special));
+        assertTrue(service.getSchema().contains(special, RDF.type, RDFS.Class));
+    }
+
+    @Test
+    public void testWatch() throws Exception {
+        watcher.start();
+
+        Model external = fakeAnnotations();
+        writeExternal(metaFiles.annotationsPath(), external);
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!service.getAnnotations().containsAll(external) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+
+        assertTrue(service.getAnnotations().containsAll(external));
+    }
+}
@@ -0,0 +1,87 @@
+package gndata.lib.srv;
+
+import static org.junit.Assert.*;
+
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.vocabulary.*;
+import org.junit.*;
+
+/**
+ * Tests for the display name cache.
+ */
+public class NameCacheTest {
+
+    private static final String ex = "http://example.org/names#";
+
+    private Model model;
+    private Resource item;
+    private NameCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        model = ModelFactory.createDefaultModel();
+        item = model.createResource(ex + "item1234567890");
+        item.addProperty(RDF.type, model.createResource(ex + "Sample"));
+
+        cache = NameCache.forModel(model);
+    }
+
+    @Test
+    public void testShared() throws Exception {
+        assertNotNull(cache);
+        assertSame(cache, NameCache.forModel(model));
+        assertSame(cache, NameCache.forModel(ModelFactory.createModelForGraph(model.getGraph())));
+        assertNotSame(cache, NameCache.forModel(ModelFactory.createDefaultModel()));
+
+        assertNull(NameCache.forModel(null));
+        assertNull(NameCache.forModel(ModelFactory.createRDFSModel(model)));
+    }
+
+    @Test
+    public void testCached() throws Exception {
+        ResourceAdapter adapter = new ResourceAdapter(item);
+
+        assertEquals("Sample: item123", adapter.toNameString());
+        assertEquals("Sample: item123", new ResourceAdapter(item).toNameString());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+
+        // unrelated statements keep the name
+        item.addProperty(RDFS.comment, "a comment");
+        model.add(model.createResource(ex + "other"), RDFS.label, "other");
+        assertEquals("Sample: item123", adapter.toNameString());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        ResourceAdapter adapter = new ResourceAdapter(item);
+        assertEquals("Sample: item123", adapter.toNameString());
+
+        adapter.updateLabel("first");
+        assertEquals("first", adapter.toNameString());
+
+        adapter.updateLabel("second");
+        assertEquals("second", adapter.toNameString());
+
+        item.removeAll(RDFS.label);
+        assertEquals("Sample: item123", adapter.toNameString());
+
+        item.addProperty(RDF.type, OWL.Class);
+        assertEquals("item1234567890", adapter.toNameString());
+    }
+
+    @Test
+    public void testChangeWhileComputing() throws Exception {
+        String name = cache.get(item, r -> {
+            // a label added while the name is computed makes the name outdated
+            r.addProperty(RDFS.label, "labelled");
+            return "outdated";
+        });
+
+        assertEquals("outdated", name);
+        assertEquals(0, cache.size());
+        assertEquals("labelled", new ResourceAdapter(item).toNameString());
+        assertEquals(1, cache.size());
+    }
+}
@@ -2,8 +2,10 @@ package gndata.lib.srv;
 
 import java.util.*;
 
+import com.hp.hpl.jena.graph.*;
 import com.hp.hpl.jena.ontology.*;
 import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.vocabulary.*;
 import gndata.lib.util.*;
 import org.apache.commons.lang3.tuple.Pair;
 import org.junit.*;
@@ -97,6 +99,27 @@ public class ResourceAdapterTest {
         assert timRA.getResources().stream().map(Pair::getValue).filter(ra -> ra.equals(robertRA)).count() > 0;
     }
 
+    @Test
+    public void testGetResourceNodes() throws Exception {
+        List<Pair<Property, ResourceAdapter>> all = new ArrayList<>(timRA.getResources());
+        assert timRA.countResources() == all.size();
+        assert timRA.getResourceNodes().size() == all.size();
+
+        Model locked = ModelFactory.createModelForGraph(new LockingGraph(Factory.createGraphMem()));
+        Resource cls = locked.createResource(foaf + "Person").addProperty(RDF.type, OWL.Class);
+        for (int i = 0; i < 10; i++) {
+            locked.createResource(foaf + "person" + i).addProperty(RDF.type, cls);
+        }
+        ResourceAdapter clsRA = new ResourceAdapter(cls);
+
+        all = new ArrayList<>(clsRA.getResources());
+        assert clsRA.countResources() == 10;
+
+        List<Node> nodes = clsRA.getResourceNodes();
+        assert nodes.size() == all.size();
+        assert nodes.get(3).equals(all.get(3).getValue().getResource().asNode());
+    }
+
     @Test
     public void testAvailableToAdd() throws Exception {
         ObjectProperty knows = ontology.getObjectProperty(foaf + "knows");
@@ -0,0 +1,115 @@
+package gndata.lib.util;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+import com.hp.hpl.jena.graph.*;
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.vocabulary.*;
+import org.junit.*;
+
+/**
+ * Tests for the index of links between resources.
+ */
+public class AdjacencyIndexTest {
+
+    private static final String ex = "http://example.org/links#";
+
+    private Model model;
+    private Resource hub;
+    private Property knows;
+    private Property likes;
+
+    @Before
+    public void setUp() throws Exception {
+        model = ModelFactory.createDefaultModel();
+        hub = model.createResource(ex + "m");
+        knows = model.createProperty(ex + "knows");
+        likes = model.createProperty(ex + "likes");
+
+        hub.addProperty(knows, model.createResource(ex + "b"));
+        hub.addProperty(likes, model.createResource(ex + "a"));
+        model.createResource(ex + "z").addProperty(knows, hub);
+        model.createResource(ex + "c").addProperty(likes, hub);
+
+        // neither literals, types nor blank nodes are links
+        hub.addProperty(RDFS.label, "hub");
+        hub.addProperty(RDF.type, model.createResource(ex + "Hub"));
+        hub.addProperty(knows, model.createResource());
+        model.createResource().addProperty(knows, hub);
+    }
+
+    private static List<String> names(List<Triple> links, Node node) {
+        List<String> names = new ArrayList<>();
+        for (Triple t : links) {
+            Node other = t.getSubject().equals(node) ? t.getObject() : t.getSubject();
+            names.add(other.getLocalName());
+        }
+        return names;
+    }
+
+    @Test
+    public void testLinks() throws Exception {
+        AdjacencyIndex index = AdjacencyIndex.forModel(model);
+        Node node = hub.asNode();
+
+        assertSame(index, AdjacencyIndex.forModel(ModelFactory.createModelForGraph(model.getGraph())));
+        assertNull(AdjacencyIndex.forModel(ModelFactory.createRDFSModel(model)));
+
+        // only graphs held in memory are indexed
+        assertNotNull(AdjacencyIndex.forModel(
+                ModelFactory.createModelForGraph(new LockingGraph(Factory.createGraphMem()))));
+        assertNull(AdjacencyIndex.forModel(ModelFactory.createModelForGraph(new CompactGraph())));
+
+        assertEquals(Arrays.asList("b", "a"), names(index.getForward(node), node));
+        assertEquals(Arrays.asList("c", "z"), names(index.getReverse(node), node));
+
+        // sorted by subject, predicate and object
+        assertEquals(Arrays.asList("c", "b", "a", "z"), names(index.getLinks(node), node));
+        assertEquals(4, index.degree(node));
+    }
+
+    @Test
+    public void testUpdates() throws Exception {
+        AdjacencyIndex index = AdjacencyIndex.forModel(model);
+        Node node = hub.asNode();
+
+        model.createResource(ex + "d").addProperty(knows, hub);
+        hub.addProperty(knows, model.createResource(ex + "e"));
+        assertEquals(Arrays.asList("c", "d", "b", "e", "a", "z"), names(index.getLinks(node), node));
+
+        model.remove(hub, knows, model.createResource(ex + "b"));
+        // removing a missing statement changes nothing
+        model.remove(hub, knows, model.createResource(ex + "x"));
+        assertEquals(Arrays.asList("c", "d", "e", "a", "z"), names(index.getLinks(node), node));
+
+        model.removeAll(null, likes, null);
+        assertEquals(Arrays.asList("d", "e", "z"), names(index.getLinks(node), node));
+        assertTrue(index.getLinks(model.createResource(ex + "c").asNode()).isEmpty());
+
+        model.removeAll();
+        assertEquals(0, index.degree(node));
+    }
+
+    @Test
+    public void testSameAsScan() throws Exception {
+        Model fake = FakeRDFModel.getFakeAnnotations();
+        AdjacencyIndex index = AdjacencyIndex.forModel(fake);
+
+        fake.listSubjects().forEachRemaining(r -> {
+            if (r.isURIResource()) {
+                List<Triple> expected = new ArrayList<>();
+                fake.listStatements(r, null, (RDFNode) null).andThen(fake.listStatements(null, null, r))
+                        .forEachRemaining(s -> {
+                            if (AdjacencyIndex.isLink(s.asTriple())) {
+                                expected.add(s.asTriple());
+                            }
+                        });
+                expected.sort(AdjacencyIndex.ORDER);
+
+                assertEquals(expected, index.getLinks(r.asNode()));
+            }
+        });
+    }
+}
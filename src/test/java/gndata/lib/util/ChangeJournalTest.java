@@ -0,0 +1,171 @@
+package gndata.lib.util;
+
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.vocabulary.RDFS;
+import org.apache.commons.io.FileUtils;
+import org.apache.jena.riot.*;
+import org.junit.*;
+
+/**
+ * Tests for the change journal.
+ */
+public class ChangeJournalTest {
+
+    private static final Path tmpPath = Paths.get(System.getProperty("java.io.tmpdir"), "test-journal");
+
+    private Path basePath;
+    private Path journalPath;
+
+    @Before
+    public void setUp() throws Exception {
+        Files.createDirectories(tmpPath);
+
+        basePath = tmpPath.resolve("metadata.rdf");
+        journalPath = tmpPath.resolve("metadata.journal");
+
+        try (OutputStream out = Files.newOutputStream(basePath)) {
+            RDFDataMgr.write(out, FakeRDFModel.getFakeAnnotations(), RDFFormat.RDFXML);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (Files.exists(tmpPath)) {
+            FileUtils.deleteDirectory(tmpPath.toFile());
+        }
+    }
+
+    private void edit(Model model) {
+        Resource foo = model.createResource("http://example.org/people#foo");
+        model.add(foo, RDFS.label, "Foo");
+
+        Resource rhm = model.getResource(FakeRDFModel.rhm);
+        model.remove(model.listStatements(rhm, null, (RDFNode) null));
+
+        model.add(model.getResource(FakeRDFModel.tbl), RDFS.label, "TBL");
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        Model model = RDFDataMgr.loadModel(basePath.toString());
+        ChangeJournal journal = new ChangeJournal(journalPath, basePath, null, ChangeJournal.DEFAULT_THRESHOLD);
+        journal.attach(model);
+
+        edit(model);
+        journal.close();
+
+        assertTrue(Files.size(journalPath) > 0);
+
+        Model reopened = RDFDataMgr.loadModel(basePath.toString());
+        assertFalse(reopened.isIsomorphicWith(model));
+
+        new ChangeJournal(journalPath, basePath, null, ChangeJournal.DEFAULT_THRESHOLD).replay(reopened);
+        assertTrue(reopened.isIsomorphicWith(model));
+    }
+
+    @Test
+    public void testIncompleteBlock() throws Exception {
+        Model model = RDFDataMgr.loadModel(basePath.toString());
+        ChangeJournal journal = new ChangeJournal(journalPath, basePath, null, ChangeJournal.DEFAULT_THRESHOLD);
+        journal.attach(model);
+
+        edit(model);
+        journal.close();
+
+        long committed = Files.size(journalPath);
+        Files.write(journalPath, "<http://example.org/a> <http://exa".getBytes(), StandardOpenOption.APPEND);
+
+        Model reopened = RDFDataMgr.loadModel(basePath.toString());
+        new ChangeJournal(journalPath, basePath, null, ChangeJournal.DEFAULT_THRESHOLD).replay(reopened);
+
+        assertTrue(reopened.isIsomorphicWith(model));
+        assertEquals(committed, Files.size(journalPath));
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+        Path snapshotPath = tmpPath.resolve("metadata.rdft");
+        ModelSnapshot snapshot = new ModelSnapshot(snapshotPath);
+
+        Model model = RDFDataMgr.loadModel(basePath.toString());
+        ChangeJournal journal = new ChangeJournal(journalPath, basePath, snapshot, ChangeJournal.DEFAULT_THRESHOLD);
+        journal.attach(model);
+
+        edit(model);
+        journal.compact().get();
+
+        Model after = ModelFactory.createDefaultModel().add(model);
+        model.add(model.getResource(FakeRDFModel.tbl), RDFS.comment, "after compaction");
+        journal.compact().get();
+        journal.close();
+
+        assertTrue(RDFDataMgr.loadModel(basePath.toString()).isIsomorphicWith(model));
+        assertTrue(snapshot.read().isIsomorphicWith(model));
+        assertFalse(after.isIsomorphicWith(model));
+        assertEquals(0, Files.size(journalPath));
+
+        Model reopened = snapshot.load(basePath);
+        new ChangeJournal(journalPath, basePath, null, ChangeJournal.DEFAULT_THRESHOLD).replay(reopened);
+        assertTrue(reopened.isIsomorphicWith(model));
+    }
+
+    @Test
+    public void testThreshold() throws Exception {
+        Model model = RDFDataMgr.loadModel(basePath.toString());
+        ChangeJournal journal = new ChangeJournal(journalPath, basePath, null, 1);
+        journal.attach(model);
+
+        model.add(model.getResource(FakeRDFModel.tbl), RDFS.label, "TBL");
+        journal.compact().get();
+        journal.close();
+
+        assertTrue(RDFDataMgr.loadModel(basePath.toString()).isIsomorphicWith(model));
+    }
+
+    @Test
+    public void testSuspend() throws Exception {
+        Model model = RDFDataMgr.loadModel(basePath.toString());
+        ChangeJournal journal = new ChangeJournal(journalPath, basePath, null, ChangeJournal.DEFAULT_THRESHOLD);
+        journal.attach(model);
+
+        model.add(model.getResource(FakeRDFModel.tbl), RDFS.label, "TBL");
+        long recorded = Files.size(journalPath);
+
+        journal.suspend();
+        edit(model);
+        assertEquals(recorded, Files.size(journalPath));
+
+        journal.resume().get();
+        assertEquals(0, Files.size(journalPath));
+        assertTrue(RDFDataMgr.loadModel(basePath.toString()).isIsomorphicWith(model));
+
+        model.add(model.getResource(FakeRDFModel.tbl), RDFS.comment, "after import");
+        assertTrue(Files.size(journalPath) > 0);
+        journal.close();
+    }
+
+    @Test
+    public void testCheckpointWhileCompacting() throws Exception {
+        // the model is changed while the writer thread saves it
+        Model model = ModelFactory.createModelForGraph(
+                new LockingGraph(RDFDataMgr.loadModel(basePath.toString()).getGraph()));
+        ChangeJournal journal = new ChangeJournal(journalPath, basePath, null, ChangeJournal.DEFAULT_THRESHOLD);
+        journal.attach(model);
+
+        edit(model);
+        Future<?> compaction = journal.compact();
+        model.add(model.getResource(FakeRDFModel.tbl), RDFS.comment, "during compaction");
+        journal.checkpoint().get();
+        compaction.get();
+
+        assertEquals(0, Files.size(journalPath));
+        assertTrue(RDFDataMgr.loadModel(basePath.toString()).isIsomorphicWith(model));
+        journal.close();
+    }
+}
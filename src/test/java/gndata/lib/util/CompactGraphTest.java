@@ -0,0 +1,194 @@
+package gndata.lib.util;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+import com.hp.hpl.jena.datatypes.TypeMapper;
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.graph.*;
+import com.hp.hpl.jena.rdf.listeners.StatementListener;
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.vocabulary.*;
+import org.junit.*;
+
+/**
+ * Tests for the compact graph.
+ */
+public class CompactGraphTest {
+
+    private static final String ex = "http://example.org/compact#";
+
+    private Graph reference;
+    private CompactGraph graph;
+    private Random random;
+
+    private Node node(int i) {
+        return NodeFactory.createURI(ex + "n" + i);
+    }
+
+    private Node predicate(int i) {
+        return NodeFactory.createURI(ex + "p" + i);
+    }
+
+    private Triple randomTriple() {
+        Node o = random.nextInt(4) == 0
+                ? NodeFactory.createLiteral("value " + random.nextInt(50))
+                : node(random.nextInt(200));
+
+        return Triple.create(node(random.nextInt(200)), predicate(random.nextInt(8)), o);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        random = new Random(42);
+        reference = Factory.createGraphMem();
+
+        for (int i = 0; i < 5000; i++) {
+            reference.add(randomTriple());
+        }
+
+        graph = CompactGraph.copyOf(reference);
+    }
+
+    private void assertSameFind(Node s, Node p, Node o) {
+        Set<Triple> expected = reference.find(s, p, o).toSet();
+        List<Triple> found = graph.find(s, p, o).toList();
+
+        assertEquals(expected.size(), found.size());
+        assertEquals(expected, new HashSet<>(found));
+    }
+
+    private void assertSameGraph() {
+        assertEquals(reference.size(), graph.size());
+
+        for (int i = 0; i < 50; i++) {
+            Triple t = randomTriple();
+            Node s = t.getSubject();
+            Node p = t.getPredicate();
+            Node o = t.getObject();
+
+            assertEquals(reference.contains(t), graph.contains(t));
+
+            assertSameFind(s, p, o);
+            assertSameFind(s, p, Node.ANY);
+            assertSameFind(s, Node.ANY, o);
+            assertSameFind(s, Node.ANY, Node.ANY);
+            assertSameFind(Node.ANY, p, o);
+            assertSameFind(Node.ANY, p, Node.ANY);
+            assertSameFind(Node.ANY, Node.ANY, o);
+        }
+
+        assertSameFind(Node.ANY, Node.ANY, Node.ANY);
+    }
+
+    @Test
+    public void testFind() throws Exception {
+        assertSameGraph();
+        assertEquals(0, graph.getDeltaSize());
+
+        // unknown nodes match nothing
+        assertFalse(graph.find(node(1000), Node.ANY, Node.ANY).hasNext());
+        assertFalse(graph.contains(node(1000), predicate(0), node(0)));
+    }
+
+    @Test
+    public void testChanges() throws Exception {
+        for (int i = 0; i < 2000; i++) {
+            Triple t = randomTriple();
+
+            if (random.nextBoolean()) {
+                reference.add(t);
+                graph.add(t);
+            } else {
+                reference.delete(t);
+                graph.delete(t);
+            }
+        }
+        assertTrue(graph.getDeltaSize() > 0);
+        assertSameGraph();
+
+        graph.compact();
+        assertEquals(0, graph.getDeltaSize());
+        assertSameGraph();
+    }
+
+    @Test
+    public void testModel() throws Exception {
+        Model model = ModelFactory.createModelForGraph(new CompactGraph());
+        Resource r = model.createResource(ex + "r");
+
+        List<Statement> added = new ArrayList<>();
+        model.register(new StatementListener() {
+            @Override
+            public void addedStatement(Statement s) {
+                added.add(s);
+            }
+        });
+
+        r.addProperty(RDF.type, OWL.Thing);
+        r.addProperty(RDFS.label, "r");
+        assertEquals(2, model.size());
+        assertEquals(2, added.size());
+        assertEquals("r", r.getProperty(RDFS.label).getString());
+
+        model.removeAll(r, null, null);
+        assertTrue(model.isEmpty());
+
+        Model copy = ModelFactory.createModelForGraph(CompactGraph.copyOf(FakeRDFModel.getFakeAnnotations().getGraph()));
+        assertTrue(copy.isIsomorphicWith(FakeRDFModel.getFakeAnnotations()));
+        assertEquals(FakeRDFModel.getFakeAnnotations().getNsPrefixMap(), copy.getNsPrefixMap());
+    }
+
+    @Test
+    public void testBuilder() throws Exception {
+        CompactGraph.Builder builder = new CompactGraph.Builder();
+        builder.prefix("ex", ex);
+
+        Triple t = Triple.create(node(1), predicate(1), node(2));
+        builder.triple(t);
+        builder.triple(t);
+        builder.triple(Triple.create(node(2), predicate(1), node(1)));
+
+        CompactGraph built = builder.build();
+        assertEquals(2, built.size());
+        assertEquals(3, built.getNodeCount());
+        assertEquals(ex, built.getPrefixMapping().getNsPrefixURI("ex"));
+    }
+
+    @Test
+    public void testTerms() throws Exception {
+        StringBuilder longType = new StringBuilder(ex);
+        for (int i = 0; i < 200; i++) {
+            longType.append('t');
+        }
+
+        Node subject = NodeFactory.createAnon();
+        List<Node> objects = Arrays.asList(
+                NodeFactory.createURI(ex + "\u00e4\u4e2d"),
+                NodeFactory.createAnon(),
+                NodeFactory.createLiteral(""),
+                NodeFactory.createLiteral("plain \u00fc"),
+                NodeFactory.createLiteral("chat", "fr", false),
+                NodeFactory.createLiteral("chat", "en", false),
+                NodeFactory.createLiteral("42", XSDDatatype.XSDinteger),
+                NodeFactory.createLiteral("42", XSDDatatype.XSDstring),
+                NodeFactory.createLiteral("x", TypeMapper.getInstance().getSafeTypeByName(longType.toString())));
+
+        Graph terms = Factory.createGraphMem();
+        for (Node o : objects) {
+            terms.add(Triple.create(subject, predicate(0), o));
+        }
+        CompactGraph compact = CompactGraph.copyOf(terms);
+
+        // the nodes created from the stored terms equal the original nodes
+        assertEquals(objects.size(), compact.size());
+        assertEquals(objects.size() + 2, compact.getNodeCount());
+        assertEquals(terms.find(Node.ANY, Node.ANY, Node.ANY).toSet(),
+                compact.find(Node.ANY, Node.ANY, Node.ANY).toSet());
+        for (Node o : objects) {
+            assertTrue(compact.contains(subject, predicate(0), o));
+        }
+        assertFalse(compact.contains(subject, predicate(0), NodeFactory.createLiteral("chat", "de", false)));
+    }
+}
@@ -0,0 +1,46 @@
+package gndata.lib.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+/**
+ * Tests for the sorted int array set.
+ */
+public class IntSetTest {
+
+    private static IntSet of(int... values) {
+        IntSet set = new IntSet();
+        for (int v : values) {
+            set.add(v);
+        }
+        return set;
+    }
+
+    @Test
+    public void testAddRemove() throws Exception {
+        IntSet set = of(5, 1, 9, 3);
+        assertArrayEquals(new int[] {1, 3, 5, 9}, set.toArray());
+
+        assertFalse(set.add(3));
+        assertTrue(set.contains(9));
+        assertFalse(set.contains(4));
+
+        assertTrue(set.remove(1));
+        assertFalse(set.remove(1));
+        assertArrayEquals(new int[] {3, 5, 9}, set.toArray());
+        assertEquals(3, set.size());
+    }
+
+    @Test
+    public void testSetOperations() throws Exception {
+        IntSet union = of(1, 4, 6);
+        union.addAll(of(2, 4, 8));
+        assertEquals(of(1, 2, 4, 6, 8), union);
+
+        IntSet intersection = new IntSet(union);
+        intersection.retainAll(of(0, 4, 8, 9));
+        assertEquals(of(4, 8), intersection);
+        assertEquals(5, union.size());
+    }
+}
@@ -0,0 +1,137 @@
+package gndata.lib.util;
+
+import java.util.*;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.Assert.*;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.vocabulary.*;
+import org.junit.*;
+
+/**
+ * Tests for the inverted index of literal values.
+ */
+public class LiteralIndexTest {
+
+    private static final String ex = "http://example.org/index#";
+
+    private Model model;
+    private LiteralIndex index;
+    private Resource trial, cell;
+
+    @Before
+    public void setUp() throws Exception {
+        model = ModelFactory.createDefaultModel();
+
+        trial = model.createResource(ex + "trial");
+        trial.addProperty(RDF.type, model.createResource(ex + "Trial"));
+        trial.addProperty(RDFS.label, "Trial_12 of Recording");
+        trial.addProperty(RDFS.comment, "first recording");
+
+        cell = model.createResource(ex + "cell");
+        cell.addProperty(RDFS.label, "Pyramidal cell");
+
+        index = new LiteralIndex(model);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        index.close();
+    }
+
+    private static Set<Node> nodes(Resource... resources) {
+        Set<Node> nodes = new HashSet<>();
+        for (Resource r : resources) {
+            nodes.add(r.asNode());
+        }
+        return nodes;
+    }
+
+    @Test
+    public void testTokenize() throws Exception {
+        assertEquals(Arrays.asList("trial", "12", "of", "recording"),
+                LiteralIndex.tokenize("  Trial_12 of Recording."));
+        assertTrue(LiteralIndex.tokenize("--").isEmpty());
+
+        assertTrue(LiteralIndex.matches("Trial_12 of Recording", "record"));
+        assertFalse(LiteralIndex.matches("Trial_12 of Recording", "rial"));
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        assertEquals(nodes(trial), index.lookup("RECORDING"));
+        assertEquals(nodes(trial), index.lookupPrefix("rec"));
+        assertTrue(index.search("").isEmpty());
+        assertTrue(index.search(" -- ").isEmpty());
+        assertTrue(index.lookup("rec").isEmpty());
+
+        // resources are not indexed
+        assertTrue(index.lookup("index").isEmpty());
+
+        assertEquals(nodes(trial), index.search("trial_12 rec"));
+        assertEquals(nodes(cell), index.search("'pyramidal' CE"));
+        assertTrue(index.search("pyramidal recording").isEmpty());
+
+        // parts of words are only found as substrings
+        assertTrue(index.search("ial_1").isEmpty());
+        assertEquals(nodes(trial), index.searchSubstring("ial_1"));
+        assertEquals(nodes(trial, cell), index.searchSubstring("r"));
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        Resource neuron = model.createResource(ex + "neuron");
+        neuron.addProperty(RDFS.label, "pyramidal neuron");
+
+        for (String text : Arrays.asList("trial_12 rec", "'pyramidal' CE", "pyramidal", "first trial", "ab", "")) {
+            assertEquals(index.search(text), LiteralIndex.search(model.getGraph(), text));
+            assertEquals(index.searchSubstring(text), LiteralIndex.searchSubstring(model.getGraph(), text));
+
+            Set<Node> both = index.search(text);
+            both.addAll(index.searchSubstring(text.trim()));
+            assertEquals(both, LiteralIndex.searchAll(model.getGraph(), text, () -> false));
+        }
+    }
+
+    @Test(expected = CancellationException.class)
+    public void testScanCancelled() throws Exception {
+        LiteralIndex.searchAll(model.getGraph(), "trial", () -> true);
+    }
+
+    @Test
+    public void testChanges() throws Exception {
+        Resource neuron = model.createResource(ex + "neuron");
+        neuron.addProperty(RDFS.label, "pyramidal neuron");
+        assertEquals(nodes(cell, neuron), index.lookup("pyramidal"));
+
+        // the word is still in the comment of the trial
+        trial.removeAll(RDFS.label);
+        assertEquals(nodes(trial), index.lookup("recording"));
+        assertTrue(index.lookup("12").isEmpty());
+
+        model.remove(trial, RDFS.comment, model.createLiteral("first recording"));
+        assertTrue(index.lookup("recording").isEmpty());
+        assertTrue(index.searchSubstring("cord").isEmpty());
+        assertEquals(nodes(cell, neuron), index.searchSubstring("amid"));
+
+        // removing a statement which is not in the model does not affect the index
+        model.remove(neuron, RDFS.label, model.createLiteral("unknown pyramidal"));
+        assertEquals(nodes(cell, neuron), index.lookup("pyramidal"));
+
+        // a literal used by two subjects stays until both are removed
+        neuron.addProperty(RDFS.comment, "Pyramidal cell");
+        cell.removeAll(RDFS.label);
+        assertEquals(nodes(neuron), index.lookup("cell"));
+
+        assertEquals(2, index.size());
+        model.removeAll();
+        assertEquals(0, index.size());
+        assertTrue(index.searchSubstring("pyr").isEmpty());
+
+        index.close();
+        cell.addProperty(RDFS.label, "pyramidal");
+        assertTrue(index.lookup("pyramidal").isEmpty());
+    }
+}
@@ -0,0 +1,113 @@
+package gndata.lib.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+import com.hp.hpl.jena.graph.Factory;
+import com.hp.hpl.jena.rdf.listeners.StatementListener;
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.vocabulary.*;
+import org.junit.*;
+
+/**
+ * Tests for the graph guarding its changes with a lock.
+ */
+public class LockingGraphTest {
+
+    private static final String ex = "http://example.org/locking#";
+
+    private LockingGraph graph;
+    private Model model;
+    private QueryHelper helper;
+
+    @Before
+    public void setUp() throws Exception {
+        graph = new LockingGraph(Factory.createGraphMem());
+        model = ModelFactory.createModelForGraph(graph);
+        for (int i = 0; i < 10; i++) {
+            model.createResource(ex + i).addProperty(RDFS.label, "item " + i);
+        }
+
+        helper = new QueryHelper(model);
+    }
+
+    @Test
+    public void testGeneration() throws Exception {
+        long generation = helper.getGeneration();
+        assertTrue(generation > 0);
+
+        model.removeAll(model.getResource(ex + 0), null, null);
+        assertTrue(helper.getGeneration() > generation);
+
+        generation = helper.getGeneration();
+        model.listStatements(model.getResource(ex + 1), null, (RDFNode) null).removeNext();
+        assertTrue(helper.getGeneration() > generation);
+        assertEquals(8, model.size());
+
+        assertEquals(0, new QueryHelper(ModelFactory.createDefaultModel()).getGeneration());
+    }
+
+    @Test
+    public void testRemovedStatements() throws Exception {
+        List<Statement> removed = new ArrayList<>();
+        model.register(new StatementListener() {
+            @Override
+            public void removedStatement(Statement s) {
+                removed.add(s);
+            }
+        });
+
+        model.removeAll(null, RDFS.label, null);
+        assertEquals(10, removed.size());
+        assertTrue(model.isEmpty());
+    }
+
+    @Test
+    public void testReadBlocksChanges() throws Exception {
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> change = helper.read(() -> {
+                Future<?> f = writer.submit(() -> model.add(model.getResource(ex + 10), RDFS.label, "item 10"));
+
+                try {
+                    f.get(100, TimeUnit.MILLISECONDS);
+                    fail("The change should wait for the reader");
+                } catch (TimeoutException e) {
+                    // pass test
+                } catch (InterruptedException | ExecutionException e) {
+                    throw new RuntimeException(e);
+                }
+
+                return f;
+            });
+
+            change.get(5, TimeUnit.SECONDS);
+            assertEquals(11, model.size());
+        } finally {
+            writer.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testPagesAcrossChanges() throws Exception {
+        ResultPager pager = new ResultPager(helper,
+                helper.compile(QueryHelper.stdPrefix + "\nSELECT ?s WHERE { ?s rdfs:label ?l } ORDER BY ?l"), 4, 8);
+        pager.add(helper.read(() -> {
+            try (QueryCursor cursor = helper.select(pager.getQuery())) {
+                return cursor.nextPage(100);
+            }
+        }));
+        assertEquals(4, pager.getPage(0).size());
+
+        // pages after a change are described from the changed model
+        model.removeAll(model.getResource(ex + 9), null, null);
+        List<Resource> last = pager.getPage(2);
+        assertEquals(2, last.size());
+        assertTrue(last.get(0).hasProperty(RDFS.label));
+        assertFalse(last.get(1).hasProperty(RDFS.label));
+
+        pager.close();
+    }
+}
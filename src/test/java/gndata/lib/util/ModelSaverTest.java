@@ -0,0 +1,82 @@
+package gndata.lib.util;
+
+import java.nio.file.*;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.vocabulary.RDFS;
+import org.apache.commons.io.FileUtils;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.*;
+
+/**
+ * Tests for the background model saver.
+ */
+public class ModelSaverTest {
+
+    private static final Path tmpPath = Paths.get(System.getProperty("java.io.tmpdir"), "test-saver");
+
+    private Path target;
+    private Model model;
+
+    @Before
+    public void setUp() throws Exception {
+        Files.createDirectories(tmpPath);
+
+        target = tmpPath.resolve("metadata.rdf");
+        model = FakeRDFModel.getFakeAnnotations();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (Files.exists(tmpPath)) {
+            FileUtils.deleteDirectory(tmpPath.toFile());
+        }
+    }
+
+    @Test
+    public void testSave() throws Exception {
+        ModelSnapshot snapshot = new ModelSnapshot(tmpPath.resolve("metadata.rdft"));
+        ModelSaver saver = new ModelSaver(model, target, snapshot);
+
+        saver.save().get();
+        saver.close();
+
+        assertTrue(RDFDataMgr.loadModel(target.toString()).isIsomorphicWith(model));
+        assertFalse(Files.exists(Paths.get(target.toString() + ".tmp")));
+        assertTrue(snapshot.isValid(Collections.singletonList(target)));
+        assertEquals(1, saver.getSaveCount());
+    }
+
+    @Test
+    public void testAutoSave() throws Exception {
+        // the model is changed while the writer thread saves it
+        model = ModelFactory.createModelForGraph(new LockingGraph(model.getGraph()));
+
+        ModelSaver saver = new ModelSaver(model, target, null);
+        saver.setAutoSave(true, 200);
+
+        Resource tbl = model.getResource(FakeRDFModel.tbl);
+        for (int i = 0; i < 50; i++) {
+            model.add(tbl, RDFS.comment, "comment " + i);
+        }
+
+        // all changes of the burst end up in one write
+        long deadline = System.currentTimeMillis() + 5000;
+        while (saver.getSaveCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        Thread.sleep(400);
+
+        assertEquals(1, saver.getSaveCount());
+        assertTrue(RDFDataMgr.loadModel(target.toString()).isIsomorphicWith(model));
+
+        model.add(tbl, RDFS.label, "TBL");
+        saver.close();
+
+        assertEquals(2, saver.getSaveCount());
+        assertTrue(RDFDataMgr.loadModel(target.toString()).isIsomorphicWith(model));
+    }
+}
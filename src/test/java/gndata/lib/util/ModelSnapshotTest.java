@@ -0,0 +1,80 @@
+package gndata.lib.util;
+
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import org.apache.commons.io.FileUtils;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+import org.junit.*;
+
+/**
+ * Tests for binary model snapshots.
+ */
+public class ModelSnapshotTest {
+
+    private static final Path tmpPath = Paths.get(System.getProperty("java.io.tmpdir"), "test-snapshot");
+
+    private Path source;
+    private ModelSnapshot snapshot;
+
+    @Before
+    public void setUp() throws Exception {
+        Files.createDirectories(tmpPath);
+
+        source = tmpPath.resolve("data.rdf");
+        try (OutputStream out = Files.newOutputStream(source)) {
+            RDFDataMgr.write(out, FakeRDFModel.getFakeAnnotations(), RDFFormat.RDFXML);
+        }
+
+        snapshot = new ModelSnapshot(tmpPath.resolve("data.rdft"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (Files.exists(tmpPath)) {
+            FileUtils.deleteDirectory(tmpPath.toFile());
+        }
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        List<Path> sources = Collections.singletonList(source);
+
+        assertFalse(snapshot.isValid(sources));
+
+        Model first = snapshot.load(source);
+
+        assertTrue(Files.exists(snapshot.getPath()));
+        assertTrue(snapshot.isValid(sources));
+
+        Model second = snapshot.read();
+
+        assertTrue(first.isIsomorphicWith(second));
+        assertEquals(first.getNsPrefixMap(), second.getNsPrefixMap());
+    }
+
+    @Test
+    public void testStale() throws Exception {
+        List<Path> sources = Collections.singletonList(source);
+        snapshot.load(source);
+
+        // touching the file keeps the content, the hash still matches
+        Files.setLastModifiedTime(source, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+        assertTrue(snapshot.isValid(sources));
+
+        Files.write(source, Arrays.asList(
+                "<?xml version=\"1.0\"?>",
+                "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"/>"));
+        assertFalse(snapshot.isValid(sources));
+
+        Model reloaded = snapshot.load(source);
+        assertTrue(reloaded.isEmpty());
+        assertTrue(snapshot.isValid(sources));
+    }
+}
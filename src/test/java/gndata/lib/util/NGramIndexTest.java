@@ -0,0 +1,66 @@
+package gndata.lib.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+/**
+ * Tests for the trigram substring index.
+ */
+public class NGramIndexTest {
+
+    private NGramIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        index = new NGramIndex();
+
+        index.put(0, "Trial_12 0xA3F0");
+        index.put(1, "trial_1", "ab");
+        index.put(2, "Recording trial");
+    }
+
+    private static IntSet ids(int... ids) {
+        IntSet set = new IntSet();
+        for (int id : ids) {
+            set.add(id);
+        }
+        return set;
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        assertEquals(ids(0), index.search("0xa3f"));
+        assertEquals(ids(0, 1), index.search("TRIAL_1"));
+        assertEquals(ids(0, 1, 2), index.search("rial"));
+        assertTrue(index.search("").isEmpty());
+
+        // all trigrams occur, but not as one substring
+        assertTrue(index.search("trial_12 0xa3f1").isEmpty());
+        assertTrue(index.search("trial_1ab").isEmpty());
+    }
+
+    @Test
+    public void testShortStrings() throws Exception {
+        assertEquals(ids(1), index.search("ab"));
+        assertEquals(ids(0, 1), index.search("1"));
+        assertEquals(ids(0), index.search("xa"));
+        assertTrue(index.search("z").isEmpty());
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        index.put(0, "neuron");
+        assertEquals(ids(1, 2), index.search("trial"));
+        assertEquals(ids(0), index.search("euro"));
+
+        index.remove(1);
+        index.remove(7);
+        assertEquals(ids(2), index.search("trial"));
+        assertTrue(index.search("ab").isEmpty());
+        assertEquals(2, index.size());
+
+        index.put(2);
+        assertEquals(1, index.size());
+    }
+}
@@ -0,0 +1,51 @@
+package gndata.lib.util;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+/**
+ * Tests for natural sort keys.
+ */
+public class NaturalSortKeyTest {
+
+    private static List<String> sort(String... names) {
+        return Arrays.stream(names)
+                .map(NaturalSortKey::new)
+                .sorted()
+                .map(NaturalSortKey::getName)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testNumbers() throws Exception {
+        assertEquals(Arrays.asList("Trial 1", "Trial 2", "Trial 10", "Trial 100"),
+                sort("Trial 10", "Trial 2", "Trial 100", "Trial 1"));
+
+        assertEquals(Arrays.asList("a1b2", "a1b10", "a2b1"), sort("a2b1", "a1b10", "a1b2"));
+
+        // numbers larger than a long
+        assertEquals(Arrays.asList("x 99999999999999999999", "x 100000000000000000000"),
+                sort("x 100000000000000000000", "x 99999999999999999999"));
+    }
+
+    @Test
+    public void testLeadingZeros() throws Exception {
+        assertEquals(Arrays.asList("Trial 001", "Trial 01", "Trial 1", "Trial 2", "Trial 010"),
+                sort("Trial 010", "Trial 1", "Trial 2", "Trial 01", "Trial 001"));
+    }
+
+    @Test
+    public void testText() throws Exception {
+        assertEquals(Arrays.asList("", "1", "a", "apple", "Banana", "cherry"),
+                sort("cherry", "Banana", "apple", "a", "", "1"));
+
+        NaturalSortKey key = new NaturalSortKey("Trial 2");
+        assertEquals(0, key.compareTo(new NaturalSortKey("Trial 2")));
+        assertEquals(key, new NaturalSortKey("Trial 2"));
+        assertEquals("Trial 2", key.toString());
+    }
+}
@@ -0,0 +1,122 @@
+package gndata.lib.util;
+
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.Assert.*;
+
+import com.hp.hpl.jena.query.*;
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.vocabulary.*;
+import org.apache.commons.io.FileUtils;
+import org.apache.jena.riot.*;
+import org.junit.*;
+
+/**
+ * Tests for the parallel import of line based RDF files.
+ */
+public class ParallelLineImporterTest {
+
+    private static final Path tmpPath = Paths.get(System.getProperty("java.io.tmpdir"), "test-line-import");
+
+    private Model data;
+
+    @Before
+    public void setUp() throws Exception {
+        Files.createDirectories(tmpPath);
+
+        // blank nodes referenced from many lines end up in different chunks
+        data = ModelFactory.createDefaultModel();
+        for (int i = 0; i < 200; i++) {
+            Resource r = data.createResource("http://example.org/res/" + i);
+            Resource b = data.createResource();
+            data.add(r, RDFS.label, "resource " + i);
+            data.add(r, RDFS.seeAlso, b);
+            data.add(b, RDFS.comment, "blank node " + i);
+            data.add(b, RDF.type, RDFS.Resource);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (Files.exists(tmpPath)) {
+            FileUtils.deleteDirectory(tmpPath.toFile());
+        }
+    }
+
+    private Path write(String name, Lang lang) throws Exception {
+        Path file = tmpPath.resolve(name);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            if (lang == Lang.NQUADS) {
+                RDFDataMgr.write(out, DatasetFactory.create(data), lang);
+            } else {
+                RDFDataMgr.write(out, data, lang);
+            }
+        }
+        return file;
+    }
+
+    @Test
+    public void testNTriples() throws Exception {
+        Path file = write("import.nt", Lang.NTRIPLES);
+
+        Model model = ModelFactory.createDefaultModel();
+        List<Long> progress = new ArrayList<>();
+        long count = new ParallelLineImporter(model, 512, (msg, done, total) -> progress.add(done))
+                .read(file, Lang.NTRIPLES);
+
+        assertEquals(data.size(), count);
+        assertTrue(model.isIsomorphicWith(data));
+        assertTrue(progress.size() > 1);
+        assertEquals(Files.size(file), (long) progress.get(progress.size() - 1));
+    }
+
+    @Test
+    public void testNQuads() throws Exception {
+        Path file = write("import.nq", Lang.NQUADS);
+
+        Model model = ModelFactory.createDefaultModel();
+        new ParallelLineImporter(model, 512, ProgressMonitor.NONE).read(file, Lang.NQUADS);
+
+        assertTrue(model.isIsomorphicWith(data));
+    }
+
+    @Test
+    public void testSeparateBlankNodes() throws Exception {
+        Path file = write("import.nt", Lang.NTRIPLES);
+
+        Model model = ModelFactory.createDefaultModel();
+        new ParallelLineImporter(model, 512, ProgressMonitor.NONE).read(file, Lang.NTRIPLES);
+        new ParallelLineImporter(model, 512, ProgressMonitor.NONE).read(file, Lang.NTRIPLES);
+
+        // the second import creates new blank nodes, named resources are merged
+        assertEquals(data.size() * 2 - 200, model.size());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        Path file = write("import.nt", Lang.NTRIPLES);
+
+        Model model = ModelFactory.createDefaultModel();
+        ProgressMonitor cancelled = new ProgressMonitor() {
+            @Override
+            public void progress(String message, long done, long total) { }
+
+            @Override
+            public boolean isCancelled() {
+                return true;
+            }
+        };
+
+        try {
+            new ParallelLineImporter(model, 512, cancelled).read(file, Lang.NTRIPLES);
+            throw new Exception("Cancelled import should raise exception");
+        } catch (CancellationException e) {
+            // pass test
+        }
+
+        assertTrue(model.isEmpty());
+    }
+}
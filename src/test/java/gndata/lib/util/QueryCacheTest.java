@@ -0,0 +1,118 @@
+package gndata.lib.util;
+
+import static org.junit.Assert.*;
+
+import com.hp.hpl.jena.query.*;
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.sparql.resultset.ResultSetCompare;
+import org.junit.*;
+
+/**
+ * Tests for the cache of compiled queries and their execution.
+ */
+public class QueryCacheTest {
+
+    private Model model;
+    private QueryHelper helper;
+
+    private static final String select = QueryHelper.stdPrefix + "\n" +
+            "SELECT ?s ?l WHERE { ?s rdfs:seeAlso ?o . OPTIONAL { ?s ?p ?l FILTER isLiteral(?l) } }";
+
+    @Before
+    public void setUp() throws Exception {
+        model = FakeRDFModel.getFakeAnnotations();
+        helper = new QueryHelper(model);
+    }
+
+    @Test
+    public void testNormalise() throws Exception {
+        assertEquals(
+                QueryCache.normalise("SELECT ?s\n  WHERE {  ?s ?p 'a  b' }"),
+                QueryCache.normalise("  SELECT ?s WHERE {\t?s ?p 'a  b'\n}\n"));
+        assertNotEquals(
+                QueryCache.normalise("SELECT ?s WHERE { ?s ?p 'a  b' }"),
+                QueryCache.normalise("SELECT ?s WHERE { ?s ?p 'a b' }"));
+        assertEquals(
+                "SELECT ?s # comment  <a\nWHERE { ?s ?p <urn:a#b> }",
+                QueryCache.normalise("SELECT ?s  # comment  <a\n  WHERE { ?s ?p <urn:a#b> }"));
+    }
+
+    @Test
+    public void testNormaliseOperators() throws Exception {
+        assertEquals(
+                "SELECT * WHERE { ?s ?p ?a FILTER(?a < ?b && ?b > 2) }",
+                QueryCache.normalise("SELECT * WHERE { ?s ?p ?a  FILTER(?a  <  ?b  &&  ?b >  2) }"));
+        assertEquals(
+                QueryCache.normalise("SELECT * WHERE { ?s ?p ?a FILTER(?a<?b) }"),
+                QueryCache.normalise("SELECT * WHERE {\n  ?s ?p ?a\n  FILTER(?a<?b)\n}"));
+    }
+
+    @Test
+    public void testNormaliseLongLiterals() throws Exception {
+        assertEquals(
+                "SELECT * WHERE { ?s ?p \"\"\"a \"  b\"  c\"\"\" }",
+                QueryCache.normalise("SELECT * WHERE {  ?s ?p \"\"\"a \"  b\"  c\"\"\"  }"));
+        assertEquals(
+                "SELECT * WHERE { ?s ?p '''it's  \n''' }",
+                QueryCache.normalise("SELECT  * WHERE { ?s ?p '''it's  \n'''\n}"));
+        assertEquals(
+                "SELECT * WHERE { ?s ?p '' }",
+                QueryCache.normalise("SELECT * WHERE { ?s ?p ''  }"));
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        QueryCache cache = new QueryCache(2);
+
+        CachedQuery first = cache.get(select, null);
+        assertSame(first, cache.get(select.replace(" ", "\n  "), null));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // the prefixes are part of the key
+        assertNotSame(first, cache.get(select, model));
+
+        cache.get("SELECT * WHERE { ?s ?p ?o }", null);
+        assertEquals(2, cache.size());
+        assertNotSame(first, cache.get(select, null));
+    }
+
+    @Test
+    public void testSelect() throws Exception {
+        ResultSet expected = ResultSetFactory.copyResults(
+                QueryExecutionFactory.create(QueryFactory.create(select), model).execSelect());
+        ResultSet actual = helper.ExecSelect(select);
+
+        assertTrue(ResultSetCompare.equalsByTerm(expected, actual));
+
+        helper.ExecSelect(select);
+        assertEquals(1, helper.getCache().getHits());
+    }
+
+    @Test
+    public void testConstruct() throws Exception {
+        String construct = QueryHelper.stdPrefix + "\n" +
+                "CONSTRUCT { ?s rdfs:label ?n . ?s rdfs:comment [ rdfs:label ?n ] } " +
+                "WHERE { ?s <http://xmlns.com/foaf/0.1/name> ?n }";
+
+        Model expected = QueryExecutionFactory.create(QueryFactory.create(construct), model).execConstruct();
+        Model actual = helper.ExecConstruct(construct);
+
+        assertFalse(actual.isEmpty());
+        assertTrue(expected.isIsomorphicWith(actual));
+    }
+
+    @Test
+    public void testPrepare() throws Exception {
+        model.setNsPrefix("foaf", "http://xmlns.com/foaf/0.1/");
+
+        ResultSet rs = helper.ExecSelect(helper.prepare("SELECT ?s WHERE { ?s foaf:name ?n }"));
+        assertTrue(rs.hasNext());
+
+        // a changed prefix mapping is parsed again
+        model.setNsPrefix("foaf", "http://example.org/foaf#");
+        rs = helper.ExecSelect(helper.prepare("SELECT ?s WHERE { ?s foaf:name ?n }"));
+        assertFalse(rs.hasNext());
+        assertEquals(2, helper.getCache().getMisses());
+    }
+}
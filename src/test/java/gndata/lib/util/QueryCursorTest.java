@@ -0,0 +1,137 @@
+package gndata.lib.util;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.*;
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.vocabulary.RDFS;
+import org.junit.*;
+
+/**
+ * Tests for streaming query results.
+ */
+public class QueryCursorTest {
+
+    private static final String ex = "http://example.org/cursor#";
+    private static final String select = QueryHelper.stdPrefix + "\n" +
+            "SELECT ?s ?l WHERE { ?s rdfs:label ?l } ORDER BY ?l";
+
+    private Model model;
+    private QueryHelper helper;
+
+    @Before
+    public void setUp() throws Exception {
+        model = ModelFactory.createDefaultModel();
+        for (int i = 0; i < 250; i++) {
+            model.add(model.createResource(ex + i), RDFS.label, String.format("label %03d", i));
+        }
+
+        helper = new QueryHelper(model);
+    }
+
+    @Test
+    public void testCursor() throws Exception {
+        List<String> labels = new ArrayList<>();
+
+        try (QueryCursor cursor = helper.select(select)) {
+            assertEquals(Arrays.asList("s", "l"), cursor.getResultVars());
+
+            while (cursor.hasNext()) {
+                QuerySolution sol = cursor.next();
+                labels.add(sol.getLiteral("l").getString());
+
+                // resources of the solutions belong to the queried model
+                assertEquals(model, sol.getResource("s").getModel());
+            }
+
+            assertEquals(250, cursor.getPosition());
+            assertTrue(cursor.isClosed());
+        }
+
+        assertEquals("label 000", labels.get(0));
+        assertEquals("label 249", labels.get(249));
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        QueryCursor cursor = helper.select(select);
+        List<QuerySolution> page = cursor.nextPage(10);
+
+        assertEquals(10, page.size());
+        assertFalse(cursor.isClosed());
+
+        cursor.close();
+        assertFalse(cursor.hasNext());
+    }
+
+    @Test
+    public void testPages() throws Exception {
+        CachedQuery query = helper.compile(select);
+
+        List<QuerySolution> first = helper.fetchPage(query, 0, 100);
+        List<QuerySolution> last = helper.fetchPage(query, 2, 100);
+
+        assertEquals(100, first.size());
+        assertEquals(50, last.size());
+        assertEquals("label 200", last.get(0).getLiteral("l").getString());
+        assertTrue(helper.fetchPage(query, 3, 100).isEmpty());
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        List<String> labels = helper.select(select).stream()
+                .limit(3)
+                .map(sol -> sol.getLiteral("l").getString())
+                .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList("label 000", "label 001", "label 002"), labels);
+
+        Set<Resource> found = helper.streamSearchResults("label 01").collect(Collectors.toSet());
+        assertEquals(10, found.size());
+        assertTrue(found.contains(model.getResource(ex + 15)));
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        QueryCursor cursor = helper.select(select);
+        assertEquals(10, cursor.nextPage(10).size());
+
+        Thread t = new Thread(cursor::cancel);
+        t.start();
+        t.join();
+
+        assertTrue(cursor.isCancelled());
+        try {
+            cursor.hasNext();
+            fail("Cursor was not cancelled");
+        } catch (QueryCancelledException e) {
+            assertEquals(10, cursor.getPosition());
+        }
+
+        cursor.close();
+        assertTrue(cursor.isClosed());
+    }
+
+    @Test
+    public void testDescribe() throws Exception {
+        Resource first = model.getResource(ex + 0);
+        first.addProperty(RDFS.comment, "first");
+
+        List<Node> nodes = new ArrayList<>();
+        try (QueryCursor cursor = helper.select(select)) {
+            cursor.forEachRemaining(sol -> {
+                nodes.add(sol.get("s").asNode());
+                nodes.add(sol.get("l").asNode());
+                nodes.add(first.asNode());
+            });
+        }
+
+        Model description = helper.describe(nodes);
+        assertEquals(251, description.size());
+        assertTrue(description.contains(first, RDFS.comment, "first"));
+    }
+}
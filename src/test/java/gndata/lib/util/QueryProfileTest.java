@@ -0,0 +1,78 @@
+package gndata.lib.util;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.vocabulary.*;
+import org.junit.*;
+
+/**
+ * Tests for profiled query execution.
+ */
+public class QueryProfileTest {
+
+    private static final String ex = "http://example.org/profile#";
+
+    private QueryHelper helper;
+
+    @Before
+    public void setUp() throws Exception {
+        Model model = ModelFactory.createDefaultModel();
+        model.setNsPrefix("rdfs", RDFS.getURI());
+
+        for (int i = 0; i < 50; i++) {
+            Resource r = model.createResource(ex + i);
+            r.addProperty(RDFS.label, "item " + i);
+            if (i % 5 == 0) {
+                r.addProperty(RDFS.comment, "every fifth");
+            }
+        }
+
+        helper = new QueryHelper(model);
+    }
+
+    @Test
+    public void testProfile() throws Exception {
+        QueryProfile profile = helper.profile(
+                "SELECT ?s ?l WHERE { ?s rdfs:label ?l OPTIONAL { ?s rdfs:comment ?c } } LIMIT 20");
+
+        assertTrue(profile.getParseTime() > 0);
+        assertTrue(profile.getOptimiseTime() > 0);
+        assertTrue(profile.getAlgebra().contains("slice"));
+
+        try (QueryCursor cursor = helper.select(profile)) {
+            assertEquals(20, cursor.nextPage(100).size());
+        }
+
+        assertEquals(20, profile.getResults());
+        assertTrue(profile.getExecutionTime() > 0);
+
+        List<QueryProfile.Operator> operators = profile.getOperators();
+        List<String> names = operators.stream()
+                .map(QueryProfile.Operator::getName)
+                .collect(Collectors.toList());
+
+        assertEquals("slice", names.get(0));
+        assertTrue(names.contains("conditional") || names.contains("leftjoin"));
+
+        QueryProfile.Operator top = operators.get(0);
+        assertEquals(1, top.getCalls());
+        assertEquals(20, top.getRows());
+        assertTrue(operators.get(1).getDepth() > top.getDepth());
+
+        String report = profile.toString();
+        assertTrue(report.contains("Results:"));
+        assertTrue(report.contains("(slice"));
+    }
+
+    @Test
+    public void testNotCached() throws Exception {
+        String query = "SELECT * WHERE { ?s rdfs:comment ?c }";
+
+        assertNotSame(helper.profile(query).getQuery(), helper.profile(query).getQuery());
+        assertEquals(0, helper.getCache().size());
+    }
+}
@@ -0,0 +1,123 @@
+package gndata.lib.util;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.vocabulary.*;
+import org.junit.*;
+
+/**
+ * Tests for query templates.
+ */
+public class QueryTemplateTest {
+
+    private static final String ex = "http://example.org/template#";
+
+    private Model model;
+    private QueryHelper helper;
+
+    @Before
+    public void setUp() throws Exception {
+        model = ModelFactory.createDefaultModel();
+        model.setNsPrefix("rdf", RDF.getURI());
+        model.setNsPrefix("rdfs", RDFS.getURI());
+
+        model.add(model.createResource(ex + "a"), RDFS.label, "it's a 'quoted' label");
+        model.add(model.createResource(ex + "b"), RDFS.label, "cost (in $)");
+        model.add(model.createResource(ex + "c"), RDFS.label, "costs");
+        model.add(model.createResource(ex + "c"), RDF.type, model.createResource(ex + "Thing"));
+
+        helper = new QueryHelper(model);
+    }
+
+    private static Set<String> subjects(QueryCursor cursor) {
+        Set<String> found = new HashSet<>();
+        cursor.forEachRemaining(sol -> found.add(sol.getResource("s").getLocalName()));
+        return found;
+    }
+
+    @Test
+    public void testSelect() throws Exception {
+        QueryTemplate template = helper.template("SELECT ?s ?l WHERE { ?s rdfs:label ?l }");
+        assertEquals(new HashSet<>(Arrays.asList("s", "l")), template.getParameters());
+
+        Literal quoted = model.createLiteral("it's a 'quoted' label");
+        try (QueryCursor cursor = template.select(Collections.singletonMap("l", quoted))) {
+            assertTrue(cursor.hasNext());
+
+            // bound variables keep their value in the solutions
+            assertEquals(quoted, cursor.next().getLiteral("l"));
+            assertFalse(cursor.hasNext());
+        }
+
+        try (QueryCursor cursor = template.select(Collections.singletonMap("s", model.createResource(ex + "c")))) {
+            assertEquals("costs", cursor.next().getLiteral("l").getString());
+        }
+
+        try (QueryCursor cursor = template.select(Collections.emptyMap())) {
+            assertEquals(3, cursor.stream().count());
+        }
+    }
+
+    @Test
+    public void testRegex() throws Exception {
+        QueryTemplate template = helper.template(
+                "SELECT ?s WHERE { ?s rdfs:label ?l FILTER regex(?l, ?pattern, 'i') }");
+
+        try (QueryCursor cursor = template.select(Collections.singletonMap("pattern", QueryTemplate.regex("(IN $)")))) {
+            assertEquals(Collections.singleton("b"), subjects(cursor));
+        }
+        try (QueryCursor cursor = template.select(Collections.singletonMap("pattern", QueryTemplate.regex("cost")))) {
+            assertEquals(new HashSet<>(Arrays.asList("b", "c")), subjects(cursor));
+        }
+        try (QueryCursor cursor = template.select(Collections.singletonMap("pattern", QueryTemplate.regex("'")))) {
+            assertEquals(Collections.singleton("a"), subjects(cursor));
+        }
+        try (QueryCursor cursor = template.select(Collections.singletonMap("pattern", QueryTemplate.regex(".*")))) {
+            assertTrue(subjects(cursor).isEmpty());
+        }
+
+        // the template is compiled once
+        assertEquals(1, helper.getCache().getMisses());
+    }
+
+    @Test
+    public void testConstruct() throws Exception {
+        QueryTemplate template = helper.template(
+                "CONSTRUCT { ?s rdf:type ?t . ?s rdfs:label ?l } WHERE { ?s rdf:type ?t . ?s rdfs:label ?l }");
+
+        Model result = template.construct(Collections.singletonMap("t", model.createResource(ex + "Thing")));
+        assertEquals(2, result.size());
+        assertTrue(result.contains(model.createResource(ex + "c"), RDF.type, model.createResource(ex + "Thing")));
+
+        result = template.construct(Collections.singletonMap("t", model.createResource(ex + "Other")));
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    public void testSearchSubstring() throws Exception {
+        Set<Node> indexed = helper.searchSubstring("'QUOTED'");
+        helper.setIndexed(false);
+
+        // without the index the text is bound to a template, quotes need no escaping
+        assertEquals(indexed, helper.searchSubstring("'QUOTED'"));
+        assertEquals(nodes("b"), helper.searchSubstring("(IN $"));
+        assertEquals(nodes("b", "c"), helper.searchSubstring("COST"));
+        assertTrue(helper.searchSubstring("\"").isEmpty());
+        assertTrue(helper.searchSubstring("").isEmpty());
+
+        // the template is compiled once
+        assertEquals(1, helper.getCache().getMisses());
+    }
+
+    private Set<Node> nodes(String... names) {
+        Set<Node> found = new HashSet<>();
+        for (String name : names) {
+            found.add(model.createResource(ex + name).asNode());
+        }
+        return found;
+    }
+}
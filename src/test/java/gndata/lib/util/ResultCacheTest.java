@@ -0,0 +1,143 @@
+package gndata.lib.util;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.*;
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.vocabulary.*;
+import org.junit.*;
+
+/**
+ * Tests for the cache of query results.
+ */
+public class ResultCacheTest {
+
+    private static final String ex = "http://example.org/results#";
+    private static final String prefix = QueryHelper.stdPrefix + "\nPREFIX ex: <" + ex + ">\n";
+
+    private Model model;
+    private QueryHelper helper;
+    private ResultCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        model = ModelFactory.createDefaultModel();
+        for (int i = 0; i < 10; i++) {
+            Resource r = model.createResource(ex + i);
+            r.addProperty(RDF.type, model.createResource(ex + (i % 2 == 0 ? "Even" : "Odd")));
+            r.addProperty(RDFS.label, "item " + i);
+        }
+
+        helper = new QueryHelper(model);
+        cache = helper.getResultCache();
+    }
+
+    private int count(String query) {
+        return ResultSetFormatter.consume(helper.ExecSelect(prefix + query));
+    }
+
+    @Test
+    public void testSelect() throws Exception {
+        String labels = "SELECT ?s ?l WHERE { ?s rdfs:label ?l }";
+
+        assertEquals(10, count(labels));
+        assertEquals(10, count(labels));
+        assertEquals(1, cache.getHits());
+
+        // resources of cached solutions belong to the model
+        QuerySolution sol = helper.ExecSelect(prefix + labels).next();
+        assertEquals(model, sol.getResource("s").getModel());
+
+        // changes of other predicates keep the result
+        model.getResource(ex + 1).addProperty(RDFS.comment, "comment");
+        assertEquals(10, count(labels));
+        assertEquals(3, cache.getHits());
+
+        model.getResource(ex + 1).addProperty(RDFS.label, "another");
+        assertEquals(11, count(labels));
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testTypes() throws Exception {
+        String even = "SELECT ?s WHERE { ?s a ex:Even }";
+        String typed = "SELECT ?s ?t WHERE { ?s a ?t }";
+
+        assertEquals(5, count(even));
+        assertEquals(10, count(typed));
+
+        // a change of another type keeps results for the type
+        model.getResource(ex + 1).addProperty(RDF.type, model.createResource(ex + "Prime"));
+        assertEquals(5, count(even));
+        assertEquals(11, count(typed));
+        assertEquals(1, cache.getHits());
+
+        model.getResource(ex + 1).addProperty(RDF.type, model.createResource(ex + "Even"));
+        assertEquals(6, count(even));
+    }
+
+    @Test
+    public void testGlobal() throws Exception {
+        String any = "SELECT ?s WHERE { ?s ?p 'item 3' }";
+        String path = "SELECT ?s WHERE { ?s rdfs:label/rdfs:comment* ?l }";
+        String exists = "SELECT ?s WHERE { ?s a ex:Odd FILTER NOT EXISTS { ?s rdfs:comment ?c } }";
+
+        assertEquals(1, count(any));
+        assertEquals(10, count(path));
+        assertEquals(5, count(exists));
+
+        model.getResource(ex + 3).addProperty(RDFS.comment, "item 3");
+        assertEquals(2, count(any));
+        assertEquals(4, count(exists));
+        assertEquals(0, cache.getHits());
+
+        model.removeAll(null, RDFS.comment, null);
+        assertEquals(5, count(exists));
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void testConstruct() throws Exception {
+        String construct = prefix + "CONSTRUCT { ?s rdfs:comment ?l } WHERE { ?s rdfs:label ?l }";
+
+        Model first = helper.ExecConstruct(construct);
+        first.removeAll();
+
+        // the cached result is not affected by changes of the returned model
+        assertEquals(10, helper.ExecConstruct(construct).size());
+        assertEquals(1, cache.getHits());
+
+        helper.ExecSelect(prefix + "SELECT * WHERE { ?s ?p ?o }");
+        assertEquals(2, cache.size());
+
+        cache.close();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testResources() throws Exception {
+        CachedQuery labels = helper.compile(prefix + "SELECT ?s ?l WHERE { ?s rdfs:label ?l }");
+        List<Node> resources = Arrays.asList(model.getResource(ex + 0).asNode());
+
+        cache.putResources(labels, cache.getEpoch(), resources);
+        assertEquals(resources, cache.getResources(labels));
+
+        // the solutions of the same query are cached apart
+        assertNull(cache.getSelect(labels));
+
+        model.getResource(ex + 1).addProperty(RDFS.comment, "comment");
+        assertEquals(resources, cache.getResources(labels));
+
+        model.getResource(ex + 1).addProperty(RDFS.label, "another");
+        assertNull(cache.getResources(labels));
+
+        // a result read across a change is not cached
+        long epoch = cache.getEpoch();
+        model.getResource(ex + 2).addProperty(RDFS.label, "another");
+        cache.putResources(labels, epoch, resources);
+        assertNull(cache.getResources(labels));
+    }
+}
@@ -0,0 +1,214 @@
+package gndata.lib.util;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.*;
+import com.hp.hpl.jena.rdf.model.*;
+import com.hp.hpl.jena.vocabulary.RDFS;
+import org.junit.*;
+
+/**
+ * Tests for paging the resources of query results.
+ */
+public class ResultPagerTest {
+
+    private static final String ex = "http://example.org/pager#";
+
+    private QueryHelper helper;
+    private ResultPager pager;
+
+    @Before
+    public void setUp() throws Exception {
+        Model model = ModelFactory.createDefaultModel();
+        model.setNsPrefix("rdfs", RDFS.getURI());
+        for (int i = 0; i < 250; i++) {
+            model.add(model.createResource(ex + i), RDFS.label, String.format("label %03d", i));
+        }
+
+        helper = new QueryHelper(model);
+        pager = new ResultPager(helper,
+                helper.prepare("SELECT ?s ?l WHERE { ?s rdfs:label ?l } ORDER BY ?l"), 100, 2);
+        collect(pager);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pager.close();
+    }
+
+    private void collect(ResultPager target) {
+        try (QueryCursor cursor = helper.select(target.getQuery())) {
+            List<QuerySolution> chunk;
+            while (!(chunk = cursor.nextPage(30)).isEmpty()) {
+                target.add(chunk);
+            }
+        }
+    }
+
+    private static String label(Resource row) {
+        return row.getProperty(RDFS.label).getString();
+    }
+
+    @Test
+    public void testPages() throws Exception {
+        assertEquals(250, pager.size());
+
+        List<Resource> first = pager.getPage(0);
+        assertEquals(100, first.size());
+        assertEquals(ex + 0, first.get(0).getURI());
+        assertEquals("label 000", label(first.get(0)));
+
+        List<Resource> second = pager.getPage(1);
+        assertEquals(100, second.size());
+        assertEquals("label 100", label(second.get(0)));
+
+        // cached pages are returned as they are
+        assertSame(first, pager.getPage(0));
+
+        List<Resource> last = pager.getPage(2);
+        assertEquals(50, last.size());
+        assertEquals("label 249", label(last.get(49)));
+
+        assertTrue(pager.getPage(3).isEmpty());
+        assertNull(pager.get(250));
+    }
+
+    @Test
+    public void testDistinct() throws Exception {
+        Model model = helper.getModel();
+        Resource shared = model.createResource(ex + "shared");
+        for (int i = 0; i < 250; i++) {
+            model.add(model.createResource(ex + i), RDFS.seeAlso, shared);
+        }
+
+        ResultPager distinct = new ResultPager(helper,
+                helper.prepare("SELECT ?s ?o WHERE { ?s rdfs:seeAlso ?o } ORDER BY ?s"), 100, 2);
+        collect(distinct);
+
+        // the shared resource is listed once, after the first subject
+        assertEquals(251, distinct.size());
+        assertEquals(1, distinct.getResources().stream().filter(shared.asNode()::equals).count());
+        assertEquals(shared, distinct.get(1));
+
+        // the rows hold the statements of their resources
+        assertTrue(distinct.get(1).listProperties().toList().isEmpty());
+        assertEquals(2, distinct.get(0).listProperties().toList().size());
+        distinct.close();
+    }
+
+    @Test
+    public void testIncompletePages() throws Exception {
+        ResultPager growing = new ResultPager(helper, pager.getQuery(), 100, 2);
+        try (QueryCursor cursor = helper.select(growing.getQuery())) {
+            growing.add(cursor.nextPage(50));
+
+            // pages of a running query are not cached before they are complete
+            List<Resource> partial = growing.getPage(0);
+            assertEquals(50, partial.size());
+            assertNotSame(partial, growing.getPage(0));
+
+            growing.add(cursor.nextPage(200));
+        }
+
+        assertEquals(100, growing.getPage(0).size());
+        assertSame(growing.getPage(0), growing.getPage(0));
+        growing.close();
+    }
+
+    @Test
+    public void testEvictedPages() throws Exception {
+        ResultPager small = new ResultPager(helper, pager.getQuery(), 50, 2);
+        collect(small);
+
+        List<Resource> first = small.getPage(0);
+        small.getPage(1);
+        small.getPage(2);
+
+        // only two pages are cached
+        List<Resource> again = small.getPage(0);
+        assertNotSame(first, again);
+        assertEquals(50, again.size());
+        assertEquals(label(first.get(42)), label(again.get(42)));
+        small.close();
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        assertEquals("label 100", label(pager.get(100)));
+        pager.close();
+
+        // the pager remains usable
+        assertEquals("label 100", label(pager.get(100)));
+    }
+
+    @Test
+    public void testChanges() throws Exception {
+        List<Resource> first = pager.getPage(0);
+        long version = pager.getVersion();
+
+        Model model = helper.getModel();
+        model.createResource(ex + 0).addProperty(RDFS.comment, "changed");
+
+        // the pages are dropped and described from the changed model
+        List<Resource> again = pager.getPage(0);
+        assertNotSame(first, again);
+        assertTrue(again.get(0).hasProperty(RDFS.comment, "changed"));
+        assertFalse(first.get(0).hasProperty(RDFS.comment));
+        assertTrue(pager.getVersion() > version);
+
+        // a closed pager does not listen to the model
+        pager.close();
+        version = pager.getVersion();
+        model.removeAll(model.createResource(ex + 0), RDFS.comment, null);
+        assertEquals(version, pager.getVersion());
+    }
+
+    @Test
+    public void testWatch() throws Exception {
+        AtomicInteger changes = new AtomicInteger();
+        pager.addChangeHandler(changes::incrementAndGet);
+        pager.getPage(0);
+
+        Model model = helper.getModel();
+        Resource added = model.createResource(ex + "new");
+        model.add(added, RDFS.label, "label new");
+        assertEquals(0, changes.get());
+
+        // a burst of changes is reported once
+        long version = pager.getVersion();
+        pager.watch();
+        model.add(added, RDFS.comment, "first");
+        model.add(added, RDFS.comment, "second");
+        assertEquals(1, changes.get());
+        assertTrue(pager.getVersion() > version);
+
+        pager.watch();
+        model.removeAll(added, null, null);
+        assertEquals(2, changes.get());
+        assertEquals(50, pager.getPage(2).size());
+    }
+
+    @Test
+    public void testSetResources() throws Exception {
+        AtomicInteger resets = new AtomicInteger();
+        pager.addResetHandler(resets::incrementAndGet);
+
+        List<Resource> first = pager.getPage(0);
+        long version = pager.getVersion();
+
+        List<Node> reversed = pager.getResources();
+        Collections.reverse(reversed);
+        pager.setResources(reversed.subList(0, 120));
+
+        assertEquals(1, resets.get());
+        assertTrue(pager.getVersion() > version);
+        assertEquals(120, pager.size());
+        assertNotSame(first, pager.getPage(0));
+        assertEquals("label 249", label(pager.get(0)));
+        assertEquals(20, pager.getPage(1).size());
+    }
+}